@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Specifies the time within which the {@link java.util.concurrent.CompletionStage} or
+ * {@link java.util.concurrent.Future} returned by the annotated resource method or class must complete. When the
+ * result is not available in time, the request is answered with status 503 and the future is cancelled. When not
+ * specified, the dispatcher servlet's {@code asyncTimeout} init parameter is used, which is 30 seconds by default.
+ * The same timeout is the request deadline for subtasks forked with
+ * {@link io.github.pustike.web.scope.RequestScope#fork(java.util.Collection)}.
+ * Method level annotations override a class level annotation. Prefer returning a {@code CompletionStage}: a plain
+ * {@code Future} can't notify on completion, so a thread of a bounded executor is blocked waiting for it.
+ */
+@Inherited
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface AsyncTimeout {
+    /**
+     * Specifies the timeout, a value of zero or less means that the request never times out.
+     * @return the timeout in the time unit
+     */
+    long value();
+
+    /**
+     * Specifies the time unit of the timeout.
+     * @return the time unit
+     */
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+}
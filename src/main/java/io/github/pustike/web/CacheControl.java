@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Specifies the {@code Cache-Control} and {@code Vary} response headers to be sent with successful responses of
+ * the annotated resource method or class, so that they can be cached by browsers and shared caches. The header
+ * value is created once when the route is registered. Neither {@code public} nor {@code private} is sent unless it is
+ * set, so that by default shared caches apply their own rules, like not storing responses to authenticated
+ * requests. Method level annotations override a class level annotation.
+ * @see <a href="https://tools.ietf.org/html/rfc7234#section-5.2.2">Section 5.2.2 of RFC 7234</a>
+ */
+@Inherited
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheControl {
+    /**
+     * The {@code max-age} directive in seconds, which is not set when negative.
+     * @return the max age in seconds
+     */
+    int maxAge() default -1;
+
+    /**
+     * The {@code s-maxage} directive in seconds for shared caches, which is not set when negative.
+     * @return the shared max age in seconds
+     */
+    int sMaxAge() default -1;
+
+    /**
+     * Whether the response can be stored by shared caches, even when the request is authenticated. It should be
+     * set only for responses which are the same for all users.
+     * @return {@code true} to set the {@code public} directive
+     */
+    boolean isPublic() default false;
+
+    /**
+     * Whether the response is intended for a single user and must not be stored by a shared cache.
+     * @return {@code true} to set the {@code private} directive
+     */
+    boolean isPrivate() default false;
+
+    /**
+     * Whether the response must be revalidated with the server before each reuse.
+     * @return {@code true} to set the {@code no-cache} directive
+     */
+    boolean noCache() default false;
+
+    /**
+     * Whether the response must not be stored by any cache.
+     * @return {@code true} to set the {@code no-store} directive
+     */
+    boolean noStore() default false;
+
+    /**
+     * Whether a stale response must not be used without revalidating it.
+     * @return {@code true} to set the {@code must-revalidate} directive
+     */
+    boolean mustRevalidate() default false;
+
+    /**
+     * Whether the response will not change while it is fresh.
+     * @return {@code true} to set the {@code immutable} directive
+     */
+    boolean immutable() default false;
+
+    /**
+     * The request header names to list in the {@code Vary} response header.
+     * @return the request header names
+     */
+    String[] vary() default {};
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indicates that the serialized responses of the annotated {@code GET} resource method should be cached on the
+ * server. Responses are cached by the route, request path, query parameters and the listed request headers. A cache
+ * hit writes the stored bytes, skipping parameter binding, the method invocation and serialization. On a miss,
+ * the method is invoked by one request, while concurrent requests for the same response wait for its result.
+ * <p>
+ * An entry older than {@link #ttl()} is still served during the {@link #staleWhileRevalidate()} period, while only
+ * the first request finding it stale queues a refresh of the entry, which runs in the background on the dispatcher
+ * servlet's cache refresh executor ({@code cacheRefreshThreads} init parameter, 2 threads by default). The method is
+ * then invoked with a copy of that request having its path, query parameters, headers and cookies, and
+ * {@link io.github.pustike.web.scope.RequestScope#getResponse()} returns {@code null}.
+ * Entries can be removed by their {@link #tags()} using
+ * {@link io.github.pustike.web.servlet.ResponseCache#invalidate(String)}.
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Cacheable {
+    /**
+     * The time for which a cached response is fresh.
+     * @return the time to live
+     */
+    long ttl();
+
+    /**
+     * The time after expiry for which a stale response is still served while it is being refreshed.
+     * @return the stale while revalidate time
+     */
+    long staleWhileRevalidate() default 0;
+
+    /**
+     * The time unit of {@link #ttl()} and {@link #staleWhileRevalidate()}.
+     * @return the time unit
+     */
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    /**
+     * The request headers whose values select a different cached response.
+     * @return the request header names
+     */
+    String[] headers() default {};
+
+    /**
+     * The tags that can be used to invalidate cached responses of this method.
+     * @return the tags
+     */
+    String[] tags() default {};
+}
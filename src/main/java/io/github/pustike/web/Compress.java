@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Enables or disables the compression of response bodies written by the annotated resource method or class.
+ * When not specified, the dispatcher servlet's {@code compression} init parameter is used, which is disabled
+ * by default: routes opt in with this annotation, or it is set to {@code true} to compress the responses of all
+ * routes. Compression is negotiated using the request's {@code Accept-Encoding} header, and bodies smaller than the
+ * {@code compressionMinSize} init parameter are always written as is.
+ * Method level annotations override a class level annotation.
+ */
+@Inherited
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Compress {
+    /**
+     * Specifies whether the response body can be compressed.
+     * @return {@code false} to always write the response body uncompressed
+     */
+    boolean value() default true;
+}
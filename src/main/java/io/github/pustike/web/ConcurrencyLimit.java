@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits the number of requests handled concurrently by the annotated resource method, or by each method of the
+ * annotated class. The limit adapts to the observed latency: it grows while responses are fast and the limit is in
+ * use, and it is reduced when the latency rises well above the lowest recently observed latency or requests time out.
+ * Requests over the limit are rejected with status 503 and a {@code Retry-After} header, before their parameters
+ * are bound. When not specified, the dispatcher servlet's {@code concurrencyLimit} init parameter is used as the
+ * initial limit of all routes, which is disabled by default. Method level annotations override a class level
+ * annotation.
+ */
+@Inherited
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ConcurrencyLimit {
+    /**
+     * Specifies the initial limit, a value of zero or less disables the limit for the route.
+     * @return the initial number of concurrent requests
+     */
+    int value() default 20;
+
+    /**
+     * Specifies the lowest value the limit is reduced to.
+     * @return the minimum number of concurrent requests
+     */
+    int min() default 1;
+
+    /**
+     * Specifies the highest value the limit grows to.
+     * @return the maximum number of concurrent requests
+     */
+    int max() default 1000;
+}
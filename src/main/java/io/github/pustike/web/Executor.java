@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs the annotated resource method, or each method of the annotated class, on the named bulkhead executor
+ * instead of the server's thread. The container thread is released using the async context while the request waits
+ * in the executor's bounded queue and is handled, so that slow routes cannot exhaust the threads serving the other
+ * routes. Requests are rejected with status 503 when the queue is full, and answered with status 503 when they are
+ * not handled within the route's {@link AsyncTimeout}. Method level annotations override a class level annotation.
+ * @see io.github.pustike.web.servlet.BulkheadExecutor
+ */
+@Inherited
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Executor {
+    /**
+     * Specifies the name of the executor, which is provided by the web module configurer.
+     * @return the executor name
+     */
+    String value();
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Allows the client to select the fields included in the response of the annotated resource method or class,
+ * using a query parameter. Its value is a comma separated list of field paths, where nested fields are separated
+ * by a dot, for example {@code ?fields=id,name,address.city}. Only the fields included by the
+ * {@link JsonContext} can be selected, and unknown field names are ignored. When the parameter is not present, all
+ * fields are included. The selected fields are read from the declared fields of the returned objects, so that the
+ * unselected ones are never mapped, and fields having a {@code null} value are omitted. Method level annotations
+ * override a class level annotation.
+ */
+@Inherited
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface FieldSelection {
+    /**
+     * Specifies the name of the query parameter having the field paths.
+     * @return the query parameter name
+     */
+    String value() default "fields";
+}
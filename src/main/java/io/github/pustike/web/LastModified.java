@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Names a companion method of the controller that returns the last modified time of the resource served by the
+ * annotated resource method. For {@code GET} requests, the companion method is called before the resource method
+ * and the {@code Last-Modified} header is set from its value. When the resource has not been modified since the
+ * request's {@code If-Modified-Since} time, a {@code 304 Not Modified} response is sent without calling the
+ * resource method.
+ * <p>
+ * The companion method can return a {@code long} or {@link Long} in epoch milliseconds, an
+ * {@link java.time.Instant}, a {@link java.time.temporal.TemporalAccessor} having the instant seconds or a
+ * {@link java.util.Date}; a {@code null} or negative value skips the check. Its parameters are resolved the same
+ * way as the resource method's, but they must not read the request body. For example:
+ * <pre>
+ * &#64;GET
+ * &#64;Path("/{id}")
+ * &#64;LastModified("getUserModifiedTime")
+ * public User getUser(&#64;PathParam("id") long id) {...}
+ *
+ * long getUserModifiedTime(&#64;PathParam("id") long id) {...}
+ * </pre>
+ * @see VersionProvider
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface LastModified {
+    /**
+     * Specifies the name of the companion method returning the last modified time.
+     * @return the companion method name
+     */
+    String value();
+}
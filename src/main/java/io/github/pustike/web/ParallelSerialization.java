@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Serializes large collection or array results of the annotated resource method or class in parallel. The
+ * elements are split into chunks, which are serialized by the request thread together with the threads of a
+ * bounded executor, sized by the dispatcher servlet's {@code serializationThreads} init parameter, and the chunks
+ * are written out in order, so the JSON response is identical to the one written sequentially. The request scope
+ * is open while the chunks are serialized. Results with fewer elements than the threshold, and media types other
+ * than JSON, are serialized sequentially.
+ * Method level annotations override a class level annotation.
+ */
+@Inherited
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ParallelSerialization {
+    /**
+     * Specifies the minimum number of elements for which the result is serialized in parallel.
+     * @return the element count threshold
+     */
+    int threshold() default 10_000;
+
+    /**
+     * Specifies the number of elements serialized together in one task.
+     * @return the number of elements in a chunk
+     */
+    int chunkSize() default 2_048;
+}
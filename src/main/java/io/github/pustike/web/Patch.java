@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonMergePatch;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonPatch;
+import jakarta.json.JsonStructure;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParserFactory;
+
+import io.github.pustike.json.ObjectMapper;
+import io.github.pustike.web.utils.JsonParserReader;
+
+/**
+ * A partial update sent in a PATCH request, as a JSON Patch ({@code application/json-patch+json}, RFC 6902) or a
+ * JSON Merge Patch ({@code application/merge-patch+json} or {@code application/json}, RFC 7396) document. When
+ * declared as a resource method parameter, the request body is parsed and compiled into the patch operations once,
+ * and then it can be applied to the existing entity. Only the members changed by the patch are copied onto the
+ * entity, so its other state, like the fields which are not mapped to JSON, is kept as it is.
+ * <pre>
+ * &#64;PATCH
+ * &#64;Path("/users/{id}")
+ * public User update(&#64;PathParam("id") long id, Patch patch) {
+ *     return userService.save(patch.applyTo(userService.find(id)));
+ * }
+ * </pre>
+ */
+public final class Patch {
+    private static final JsonParserFactory parserFactory = Json.createParserFactory(null);
+    private final JsonPatch jsonPatch;
+    private final JsonMergePatch mergePatch;
+    private final ObjectMapper objectMapper;
+
+    private Patch(JsonPatch jsonPatch, JsonMergePatch mergePatch, ObjectMapper objectMapper) {
+        this.jsonPatch = jsonPatch;
+        this.mergePatch = mergePatch;
+        this.objectMapper = Objects.requireNonNull(objectMapper);
+    }
+
+    /**
+     * Creates a patch applying the JSON Patch operations.
+     * @param jsonPatch the JSON patch
+     * @param objectMapper the object mapper used to map the entities to JSON and back
+     * @return the patch
+     */
+    public static Patch of(JsonPatch jsonPatch, ObjectMapper objectMapper) {
+        return new Patch(Objects.requireNonNull(jsonPatch), null, objectMapper);
+    }
+
+    /**
+     * Creates a patch applying the JSON Merge Patch.
+     * @param mergePatch the JSON merge patch
+     * @param objectMapper the object mapper used to map the entities to JSON and back
+     * @return the patch
+     */
+    public static Patch of(JsonMergePatch mergePatch, ObjectMapper objectMapper) {
+        return new Patch(null, Objects.requireNonNull(mergePatch), objectMapper);
+    }
+
+    /**
+     * Checks whether this is a JSON Merge Patch.
+     * @return {@code true} for a JSON Merge Patch, {@code false} for a JSON Patch
+     */
+    public boolean isMergePatch() {
+        return mergePatch != null;
+    }
+
+    /**
+     * Applies this patch to the JSON value.
+     * @param target the JSON value to patch
+     * @return the patched JSON value
+     * @throws jakarta.json.JsonException if a JSON Patch operation can not be applied to the target
+     */
+    public JsonValue applyTo(JsonValue target) {
+        if (mergePatch != null) {
+            return mergePatch.apply(target);
+        }
+        if (!(target instanceof JsonStructure)) {
+            throw new IllegalArgumentException("JSON Patch can be applied to an object or array only");
+        }
+        return jsonPatch.apply((JsonStructure) target);
+    }
+
+    /**
+     * Applies this patch to the entity, which is mapped to JSON to apply the patch. The top-level members changed by
+     * the patch are bound to a value of the entity class and copied onto the fields of the same name in the entity,
+     * and a removed member clears its field. A changed member holding an object is bound and copied as a whole.
+     * Changed members which have no field in the entity are ignored, as they are when binding a request body.
+     * @param entity the entity to patch
+     * @param <T> the entity type
+     * @return the given entity, with the patched members
+     * @throws jakarta.json.JsonException if a JSON Patch operation can not be applied to the entity
+     * @throws IllegalArgumentException if the patched members can not be bound or copied onto the entity
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T applyTo(T entity) {
+        return (T) applyTo(entity, entity.getClass());
+    }
+
+    /**
+     * Applies this patch to the entity, binding the changed members with the given type, as in
+     * {@link #applyTo(Object)}. If the entity is not mapped to a JSON object, like a collection, it has no members
+     * to copy and the patched JSON value is bound to a new value of the given type instead.
+     * @param entity the entity to patch
+     * @param type the type of the entity, which is used to bind the patched members
+     * @return the given entity with the patched members, or the new value if it is not mapped to a JSON object
+     * @throws jakarta.json.JsonException if a JSON Patch operation can not be applied to the entity
+     * @throws IllegalArgumentException if the patched members can not be bound or copied onto the entity
+     */
+    public Object applyTo(Object entity, Type type) {
+        JsonValue source = objectMapper.toJsonValue(entity, null);
+        JsonValue patched = applyTo(source);
+        if (source.getValueType() != JsonValue.ValueType.OBJECT
+                || patched.getValueType() != JsonValue.ValueType.OBJECT) {
+            return readValue(patched, type);
+        }
+        JsonObject sourceObject = source.asJsonObject(), patchedObject = patched.asJsonObject();
+        Set<String> removedMembers = new LinkedHashSet<>(sourceObject.keySet());
+        removedMembers.removeAll(patchedObject.keySet());
+        JsonObjectBuilder changedMembers = Json.createObjectBuilder();
+        patchedObject.forEach((name, value) -> {
+            if (!value.equals(sourceObject.get(name))) {
+                changedMembers.add(name, value);
+            }
+        });
+        JsonObject changedObject = changedMembers.build();
+        if (changedObject.isEmpty() && removedMembers.isEmpty()) {
+            return entity;
+        }
+        Object changedValue = changedObject.isEmpty() ? null : readValue(changedObject, type);
+        for (String name : changedObject.keySet()) {
+            Field field = findField(entity.getClass(), name);
+            if (field != null) {
+                setField(field, entity, getField(field, changedValue));
+            }
+        }
+        for (String name : removedMembers) {
+            Field field = findField(entity.getClass(), name);
+            if (field != null) {
+                if (field.getType().isPrimitive()) {
+                    throw new IllegalArgumentException("The member '" + name + "' can not be removed from "
+                            + entity.getClass().getName() + ", as its field has a primitive type");
+                }
+                setField(field, entity, null);
+            }
+        }
+        return entity;
+    }
+
+    private Object readValue(JsonValue value, Type type) {
+        if (!(value instanceof JsonStructure)) {
+            throw new IllegalArgumentException("The patched value is not an object or array: " + value);
+        }
+        JsonParser parser = value instanceof JsonObject ? parserFactory.createParser((JsonObject) value)
+                : parserFactory.createParser((JsonArray) value);
+        try (JsonParserReader reader = new JsonParserReader(parser)) {
+            return objectMapper.readValue(reader, type);
+        } catch (IllegalArgumentException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Could not read JSON: " + ex.getMessage(), ex);
+        }
+    }
+
+    private static Field findField(Class<?> entityClass, String name) {
+        for (Class<?> cls = entityClass; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+            try {
+                Field field = cls.getDeclaredField(name);
+                int modifiers = field.getModifiers();
+                return Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) ? null : field;
+            } catch (NoSuchFieldException ignored) {
+                // look in the super class
+            }
+        }
+        return null;
+    }
+
+    private static Object getField(Field field, Object target) {
+        try {
+            field.setAccessible(true);
+            return field.get(target);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            throw new IllegalArgumentException("Could not read the patched field: " + field, ex);
+        }
+    }
+
+    private static void setField(Field field, Object target, Object value) {
+        try {
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            throw new IllegalArgumentException("Could not set the patched field: " + field, ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (mergePatch != null ? mergePatch.toJsonValue() : jsonPatch.toJsonArray()).toString();
+    }
+}
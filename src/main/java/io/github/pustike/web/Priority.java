@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Specifies the priority of requests to the annotated resource method, or to each method of the annotated class,
+ * which is {@link Level#NORMAL} when not specified. When the server is overloaded, requests of lower priority are
+ * shed first: {@link Level#LOW} requests are rejected as soon as a standing queue is detected and get only half of a
+ * route's concurrency limit, while {@link Level#CRITICAL} requests are never shed by queue delay or the concurrency
+ * limit. A request can lower its priority, but not raise it, by sending the level's name in the {@value #HEADER}
+ * header, so that batch clients can mark their traffic as low priority. Method level annotations override a class
+ * level annotation.
+ */
+@Inherited
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Priority {
+    /**
+     * The request header with which the client can lower the priority of a request.
+     */
+    String HEADER = "X-Request-Priority";
+
+    /**
+     * Specifies the priority level.
+     * @return the priority level
+     */
+    Level value();
+
+    /**
+     * The priority levels, from the highest to the lowest.
+     */
+    enum Level {
+        /** Requests that must be served even under overload, like health checks and payments. */
+        CRITICAL,
+        /** Latency sensitive requests, shed only when queueing longer than the admission interval. */
+        HIGH,
+        /** The default priority of requests. */
+        NORMAL,
+        /** Batch and background requests, shed or delayed first. */
+        LOW
+    }
+}
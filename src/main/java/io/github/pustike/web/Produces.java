@@ -29,7 +29,8 @@ import java.lang.annotation.Target;
  * is responsible for ensuring that the method invoked is capable of producing
  * one of the media types requested in the HTTP request. If no such method is
  * available the container must respond with a HTTP "406 Not Acceptable" as
- * specified by RFC 2616.
+ * specified by RFC 2616. Each media type declared on a method returning a serialized result must be produced by a
+ * registered message body writer, else the dispatcher servlet fails to start.
  *
  * <p>A method for which there is a single-valued {@code @Produces}
  * is not required to set the media type of representations that it produces:
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+
+/**
+ * A pre-rendered JSON document, which is written to the response verbatim when returned from a resource method,
+ * avoiding the parse and serialize round trip. As it is a {@link JsonValue}, it is also written verbatim when it is
+ * a member or an element of a {@link JsonObject} or {@link JsonArray} returned by the resource method, and it is
+ * parsed only when it is read as a JSON object or array, for example to encode it in another media type. A field of
+ * a returned object is converted by the object mapper, which doesn't write it verbatim, so resource methods whose
+ * result type has a raw JSON field, element or type argument are rejected when the routes are registered, and such
+ * results should be built as a JSON object instead. When declared as a resource method parameter, it holds the
+ * unparsed request body.
+ * <p>
+ * The content is not validated, unless the dispatcher servlet's {@code rawJsonValidation} init parameter is set
+ * to {@code true}, which can be used during development.
+ */
+public final class RawJson implements JsonValue {
+    private static final int COPY_BUFFER_SIZE = 8192;
+    /** The content, which is never modified and is handed out only as a read-only view */
+    private final ByteBuffer content;
+    private final ValueType valueType;
+
+    private RawJson(ByteBuffer content) {
+        this.content = content;
+        this.valueType = detectValueType(content);
+    }
+
+    /**
+     * Creates a raw JSON value from the given UTF-8 encoded bytes, without copying them.
+     * @param utf8Bytes the JSON document bytes
+     * @return the raw JSON value
+     */
+    public static RawJson of(byte[] utf8Bytes) {
+        return new RawJson(ByteBuffer.wrap(Objects.requireNonNull(utf8Bytes)));
+    }
+
+    /**
+     * Creates a raw JSON value from the remaining UTF-8 encoded bytes of the given buffer, without copying them.
+     * The position of the given buffer is not changed.
+     * @param utf8Buffer the JSON document buffer
+     * @return the raw JSON value
+     */
+    public static RawJson of(ByteBuffer utf8Buffer) {
+        return new RawJson(utf8Buffer.slice());
+    }
+
+    /**
+     * Creates a raw JSON value from the given JSON text.
+     * @param json the JSON document
+     * @return the raw JSON value
+     */
+    public static RawJson of(String json) {
+        return of(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ValueType detectValueType(ByteBuffer content) {
+        for (int i = content.position(); i < content.limit(); i++) {
+            switch (content.get(i)) {
+                case ' ', '\t', '\n', '\r':
+                    continue;
+                case '{':
+                    return ValueType.OBJECT;
+                case '[':
+                    return ValueType.ARRAY;
+                case '"':
+                    return ValueType.STRING;
+                case 't':
+                    return ValueType.TRUE;
+                case 'f':
+                    return ValueType.FALSE;
+                case 'n':
+                    return ValueType.NULL;
+                default:
+                    return ValueType.NUMBER;
+            }
+        }
+        throw new IllegalArgumentException("raw JSON content is empty");
+    }
+
+    @Override
+    public ValueType getValueType() {
+        return valueType;
+    }
+
+    /**
+     * Returns the number of bytes of this JSON document.
+     * @return the length in bytes
+     */
+    public int length() {
+        return content.remaining();
+    }
+
+    /**
+     * Returns a read-only view of the UTF-8 encoded bytes of this JSON document.
+     * @return the read-only content buffer
+     */
+    public ByteBuffer asByteBuffer() {
+        return content.asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the UTF-8 encoded bytes of this JSON document to the given output stream. Content backed by an array
+     * is written from it directly, and other content, like a direct or read-only buffer, is copied in small chunks.
+     * @param outputStream the output stream
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        if (content.hasArray()) {
+            outputStream.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+        } else {
+            ByteBuffer source = content.duplicate();
+            byte[] chunk = new byte[Math.min(source.remaining(), COPY_BUFFER_SIZE)];
+            while (source.hasRemaining()) {
+                int length = Math.min(source.remaining(), chunk.length);
+                source.get(chunk, 0, length);
+                outputStream.write(chunk, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Parses this JSON document.
+     * @return the parsed JSON value
+     * @throws jakarta.json.JsonException if the content is not valid JSON
+     */
+    public JsonValue parse() {
+        try (JsonReader jsonReader = Json.createReader(new StringReader(toString()))) {
+            return jsonReader.readValue();
+        }
+    }
+
+    @Override
+    public JsonObject asJsonObject() {
+        return parse().asJsonObject();
+    }
+
+    @Override
+    public JsonArray asJsonArray() {
+        return parse().asJsonArray();
+    }
+
+    @Override
+    public String toString() {
+        return StandardCharsets.UTF_8.decode(content.duplicate()).toString();
+    }
+}
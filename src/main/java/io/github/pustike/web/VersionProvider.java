@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Names a companion method of the controller that returns the current version of the resource served by the
+ * annotated resource method. For {@code GET} requests, the companion method is called before the resource method
+ * and a weak {@code ETag} is set from the returned version. When the request's {@code If-None-Match} header
+ * matches it, a {@code 304 Not Modified} response is sent without calling the resource method.
+ * <p>
+ * The version can be of any type and its {@code toString()} value is used to create the entity tag; a {@code null}
+ * value skips the check. Parameters of the companion method are resolved the same way as the resource method's,
+ * but they must not read the request body.
+ * @see LastModified
+ * @see ETag
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface VersionProvider {
+    /**
+     * Specifies the name of the companion method returning the resource version.
+     * @return the companion method name
+     */
+    String value();
+}
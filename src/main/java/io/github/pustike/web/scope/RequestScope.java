@@ -16,6 +16,29 @@
 package io.github.pustike.web.scope;
 
 import java.io.Closeable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 import jakarta.inject.Provider;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -24,7 +47,11 @@ import io.github.pustike.inject.BindingKey;
 import io.github.pustike.inject.Scope;
 
 /**
- * Request Scope that stores created instances as attributes in the request.
+ * Request Scope that stores created instances in a per-request slot array, which is kept as a request attribute.
+ * Each scoped binding is assigned a slot index of this scope instance when it is bound, so looking up an already
+ * created instance is a volatile array read without any lock; the lock is taken only when the instance is being
+ * created. Slot indexes are counted per scope instance, so that they don't grow with every injector created in the
+ * JVM, and each scope instance has its own slot array in the request.
  * Example usage:
  * <pre>{@code
  * Injector injector = Injectors.create((Module) binder -> {
@@ -37,41 +64,50 @@ import io.github.pustike.inject.Scope;
  * ...
  * scope.close();
  * }</pre>
+ * The request context is carried in a thread local when opened, or in a {@code ScopedValue} when the runtime
+ * provides it and the code is run with {@link #call(HttpServletRequest, HttpServletResponse, Callable)}, so that it
+ * is also inherited by subtasks forked in a structured task scope.
+ * <p>
+ * Handlers can run independent calls in parallel with {@link #fork(Collection)}, where each subtask sees the same
+ * request context and request scoped instances, and all of them are cancelled when one fails or the request's
+ * deadline passes.
  * @see RequestScoped
  */
 public final class RequestScope implements Scope {
     private static final ThreadLocal<Context> threadLocal = new ThreadLocal<>();
-    /** A sentinel attribute value representing null. */
+    private static final ScopedValueCarrier scopedValueCarrier = ScopedValueCarrier.create();
+    private static final String SLOTS_NAME = RequestScope.class.getName() + ".slots";
+    /** The executor of forked subtasks set by the application, or null to use the default executor */
+    private static volatile Executor forkExecutor;
+    /** A sentinel slot value representing null. */
     private enum NullObject { INSTANCE }
+    /** The number of slots assigned to the bindings scoped by this instance */
+    private final AtomicInteger slotCount;
 
     /**
      * Default Constructor.
      */
     public RequestScope() {
+        this.slotCount = new AtomicInteger();
     }
 
     @Override
     public <T> Provider<T> scope(BindingKey<T> bindingKey, Provider<T> creator) {
-        final String name = bindingKey.toString();
+        final int index = slotCount.getAndIncrement();
         return () -> {
-            Context context = threadLocal.get();
+            Context context = currentContext();
             if (context == null) {
-                throw new IllegalStateException("Request Context is not open in this scope, for the key:" + name);
+                throw new IllegalStateException("Request Context is not open in this scope, for the key:"
+                        + bindingKey);
             }
-            HttpServletRequest request = context.request();
-            synchronized (request) {
-                Object obj = request.getAttribute(name);
-                if (NullObject.INSTANCE == obj) {
-                    return null;
-                }
-                @SuppressWarnings("unchecked")
-                T t = (T) obj;
-                if (t == null) {
-                    t = creator.get();
-                    request.setAttribute(name, (t != null) ? t : NullObject.INSTANCE);
-                }
-                return t;
+            Slots slots = context.state().getSlots(this);
+            Object obj = slots.get(index);
+            if (obj == null) {
+                obj = slots.create(index, creator);
             }
+            @SuppressWarnings("unchecked")
+            T t = NullObject.INSTANCE == obj ? null : (T) obj;
+            return t;
         };
     }
 
@@ -91,10 +127,41 @@ public final class RequestScope implements Scope {
      * @return a closeable handle that should be closed to clear the context
      */
     public static Closeable open(HttpServletRequest request, HttpServletResponse response) {
-        threadLocal.set(new Context(request, response));
+        threadLocal.set(createContext(request, response));
         return threadLocal::remove;
     }
 
+    /**
+     * Calls the operation with the Http Request and Response objects bound as the request context. The context is
+     * bound to a {@code ScopedValue} when the runtime supports it, so that it is visible to the operation and to
+     * the subtasks it forks in a structured task scope, and is otherwise set to the local thread context for the
+     * duration of the call.
+     * @param request the http servlet request
+     * @param response the http servlet response
+     * @param operation the operation to call
+     * @param <T> the result type of the operation
+     * @return the result of the operation
+     * @throws Exception if the operation fails
+     */
+    public static <T> T call(HttpServletRequest request, HttpServletResponse response, Callable<T> operation)
+            throws Exception {
+        Context context = createContext(request, response);
+        if (scopedValueCarrier != null) {
+            return scopedValueCarrier.call(context, operation);
+        }
+        Context previous = threadLocal.get();
+        threadLocal.set(context);
+        try {
+            return operation.call();
+        } finally {
+            if (previous != null) {
+                threadLocal.set(previous);
+            } else {
+                threadLocal.remove();
+            }
+        }
+    }
+
     /**
      * Get the HTTP servlet request from this context.
      * @return the http servlet request
@@ -111,14 +178,371 @@ public final class RequestScope implements Scope {
         return getContext().response();
     }
 
+    /**
+     * Sets the deadline of the current request, after the given timeout from now. Subtasks forked from the request
+     * are cancelled when it passes.
+     * @param timeout the timeout, from now
+     * @param unit the time unit of the timeout
+     */
+    public static void setDeadline(long timeout, TimeUnit unit) {
+        getContext().state().deadline = System.nanoTime() + unit.toNanos(timeout);
+    }
+
+    /**
+     * Returns the time left until the deadline of the current request.
+     * @param unit the time unit of the result
+     * @return the time left, zero or less when the deadline has passed, or {@link Long#MAX_VALUE} when it is not set
+     */
+    public static long getRemainingTime(TimeUnit unit) {
+        Long deadline = getContext().state().deadline;
+        return deadline == null ? Long.MAX_VALUE : unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets the executor running forked subtasks, instead of the default one, which uses a virtual thread per task
+     * when the runtime supports them, or else a bounded pool of daemon threads.
+     * @param executor the executor of forked subtasks, or {@code null} to use the default executor
+     */
+    public static void setForkExecutor(Executor executor) {
+        forkExecutor = executor;
+    }
+
+    /**
+     * Runs the tasks in parallel, on virtual threads when the runtime supports them, and returns their results in
+     * the same order. The request context of the calling thread is propagated into each task. When a task fails, the
+     * other tasks are cancelled and its exception is thrown; when the request's deadline passes before all tasks
+     * complete, they are cancelled and a {@link TimeoutException} is thrown. Cancelled tasks are interrupted, and
+     * the running ones are awaited before the exception is thrown, so that no task outlives the call and keeps
+     * using the request. No task is started if the deadline has already passed. On older runtimes the tasks run on
+     * a bounded pool, see {@link #setForkExecutor(Executor)}, and a
+     * {@link java.util.concurrent.RejectedExecutionException} is thrown when its queue is full.
+     * @param tasks the tasks to run
+     * @param <T> the result type of the tasks
+     * @return the results of the tasks, in the order of the given tasks
+     * @throws Exception the exception thrown by the first task that failed, or a {@link TimeoutException}
+     */
+    public static <T> List<T> fork(Collection<? extends Callable<? extends T>> tasks) throws Exception {
+        return fork(tasks, getContext().state().deadline);
+    }
+
+    /**
+     * Runs the tasks in parallel like {@link #fork(Collection)}, but with a timeout which is shortened to the
+     * request's deadline when it is earlier.
+     * @param timeout the maximum time to wait for all tasks
+     * @param unit the time unit of the timeout
+     * @param tasks the tasks to run
+     * @param <T> the result type of the tasks
+     * @return the results of the tasks, in the order of the given tasks
+     * @throws Exception the exception thrown by the first task that failed, or a {@link TimeoutException}
+     */
+    public static <T> List<T> fork(long timeout, TimeUnit unit, Collection<? extends Callable<? extends T>> tasks)
+            throws Exception {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Long requestDeadline = getContext().state().deadline;
+        return fork(tasks, requestDeadline != null && requestDeadline - deadline < 0 ? requestDeadline : deadline);
+    }
+
+    private static <T> List<T> fork(Collection<? extends Callable<? extends T>> tasks, Long deadline)
+            throws Exception {
+        final Context context = getContext();
+        Executor executor = forkExecutor;
+        ExecutorCompletionService<T> completionService = new ExecutorCompletionService<>(executor != null ? executor
+                : ForkExecutor.INSTANCE);
+        int taskCount = tasks.size();
+        List<Future<T>> futures = new ArrayList<>(taskCount);
+        // a task state is set to 1 when the task starts, or when it is claimed so that it never starts
+        AtomicIntegerArray taskStates = new AtomicIntegerArray(taskCount);
+        CountDownLatch finishedTasks = new CountDownLatch(taskCount);
+        try {
+            for (Callable<? extends T> task : tasks) {
+                if (deadline != null && deadline - System.nanoTime() <= 0) {
+                    throw new TimeoutException("the request deadline passed before the tasks were forked");
+                }
+                final int index = futures.size();
+                futures.add(completionService.submit(() -> {
+                    if (!taskStates.compareAndSet(index, 0, 1)) {
+                        return null; // claimed by the forking thread, after a failure
+                    }
+                    threadLocal.set(context);
+                    try {
+                        return task.call();
+                    } finally {
+                        threadLocal.remove();
+                        finishedTasks.countDown();
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Future<T> future;
+                if (deadline == null) {
+                    future = completionService.take();
+                } else {
+                    future = completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (future == null) {
+                        throw new TimeoutException("forked tasks did not complete before the request deadline");
+                    }
+                }
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw e;
+                }
+            }
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            // cancels the remaining tasks when one has failed, or the deadline passed; no-op if all are done
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+            for (int i = 0; i < taskCount; i++) {
+                if (taskStates.compareAndSet(i, 0, 1)) {
+                    finishedTasks.countDown(); // not started, nor submitted, and it won't start now
+                }
+            }
+            awaitFinished(finishedTasks);
+        }
+    }
+
+    private static void awaitFinished(CountDownLatch finishedTasks) {
+        try {
+            finishedTasks.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private static Context getContext() {
-        Context context = threadLocal.get();
+        Context context = currentContext();
         if (context == null) {
             throw new IllegalStateException("Cannot access request context!");
         }
         return context;
     }
 
-    private record Context(HttpServletRequest request, HttpServletResponse response) {
+    private static Context currentContext() {
+        Context context = threadLocal.get();
+        if (context == null && scopedValueCarrier != null) {
+            context = scopedValueCarrier.get();
+        }
+        return context;
+    }
+
+    private static Context createContext(HttpServletRequest request, HttpServletResponse response) {
+        // the slots are kept in the request, so that instances are shared when the scope is reopened for the
+        // same request in another thread, like when an asynchronous result completes
+        RequestState state = (RequestState) request.getAttribute(SLOTS_NAME);
+        if (state == null) {
+            state = new RequestState();
+            request.setAttribute(SLOTS_NAME, state);
+        }
+        return new Context(request, response, state);
+    }
+
+    private record Context(HttpServletRequest request, HttpServletResponse response, RequestState state) {
+    }
+
+    /**
+     * The state of a request kept as its attribute: the slots of each scope instance, usually just one, and the
+     * request deadline.
+     */
+    private static final class RequestState {
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile Slots[] slotsArray = new Slots[0];
+        /** The request deadline in {@link System#nanoTime()}, or null when it is not set. */
+        private volatile Long deadline;
+
+        Slots getSlots(RequestScope owner) {
+            for (Slots slots : slotsArray) {
+                if (slots.owner == owner) {
+                    return slots;
+                }
+            }
+            lock.lock();
+            try {
+                Slots[] slotsArray = this.slotsArray;
+                for (Slots slots : slotsArray) {
+                    if (slots.owner == owner) {
+                        return slots;
+                    }
+                }
+                Slots slots = new Slots(owner, owner.slotCount.get());
+                Slots[] grown = Arrays.copyOf(slotsArray, slotsArray.length + 1);
+                grown[slotsArray.length] = slots;
+                this.slotsArray = grown;
+                return slots;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Instances created in a request by a scope instance, indexed by the slot assigned to each binding. Reads are
+     * lock free, while creation takes a lock instead of synchronized, so that virtual threads are not pinned while
+     * it runs.
+     */
+    private static final class Slots {
+        private final RequestScope owner;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile AtomicReferenceArray<Object> values;
+
+        Slots(RequestScope owner, int size) {
+            this.owner = owner;
+            this.values = new AtomicReferenceArray<>(Math.max(size, 8));
+        }
+
+        Object get(int index) {
+            AtomicReferenceArray<Object> values = this.values;
+            return index < values.length() ? values.get(index) : null;
+        }
+
+        Object create(int index, Provider<?> creator) {
+            lock.lock();
+            try {
+                AtomicReferenceArray<Object> values = this.values;
+                if (index >= values.length()) {
+                    // a binding registered after this request was opened, like in a child injector
+                    AtomicReferenceArray<Object> grown = new AtomicReferenceArray<>(
+                            Math.max(index + 1, values.length() * 2));
+                    for (int i = 0; i < values.length(); i++) {
+                        grown.set(i, values.get(i));
+                    }
+                    this.values = values = grown;
+                }
+                Object obj = values.get(index);
+                if (obj == null) {
+                    Object t = creator.get();
+                    obj = t != null ? t : NullObject.INSTANCE;
+                    values.set(index, obj);
+                }
+                return obj;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * The default executor running forked subtasks: a virtual thread per task when the runtime supports it, or else
+     * a pool of daemon threads bounded to {@value #MAX_THREADS} threads and {@value #QUEUE_CAPACITY} queued tasks.
+     * It is created when the first task is forked.
+     */
+    private static final class ForkExecutor {
+        private static final int MAX_THREADS = 64;
+        private static final int QUEUE_CAPACITY = 1024;
+        private static final ExecutorService INSTANCE = create();
+
+        private static ExecutorService create() {
+            try {
+                MethodHandle factory = MethodHandles.publicLookup().findStatic(Executors.class,
+                        "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+                return (ExecutorService) factory.invoke();
+            } catch (Throwable t) {
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                            Thread thread = new Thread(runnable, "pustike-fork");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                executor.allowCoreThreadTimeOut(true);
+                return executor;
+            }
+        }
+    }
+
+    /**
+     * Carries the request context in a {@code java.lang.ScopedValue}, which is looked up reflectively as it is
+     * not available in the Java release this library is compiled for.
+     */
+    private static final class ScopedValueCarrier {
+        private static final System.Logger logger = System.getLogger(RequestScope.class.getName());
+        private final MethodHandle isBound;
+        private final MethodHandle get;
+        private final MethodHandle where;
+        private final MethodHandle run;
+
+        private ScopedValueCarrier(MethodHandle isBound, MethodHandle get, MethodHandle where, MethodHandle run) {
+            this.isBound = isBound;
+            this.get = get;
+            this.where = where;
+            this.run = run;
+        }
+
+        static ScopedValueCarrier create() {
+            try {
+                Class<?> scopedValueClass = Class.forName("java.lang.ScopedValue");
+                Class<?> carrierClass = Class.forName("java.lang.ScopedValue$Carrier");
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                Object scopedValue = lookup.findStatic(scopedValueClass, "newInstance",
+                        MethodType.methodType(scopedValueClass)).invoke();
+                MethodHandle isBound = lookup.findVirtual(scopedValueClass, "isBound",
+                        MethodType.methodType(boolean.class)).bindTo(scopedValue);
+                MethodHandle get = lookup.findVirtual(scopedValueClass, "get",
+                        MethodType.methodType(Object.class)).bindTo(scopedValue);
+                MethodHandle where = MethodHandles.insertArguments(lookup.findStatic(scopedValueClass, "where",
+                        MethodType.methodType(carrierClass, scopedValueClass, Object.class)), 0, scopedValue);
+                MethodHandle run = lookup.findVirtual(carrierClass, "run",
+                        MethodType.methodType(void.class, Runnable.class));
+                return new ScopedValueCarrier(isBound, get, where, run);
+            } catch (Throwable t) {
+                // not available in this runtime, or it is a preview API that is not enabled
+                logger.log(System.Logger.Level.DEBUG, "ScopedValue is not available, using ThreadLocal only", t);
+                return null;
+            }
+        }
+
+        Context get() {
+            try {
+                return (boolean) isBound.invoke() ? (Context) get.invoke() : null;
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+
+        <T> T call(Context context, Callable<T> operation) throws Exception {
+            Invocation<T> invocation = new Invocation<>(operation);
+            try {
+                run.invoke(where.invoke(context), (Runnable) invocation);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+            if (invocation.failure != null) {
+                throw invocation.failure;
+            }
+            return invocation.result;
+        }
+    }
+
+    private static final class Invocation<T> implements Runnable {
+        private final Callable<T> operation;
+        private T result;
+        private Exception failure;
+
+        Invocation(Callable<T> operation) {
+            this.operation = operation;
+        }
+
+        @Override
+        public void run() {
+            try {
+                result = operation.call();
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
     }
 }
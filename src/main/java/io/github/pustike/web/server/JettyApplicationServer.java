@@ -31,6 +31,9 @@ import io.github.pustike.web.servlet.DispatcherServlet;
 import io.github.pustike.web.servlet.WebModuleConfigurer;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.ee11.servlet.ServletContextHandler;
 import org.eclipse.jetty.ee11.servlet.ServletHolder;
 
@@ -55,8 +58,12 @@ public class JettyApplicationServer implements ApplicationServer {
     public void start(int serverPort) {
         try {
             logger.log(Level.DEBUG, "Starting server at port " + serverPort);
-            Server server = new Server(serverPort);
+            Server server = new Server(createThreadPool());
+            ServerConnector connector = new ServerConnector(server);
+            connector.setPort(serverPort);
+            server.addConnector(connector);
             server.setHandler(createServerHandler());
+            this.server = server;
             server.start();
             Runtime.getRuntime().addShutdownHook(newServerStopperThread(false));
             logger.log(Level.DEBUG, "Server started at port " + serverPort);
@@ -67,15 +74,40 @@ public class JettyApplicationServer implements ApplicationServer {
         }
     }
 
+    private QueuedThreadPool createThreadPool() {
+        // the pool times the queue wait of jobs, for the queue delay admission control
+        QueuedThreadPool threadPool = new QueueTimingThreadPool();
+        if (contextConfigurer.isVirtualThreadsEnabled()) {
+            if (VirtualThreads.areSupported()) {
+                // jetty still uses the platform threads for selectors, and runs the blocking tasks on virtual threads
+                threadPool.setVirtualThreadsExecutor(VirtualThreads.getNamedVirtualThreadsExecutor("pustike-vt"));
+                logger.log(Level.DEBUG, "Requests are handled on virtual threads");
+            } else {
+                logger.log(Level.WARNING, "Virtual threads are not supported by this runtime, using platform threads");
+            }
+        }
+        return threadPool;
+    }
+
     private Handler createServerHandler() {
         ServletContextHandler contextHandler = new ServletContextHandler(CONTEXT_PATH);
         contextHandler.setErrorHandler(null);
         ServletHolder servletHolder = new ServletHolder(DispatcherServlet.class);
         servletHolder.setInitOrder(1);
+        servletHolder.setAsyncSupported(true);
         contextHandler.addServlet(servletHolder, "/*");
         contextHandler.addServlet(new ServletHolder(new ServerStopperServlet(this)), "/stopServer");
         contextHandler.setAttribute(WebModuleConfigurer.class.getSimpleName(), contextConfigurer);
-        return contextConfigurer.configure(contextHandler, servletHolder);
+        // the queue delay of requests is recorded for the dispatcher servlet's admission control
+        return new QueueDelayHandler(contextConfigurer.configure(contextHandler, servletHolder));
+    }
+
+    /**
+     * Stops the server started by this instance in the current JVM, without exiting it, like an embedding
+     * application or a benchmark starting several servers does. The {@link #start(int)} call then returns.
+     */
+    public void stop() {
+        newServerStopperThread(false).run();
     }
 
     private Thread newServerStopperThread(boolean doExitOnStop) {
@@ -15,4 +15,13 @@ public interface JettyContextConfigurer extends WebModuleConfigurer {
      * @param servletHolder the dispatcher servlet holder
      */
     Handler configure(ServletContextHandler contextHandler, ServletHolder servletHolder);
+
+    /**
+     * Whether requests should be handled on virtual threads, so that handlers blocking on I/O don't hold a platform
+     * thread. It requires a Java runtime supporting virtual threads, otherwise the platform thread pool is used.
+     * @return {@code true} to handle requests on virtual threads, by default {@code false}
+     */
+    default boolean isVirtualThreadsEnabled() {
+        return false;
+    }
 }
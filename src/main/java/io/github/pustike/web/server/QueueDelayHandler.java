@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.server;
+
+import io.github.pustike.web.servlet.DispatcherServlet;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * Handler recording the time each request waited before being handled, as the
+ * {@link DispatcherServlet#QUEUE_DELAY_ATTRIBUTE} request attribute. It is the longer of the wait of the pool job
+ * running the request in the {@link QueueTimingThreadPool}'s queue, which is where HTTP/1.1 requests wait when all
+ * threads are busy, as their headers are parsed by that job, and of the time since the headers were parsed, which is
+ * where requests dispatched after parsing, like HTTP/2 streams, wait.
+ */
+final class QueueDelayHandler extends Handler.Wrapper {
+    QueueDelayHandler(Handler handler) {
+        super(handler);
+    }
+
+    @Override
+    public boolean handle(Request request, Response response, Callback callback) throws Exception {
+        long dispatchDelay = System.nanoTime() - request.getHeadersNanoTime();
+        long queueDelay = Math.max(QueueTimingThreadPool.takeQueueDelay(), dispatchDelay);
+        request.setAttribute(DispatcherServlet.QUEUE_DELAY_ATTRIBUTE, queueDelay);
+        return super.handle(request, response, callback);
+    }
+}
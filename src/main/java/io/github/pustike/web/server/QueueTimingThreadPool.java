@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.server;
+
+import org.eclipse.jetty.util.thread.Invocable;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Thread pool recording the time each job waited in its queue, from being submitted until a pool thread starts
+ * running it. The wait is kept in a thread local while the job runs, so that the request handled by the job can read
+ * it with {@link #takeQueueDelay()}. Jobs handed directly to a reserved thread are timed too, so that a thread never
+ * reports the wait of an earlier job.
+ */
+final class QueueTimingThreadPool extends QueuedThreadPool {
+    private static final long NO_DELAY = -1;
+    private static final ThreadLocal<long[]> queueDelay = ThreadLocal.withInitial(() -> new long[]{NO_DELAY});
+
+    @Override
+    public void execute(Runnable job) {
+        super.execute(new TimedJob(job));
+    }
+
+    @Override
+    public boolean tryExecute(Runnable job) {
+        return super.tryExecute(new TimedJob(job));
+    }
+
+    /**
+     * Returns the nanoseconds the job running on this thread waited in the queue, and clears it, so that it is
+     * reported for the first request handled by the job only.
+     * @return the queue delay in nanoseconds, or {@code -1} if not run by a timed job or already taken
+     */
+    static long takeQueueDelay() {
+        long[] delay = queueDelay.get();
+        long nanos = delay[0];
+        delay[0] = NO_DELAY;
+        return nanos;
+    }
+
+    private static final class TimedJob implements Runnable, Invocable {
+        private final Runnable job;
+        private final long submitTime;
+
+        private TimedJob(Runnable job) {
+            this.job = job;
+            this.submitTime = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            long[] delay = queueDelay.get();
+            delay[0] = System.nanoTime() - submitTime;
+            try {
+                job.run();
+            } finally {
+                delay[0] = NO_DELAY;
+            }
+        }
+
+        @Override
+        public InvocationType getInvocationType() {
+            return Invocable.getInvocationType(job);
+        }
+
+        @Override
+        public String toString() {
+            return job.toString();
+        }
+    }
+}
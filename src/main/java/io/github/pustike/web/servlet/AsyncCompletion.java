@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Tracks the pending asynchronous operations of a request, like reading its body, awaiting the handler's result
+ * and writing the response, and completes the async context when the last of them is done. It is started once per
+ * request and kept as a request attribute, so that each stage can retain it without knowing which stage started
+ * the async processing.
+ * <p>
+ * The timeout is scheduled by this class instead of the container, whose async timeout can only be set during the
+ * initial dispatch and which completes or error dispatches the request when it passes, even while a thread is still
+ * writing the response. So each stage can set its own timeout, and the abort handlers decide whether the request can
+ * be completed on timeout or an operation still owns the response and completes it by releasing.
+ */
+final class AsyncCompletion implements AsyncListener {
+    private static final System.Logger logger = System.getLogger(DispatcherServlet.class.getName());
+    private static final String ATTRIBUTE_NAME = AsyncCompletion.class.getName();
+    private final AsyncContext asyncContext;
+    private final AtomicInteger pendingCount;
+    private volatile AbortHandler abortHandler;
+    private volatile Runnable completionHandler;
+    private volatile Future<?> timeoutTask;
+
+    private AsyncCompletion(AsyncContext asyncContext) {
+        this.asyncContext = asyncContext;
+        this.pendingCount = new AtomicInteger(1);
+        asyncContext.setTimeout(0); // the timeout is scheduled by setTimeout
+    }
+
+    /**
+     * Starts the async processing of the request, or retains the already started completion.
+     * @param request the request
+     * @param response the response
+     * @return the async completion, which should be released when the operation is done
+     */
+    static AsyncCompletion start(HttpServletRequest request, HttpServletResponse response) {
+        AsyncCompletion completion = get(request);
+        if (completion != null) {
+            completion.retain();
+            return completion;
+        }
+        completion = new AsyncCompletion(request.startAsync(request, response));
+        completion.asyncContext.addListener(completion);
+        request.setAttribute(ATTRIBUTE_NAME, completion);
+        return completion;
+    }
+
+    /**
+     * Returns the async completion of the request.
+     * @param request the request
+     * @return the async completion, or {@code null} if the async processing is not started
+     */
+    static AsyncCompletion get(ServletRequest request) {
+        return (AsyncCompletion) request.getAttribute(ATTRIBUTE_NAME);
+    }
+
+    AsyncContext getAsyncContext() {
+        return asyncContext;
+    }
+
+    /**
+     * Sets the time from now within which the async processing must complete, zero or less for no timeout. It
+     * replaces the timeout set before, and can be called from any thread.
+     */
+    void setTimeout(long timeoutMillis) {
+        Future<?> previous = timeoutTask;
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        timeoutTask = timeoutMillis > 0 ? CompletableFuture.runAsync(this::onTimeout,
+                CompletableFuture.delayedExecutor(timeoutMillis, TimeUnit.MILLISECONDS)) : null;
+    }
+
+    /**
+     * Adds a handler called when the async processing times out or fails, after the handlers added before it. The
+     * context is completed after calling them, unless a handler reports that an operation still owns the response.
+     */
+    void addAbortHandler(AbortHandler handler) {
+        synchronized (this) {
+            AbortHandler previous = abortHandler;
+            abortHandler = previous == null ? handler : timedOut -> {
+                boolean previousAborted = previous.onAbort(timedOut);
+                return handler.onAbort(timedOut) && previousAborted;
+            };
+        }
+    }
+
+    /**
+     * Adds a handler called when the async processing is completed, after the response is written or aborted.
+     */
+    void whenComplete(Runnable handler) {
+        synchronized (this) {
+            Runnable previous = completionHandler;
+            completionHandler = previous == null ? handler : () -> {
+                previous.run();
+                handler.run();
+            };
+        }
+    }
+
+    void retain() {
+        pendingCount.incrementAndGet();
+    }
+
+    /**
+     * Releases an operation, completing the async context if no other operation is pending.
+     */
+    void release() {
+        if (pendingCount.decrementAndGet() == 0) {
+            asyncContext.complete();
+        }
+    }
+
+    private void abort(boolean timedOut) throws IOException {
+        boolean aborted = true;
+        try {
+            AbortHandler handler = abortHandler;
+            if (handler != null) {
+                aborted = handler.onAbort(timedOut);
+            }
+        } finally {
+            if (aborted && pendingCount.getAndSet(0) > 0) {
+                asyncContext.complete();
+            }
+        }
+    }
+
+    private void onTimeout() {
+        if (pendingCount.get() == 0) {
+            return; // already completed
+        }
+        try {
+            abort(true);
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.DEBUG, "could not abort the timed out request", e);
+        }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        Future<?> timeout = timeoutTask;
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+        Runnable handler = completionHandler;
+        if (handler != null) {
+            handler.run();
+        }
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+        abort(true); // not expected, as the container's timeout is disabled
+    }
+
+    @Override
+    public void onError(AsyncEvent event) throws IOException {
+        abort(false);
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    /**
+     * Handler of an aborted async processing.
+     */
+    @FunctionalInterface
+    interface AbortHandler {
+        /**
+         * Called when the async processing times out or fails.
+         * @param timedOut {@code true} if timed out, {@code false} if failed, when the client is usually gone
+         * @return {@code true} if the operation is aborted, or {@code false} if it still owns the response, as it
+         * is being written, and it completes the processing by releasing
+         * @throws IOException if an I/O error occurs
+         */
+        boolean onAbort(boolean timedOut) throws IOException;
+    }
+}
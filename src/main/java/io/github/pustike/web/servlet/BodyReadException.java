@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+/**
+ * Thrown when the request body can't be read or bound to a resource method parameter, as it is malformed or doesn't
+ * match the parameter type. It is answered with status 400, unless an exception mapper is registered for it or for
+ * one of its superclasses.
+ */
+final class BodyReadException extends IllegalArgumentException {
+    BodyReadException(String message) {
+        super(message);
+    }
+
+    BodyReadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
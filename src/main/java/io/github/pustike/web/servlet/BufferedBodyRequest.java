@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * A request whose body has already been read without blocking, using a {@link ReadListener}, so that the handler
+ * and its parameter resolution read it from memory instead of waiting on a slow client.
+ * <p>
+ * Bodies of at most {@value #DEFAULT_BUFFER_SIZE} bytes, which most requests have, are read into buffers of that
+ * size kept in a pool bounded by the number of processors. The buffer is returned to the pool when the async
+ * processing of the request completes, so the body must not be read after the response is completed.
+ */
+final class BufferedBodyRequest extends HttpServletRequestWrapper {
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    /** The largest initial buffer, so that a large declared content length doesn't allocate before data arrives */
+    private static final int MAX_INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    private static final BlockingQueue<byte[]> bufferPool =
+            new ArrayBlockingQueue<>(2 * Runtime.getRuntime().availableProcessors());
+    private final byte[] body;
+    private final int length;
+    private boolean bodyAccessed;
+    private volatile boolean released;
+
+    private BufferedBodyRequest(HttpServletRequest request, byte[] body, int length) {
+        super(request);
+        this.body = body;
+        this.length = length;
+    }
+
+    /**
+     * Reads the request body as the data becomes available, and calls the consumer with the buffered request when
+     * all data is read. The read buffer starts small, at most {@value #MAX_INITIAL_BUFFER_SIZE} bytes even if the
+     * content length is larger, and grows as data arrives. A body larger than the maximum size is rejected with a
+     * {@link BodyTooLargeException}, before reading if the content length declares it, or else when the read data
+     * exceeds it. The error consumer is called at most once, and then the request consumer is never called. A
+     * pooled buffer is returned to the pool when the async processing of the request completes.
+     * @param request the request, which must be in async mode
+     * @param maxBodySize the maximum size of the body in bytes
+     * @param requestConsumer the consumer of the buffered request
+     * @param errorConsumer the consumer of the read error
+     * @throws IOException if an I/O error occurs
+     */
+    static void read(HttpServletRequest request, int maxBodySize, Consumer<HttpServletRequest> requestConsumer,
+            Consumer<Throwable> errorConsumer) throws IOException {
+        long contentLength = request.getContentLengthLong();
+        if (contentLength > maxBodySize) {
+            errorConsumer.accept(new BodyTooLargeException(maxBodySize));
+            return;
+        }
+        // a pooled buffer is used only when it is returned on completion, and is large enough for the body
+        AsyncCompletion completion = AsyncCompletion.get(request);
+        byte[] buffer;
+        boolean pooled = completion != null && contentLength <= DEFAULT_BUFFER_SIZE;
+        if (pooled) {
+            buffer = bufferPool.poll();
+            if (buffer == null) {
+                buffer = new byte[DEFAULT_BUFFER_SIZE];
+            }
+        } else {
+            buffer = new byte[contentLength >= 0 ? (int) Math.min(contentLength, MAX_INITIAL_BUFFER_SIZE)
+                    : DEFAULT_BUFFER_SIZE];
+        }
+        ServletInputStream inputStream = request.getInputStream();
+        inputStream.setReadListener(new BodyReadListener(request, completion, inputStream, buffer, pooled,
+                maxBodySize, requestConsumer, errorConsumer));
+    }
+
+    private static void releaseBuffer(byte[] buffer) {
+        bufferPool.offer(buffer);
+    }
+
+    private void release() {
+        released = true;
+        releaseBuffer(body);
+    }
+
+    @Override
+    public ServletInputStream getInputStream() {
+        if (bodyAccessed) {
+            throw new IllegalStateException("the request body is already read");
+        }
+        if (released) {
+            throw new IllegalStateException("the request is completed and its body buffer is released");
+        }
+        bodyAccessed = true;
+        return new ServletInputStream() {
+            private int position;
+
+            @Override
+            public boolean isFinished() {
+                return position == length;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+                try {
+                    readListener.onDataAvailable();
+                    readListener.onAllDataRead();
+                } catch (IOException e) {
+                    readListener.onError(e);
+                }
+            }
+
+            @Override
+            public int read() {
+                return position < length ? body[position++] & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) {
+                if (length == 0) {
+                    return 0;
+                }
+                if (position == BufferedBodyRequest.this.length) {
+                    return -1;
+                }
+                int count = Math.min(length, BufferedBodyRequest.this.length - position);
+                System.arraycopy(body, position, bytes, offset, count);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return length - position;
+            }
+        };
+    }
+
+    @Override
+    public BufferedReader getReader() {
+        String encoding = getCharacterEncoding();
+        Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+        return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+    }
+
+    private static final class BodyReadListener implements ReadListener {
+        private final HttpServletRequest request;
+        private final AsyncCompletion completion;
+        private final ServletInputStream inputStream;
+        private final Consumer<HttpServletRequest> requestConsumer;
+        private final Consumer<Throwable> errorConsumer;
+        private final int maxBodySize;
+        /** The capacity limit of the buffer, one byte more than the maximum size to detect a too large body */
+        private final int maxBufferSize;
+        private byte[] buffer;
+        /** Whether the buffer is taken from the pool, which is the case until it grows */
+        private boolean pooled;
+        private int count;
+        private boolean done;
+
+        private BodyReadListener(HttpServletRequest request, AsyncCompletion completion,
+                ServletInputStream inputStream, byte[] buffer, boolean pooled, int maxBodySize,
+                Consumer<HttpServletRequest> requestConsumer, Consumer<Throwable> errorConsumer) {
+            this.request = request;
+            this.completion = completion;
+            this.inputStream = inputStream;
+            this.maxBodySize = maxBodySize;
+            this.maxBufferSize = (int) Math.min(MAX_ARRAY_SIZE, maxBodySize + 1L);
+            this.buffer = buffer;
+            this.pooled = pooled;
+            this.requestConsumer = requestConsumer;
+            this.errorConsumer = errorConsumer;
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException {
+            // isReady() is not called after failing, so that no more data is read and this isn't called again
+            while (!done && inputStream.isReady() && !inputStream.isFinished()) {
+                if (count == buffer.length) {
+                    if (buffer.length >= maxBufferSize) {
+                        fail(new BodyTooLargeException(maxBodySize));
+                        return;
+                    }
+                    byte[] previous = buffer;
+                    buffer = Arrays.copyOf(buffer, (int) Math.min(maxBufferSize, Math.max(16, 2L * buffer.length)));
+                    if (pooled) {
+                        pooled = false;
+                        releaseBuffer(previous);
+                    }
+                }
+                int read = inputStream.read(buffer, count, buffer.length - count);
+                if (read == -1) {
+                    return;
+                }
+                count += read;
+                if (count > maxBodySize) {
+                    fail(new BodyTooLargeException(maxBodySize));
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void onAllDataRead() {
+            if (done) {
+                return;
+            }
+            done = true;
+            BufferedBodyRequest bufferedRequest = new BufferedBodyRequest(request, buffer, count);
+            if (pooled) {
+                completion.whenComplete(bufferedRequest::release);
+            }
+            buffer = null;
+            requestConsumer.accept(bufferedRequest);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail(throwable);
+        }
+
+        private void fail(Throwable throwable) {
+            if (!done) {
+                done = true;
+                if (pooled) {
+                    releaseBuffer(buffer);
+                }
+                buffer = null;
+                errorConsumer.accept(throwable);
+            }
+        }
+    }
+
+    /**
+     * Thrown when the request body is larger than the maximum size.
+     */
+    static final class BodyTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        BodyTooLargeException(int maxBodySize) {
+            super("the request body is larger than " + maxBodySize + " bytes");
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.util.Objects;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.github.pustike.web.Priority;
+
+/**
+ * A named executor with a bounded number of threads and a bounded queue, which isolates the routes annotated with
+ * {@link io.github.pustike.web.Executor} from the rest of the application. Queued requests are taken by priority,
+ * and in their arrival order within the same priority. The queue depth and the counts of handled and rejected
+ * requests can be read for monitoring.
+ * @see WebModuleConfigurer#getExecutors()
+ */
+public final class BulkheadExecutor {
+    private final String name;
+    private final int queueCapacity;
+    private final int maxPending;
+    private final ThreadPoolExecutor threadPool;
+    /** The number of requests queued or being handled, and of those queued */
+    private final AtomicInteger pendingCount;
+    private final AtomicInteger queueDepth;
+    private final AtomicLong sequence;
+    private final LongAdder rejectedCount;
+
+    private BulkheadExecutor(String name, int maxThreads, int queueCapacity) {
+        if (maxThreads < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("invalid executor size, threads: " + maxThreads + ", queue: "
+                    + queueCapacity);
+        }
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.maxPending = maxThreads + queueCapacity;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.threadPool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "pustike-" + name + '-' + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.threadPool.allowCoreThreadTimeOut(true);
+        this.pendingCount = new AtomicInteger();
+        this.queueDepth = new AtomicInteger();
+        this.sequence = new AtomicLong();
+        this.rejectedCount = new LongAdder();
+    }
+
+    /**
+     * Creates a bulkhead executor.
+     * @param name the name of the executor, referred by the routes
+     * @param maxThreads the maximum number of threads handling requests
+     * @param queueCapacity the maximum number of requests waiting for a thread
+     * @return the bulkhead executor
+     */
+    public static BulkheadExecutor of(String name, int maxThreads, int queueCapacity) {
+        return new BulkheadExecutor(Objects.requireNonNull(name), maxThreads, queueCapacity);
+    }
+
+    /**
+     * Returns the name of this executor.
+     * @return the executor name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of requests waiting in the queue for a thread.
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Returns the maximum number of requests that can wait in the queue.
+     * @return the queue capacity
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Returns the number of threads currently handling requests.
+     * @return the active thread count
+     */
+    public int getActiveCount() {
+        return threadPool.getActiveCount();
+    }
+
+    /**
+     * Returns the number of requests handled so far.
+     * @return the completed request count
+     */
+    public long getCompletedCount() {
+        return threadPool.getCompletedTaskCount();
+    }
+
+    /**
+     * Returns the number of requests rejected as the queue was full.
+     * @return the rejected request count
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * Queues the task, unless the queue is full or the executor is shut down.
+     * @param priority the priority of the request
+     * @param task the task handling the request
+     * @return {@code true} if queued, {@code false} if rejected
+     */
+    boolean execute(Priority.Level priority, Runnable task) {
+        return execute(priority, task, null);
+    }
+
+    /**
+     * Queues the task, unless the queue is full or the executor is shut down.
+     * @param priority the priority of the request
+     * @param task the task handling the request
+     * @param cancelHandler called instead of the task when it is still queued as the executor is shut down, so
+     * that the request waiting for it is completed; can be null
+     * @return {@code true} if queued, {@code false} if rejected
+     */
+    boolean execute(Priority.Level priority, Runnable task, Runnable cancelHandler) {
+        if (pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            rejectedCount.increment();
+            return false;
+        }
+        queueDepth.incrementAndGet();
+        try {
+            threadPool.execute(new QueuedTask(priority, sequence.getAndIncrement(), task, cancelHandler));
+        } catch (RejectedExecutionException e) { // shut down
+            queueDepth.decrementAndGet();
+            pendingCount.decrementAndGet();
+            rejectedCount.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes the task from the queue if it is not started yet, like when the request waiting for it has timed out,
+     * so that it doesn't hold a place in the queue.
+     * @param task the task given to {@link #execute(Priority.Level, Runnable, Runnable)}
+     * @return {@code true} if removed, and so it is never run, or {@code false} if it is already started
+     */
+    boolean remove(Runnable task) {
+        for (Runnable queued : threadPool.getQueue()) {
+            if (((QueuedTask) queued).task == task) {
+                if (threadPool.remove(queued)) {
+                    queueDepth.decrementAndGet();
+                    pendingCount.decrementAndGet();
+                    return true;
+                }
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Shuts down this executor, interrupting the running tasks and calling the cancel handlers of the queued ones.
+     */
+    void shutdown() {
+        for (Runnable queued : threadPool.shutdownNow()) {
+            ((QueuedTask) queued).cancel();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BulkheadExecutor(" + name + "; queue: " + queueDepth.get() + '/' + queueCapacity + "; active: "
+                + getActiveCount() + ')';
+    }
+
+    private final class QueuedTask implements Runnable, Comparable<QueuedTask> {
+        private final Priority.Level priority;
+        private final long sequence;
+        private final Runnable task;
+        private final Runnable cancelHandler;
+
+        private QueuedTask(Priority.Level priority, long sequence, Runnable task, Runnable cancelHandler) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+            this.cancelHandler = cancelHandler;
+        }
+
+        @Override
+        public void run() {
+            queueDepth.decrementAndGet();
+            try {
+                task.run();
+            } finally {
+                pendingCount.decrementAndGet();
+            }
+        }
+
+        private void cancel() {
+            queueDepth.decrementAndGet();
+            pendingCount.decrementAndGet();
+            if (cancelHandler != null) {
+                cancelHandler.run();
+            }
+        }
+
+        @Override
+        public int compareTo(QueuedTask other) {
+            int result = priority.compareTo(other.priority);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+}
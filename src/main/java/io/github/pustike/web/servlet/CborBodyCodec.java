@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonException;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonParser;
+
+import io.github.pustike.web.RawJson;
+
+/**
+ * Message body reader and writer for the <a href="https://tools.ietf.org/html/rfc8949">CBOR</a> binary encoding,
+ * which is more compact and cheaper to parse than JSON text. JSON values are mapped to the CBOR data model as
+ * described in <a href="https://tools.ietf.org/html/rfc8949#section-6.2">Section 6.2 of RFC 8949</a>: integers
+ * which don't fit in a long are written as bignums and decimals which can't be represented exactly as a double are
+ * written as decimal fractions. Byte strings are read as base64 encoded strings. The content is decoded by
+ * {@link CborParser}, which can also stream over it without building the JSON value tree.
+ */
+final class CborBodyCodec implements MessageBodyWriter, MessageBodyReader {
+    static final String MEDIA_TYPE = "application/cbor";
+    private static final int MAJOR_UNSIGNED = 0, MAJOR_NEGATIVE = 1, MAJOR_BYTES = 2, MAJOR_TEXT = 3,
+            MAJOR_ARRAY = 4, MAJOR_MAP = 5, MAJOR_TAG = 6;
+    private static final int TAG_POSITIVE_BIGNUM = 2, TAG_NEGATIVE_BIGNUM = 3, TAG_DECIMAL_FRACTION = 4;
+    private static final int FALSE = 0xf4, TRUE = 0xf5, NULL = 0xf6, FLOAT64 = 0xfb;
+
+    @Override
+    public String getMediaType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public void writeTo(JsonValue value, OutputStream outputStream) throws IOException {
+        writeValue(value, outputStream);
+    }
+
+    private static void writeValue(JsonValue value, OutputStream out) throws IOException {
+        if (value instanceof RawJson) {
+            value = ((RawJson) value).parse();
+        }
+        switch (value.getValueType()) {
+            case OBJECT:
+                JsonObject jsonObject = value.asJsonObject();
+                writeHead(out, MAJOR_MAP, jsonObject.size());
+                for (Map.Entry<String, JsonValue> entry : jsonObject.entrySet()) {
+                    writeText(out, entry.getKey());
+                    writeValue(entry.getValue(), out);
+                }
+                break;
+            case ARRAY:
+                JsonArray jsonArray = value.asJsonArray();
+                writeHead(out, MAJOR_ARRAY, jsonArray.size());
+                for (JsonValue element : jsonArray) {
+                    writeValue(element, out);
+                }
+                break;
+            case STRING:
+                writeText(out, ((JsonString) value).getString());
+                break;
+            case NUMBER:
+                writeNumber(out, (JsonNumber) value);
+                break;
+            case TRUE:
+                out.write(TRUE);
+                break;
+            case FALSE:
+                out.write(FALSE);
+                break;
+            default:
+                out.write(NULL);
+        }
+    }
+
+    private static void writeHead(OutputStream out, int majorType, long argument) throws IOException {
+        int major = majorType << 5;
+        if (argument >= 0 && argument < 24) {
+            out.write(major | (int) argument);
+        } else if (argument >= 0 && argument < 0x100) {
+            out.write(major | 24);
+            out.write((int) argument);
+        } else if (argument >= 0 && argument < 0x10000) {
+            out.write(major | 25);
+            writeBigEndian(out, argument, 2);
+        } else if (argument >= 0 && argument < 0x100000000L) {
+            out.write(major | 26);
+            writeBigEndian(out, argument, 4);
+        } else { // treated as unsigned
+            out.write(major | 27);
+            writeBigEndian(out, argument, 8);
+        }
+    }
+
+    private static void writeBigEndian(OutputStream out, long value, int byteCount) throws IOException {
+        for (int shift = (byteCount - 1) * 8; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift) & 0xff);
+        }
+    }
+
+    private static void writeText(OutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeHead(out, MAJOR_TEXT, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeNumber(OutputStream out, JsonNumber number) throws IOException {
+        if (number.isIntegral()) {
+            writeInteger(out, number.bigIntegerValue());
+            return;
+        }
+        BigDecimal decimal = number.bigDecimalValue();
+        double doubleValue = decimal.doubleValue();
+        if (Double.isFinite(doubleValue) && BigDecimal.valueOf(doubleValue).compareTo(decimal) == 0) {
+            out.write(FLOAT64);
+            writeBigEndian(out, Double.doubleToLongBits(doubleValue), 8);
+        } else {
+            writeHead(out, MAJOR_TAG, TAG_DECIMAL_FRACTION);
+            writeHead(out, MAJOR_ARRAY, 2);
+            writeInteger(out, BigInteger.valueOf(-(long) decimal.scale()));
+            writeInteger(out, decimal.unscaledValue());
+        }
+    }
+
+    private static void writeInteger(OutputStream out, BigInteger value) throws IOException {
+        if (value.bitLength() < 64) {
+            long longValue = value.longValue();
+            if (longValue >= 0) {
+                writeHead(out, MAJOR_UNSIGNED, longValue);
+            } else {
+                writeHead(out, MAJOR_NEGATIVE, -1 - longValue);
+            }
+            return;
+        }
+        boolean negative = value.signum() < 0;
+        byte[] magnitude = (negative ? BigInteger.ONE.negate().subtract(value) : value).toByteArray();
+        int offset = magnitude[0] == 0 ? 1 : 0; // skip the sign byte
+        writeHead(out, MAJOR_TAG, negative ? TAG_NEGATIVE_BIGNUM : TAG_POSITIVE_BIGNUM);
+        writeHead(out, MAJOR_BYTES, magnitude.length - offset);
+        out.write(magnitude, offset, magnitude.length - offset);
+    }
+
+    @Override
+    public JsonValue readFrom(InputStream inputStream) throws IOException {
+        CborParser parser = new CborParser(inputStream instanceof BufferedInputStream ? inputStream
+                : new BufferedInputStream(inputStream));
+        try {
+            parser.next();
+            return parser.getValue();
+        } catch (JsonException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates a parser streaming over the CBOR content, which decodes a data item only when its event is read.
+     */
+    @Override
+    public JsonParser createParser(InputStream inputStream) {
+        return new CborParser(inputStream instanceof BufferedInputStream ? inputStream
+                : new BufferedInputStream(inputStream));
+    }
+}
@@ -0,0 +1,513 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.NoSuchElementException;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonException;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonLocation;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParsingException;
+
+/**
+ * A JSON parser streaming over <a href="https://tools.ietf.org/html/rfc8949">CBOR</a> content, which decodes one
+ * data item per event, so that a CBOR request body is bound or read without first building the JSON value tree.
+ * Data items are mapped to JSON events as described in {@link CborBodyCodec}: byte strings are read as base64
+ * encoded strings, bignums and decimal fractions as numbers, non-string map keys as their JSON text, and other
+ * tags are ignored. Content following the top-level data item is rejected, when {@link #hasNext()} is called after
+ * it.
+ */
+final class CborParser implements JsonParser {
+    private static final int MAJOR_UNSIGNED = 0, MAJOR_NEGATIVE = 1, MAJOR_BYTES = 2, MAJOR_TEXT = 3,
+            MAJOR_ARRAY = 4, MAJOR_MAP = 5, MAJOR_TAG = 6;
+    private static final int TAG_POSITIVE_BIGNUM = 2, TAG_NEGATIVE_BIGNUM = 3, TAG_DECIMAL_FRACTION = 4;
+    private static final int FALSE = 0xf4, TRUE = 0xf5, NULL = 0xf6, UNDEFINED = 0xf7, FLOAT16 = 0xf9,
+            FLOAT32 = 0xfa, FLOAT64 = 0xfb, BREAK = 0xff;
+    private static final int INDEFINITE_LENGTH = 31;
+    private static final int MAX_NESTING_DEPTH = 512;
+    private final InputStream in;
+    private long offset;
+    private int peekedByte;
+    /** Whether the container at each depth is a map */
+    private boolean[] mapFrames;
+    /** The number of data items remaining in the container at each depth, or -1 if it has indefinite length */
+    private long[] remainingItems;
+    /** Whether the key of a map entry is read, and its value is expected next, at each depth */
+    private boolean[] valueExpected;
+    private int depth;
+    private Event currentEvent;
+    private String stringValue;
+    private BigDecimal numberValue;
+    private boolean finished;
+
+    CborParser(InputStream in) {
+        this.in = in;
+        this.peekedByte = -1;
+        this.mapFrames = new boolean[16];
+        this.remainingItems = new long[16];
+        this.valueExpected = new boolean[16];
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (finished) {
+            return false;
+        }
+        if (depth == 0 && currentEvent != null && currentEvent != Event.START_OBJECT
+                && currentEvent != Event.START_ARRAY) {
+            finished = true;
+            if (peekByte() != -1) {
+                throw new JsonParsingException("unexpected content after the CBOR data item", getLocation());
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Event next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (depth == 0) {
+            return currentEvent = readItem(readByte());
+        }
+        int top = depth - 1;
+        if (isContainerEnd(top)) {
+            depth--;
+            return currentEvent = mapFrames[top] ? Event.END_OBJECT : Event.END_ARRAY;
+        }
+        if (remainingItems[top] > 0) {
+            remainingItems[top]--;
+        }
+        if (!mapFrames[top]) {
+            return currentEvent = readItem(readByte());
+        }
+        valueExpected[top] = !valueExpected[top];
+        if (!valueExpected[top]) {
+            return currentEvent = readItem(readByte());
+        }
+        Event keyEvent = readItem(readByte());
+        if (keyEvent == Event.START_OBJECT || keyEvent == Event.START_ARRAY) {
+            throw new JsonParsingException("CBOR map key must not be an array or a map", getLocation());
+        }
+        stringValue = keyEvent == Event.VALUE_STRING ? stringValue
+                : keyEvent == Event.VALUE_NUMBER ? numberValue.toString()
+                : keyEvent == Event.VALUE_TRUE ? "true" : keyEvent == Event.VALUE_FALSE ? "false" : "null";
+        return currentEvent = Event.KEY_NAME;
+    }
+
+    private boolean isContainerEnd(int top) {
+        if (remainingItems[top] != -1) {
+            return remainingItems[top] == 0;
+        }
+        if (peekByte() != BREAK) {
+            return false;
+        }
+        if (valueExpected[top]) {
+            throw new JsonParsingException("CBOR map has a key without a value", getLocation());
+        }
+        readByte();
+        return true;
+    }
+
+    private Event readItem(int initialByte) {
+        int majorType = initialByte >>> 5;
+        int additionalInfo = initialByte & 0x1f;
+        switch (majorType) {
+            case MAJOR_UNSIGNED:
+            case MAJOR_NEGATIVE:
+                long argument = readArgument(additionalInfo);
+                numberValue = argument >= 0
+                        ? BigDecimal.valueOf(majorType == MAJOR_UNSIGNED ? argument : -1 - argument)
+                        : new BigDecimal(toBigInteger(majorType, argument));
+                return Event.VALUE_NUMBER;
+            case MAJOR_BYTES:
+                stringValue = Base64.getEncoder().encodeToString(readString(majorType, additionalInfo));
+                return Event.VALUE_STRING;
+            case MAJOR_TEXT:
+                stringValue = new String(readString(majorType, additionalInfo), StandardCharsets.UTF_8);
+                return Event.VALUE_STRING;
+            case MAJOR_ARRAY:
+            case MAJOR_MAP:
+                boolean map = majorType == MAJOR_MAP;
+                long length = additionalInfo == INDEFINITE_LENGTH ? -1 : readLength(additionalInfo);
+                startContainer(map, map && length > 0 ? 2 * length : length);
+                return map ? Event.START_OBJECT : Event.START_ARRAY;
+            case MAJOR_TAG:
+                return readTaggedItem(readArgument(additionalInfo));
+            default:
+                return readSimpleValue(initialByte);
+        }
+    }
+
+    private void startContainer(boolean map, long itemCount) {
+        if (depth == MAX_NESTING_DEPTH) {
+            throw new JsonParsingException("CBOR content is nested too deeply", getLocation());
+        }
+        if (depth == mapFrames.length) {
+            mapFrames = Arrays.copyOf(mapFrames, depth * 2);
+            remainingItems = Arrays.copyOf(remainingItems, depth * 2);
+            valueExpected = Arrays.copyOf(valueExpected, depth * 2);
+        }
+        mapFrames[depth] = map;
+        remainingItems[depth] = itemCount;
+        valueExpected[depth] = false;
+        depth++;
+    }
+
+    private Event readTaggedItem(long tag) {
+        int initialByte = readByte();
+        if (tag == TAG_POSITIVE_BIGNUM || tag == TAG_NEGATIVE_BIGNUM) {
+            numberValue = new BigDecimal(readBignum(tag, initialByte));
+            return Event.VALUE_NUMBER;
+        } else if (tag == TAG_DECIMAL_FRACTION) {
+            if (initialByte != (MAJOR_ARRAY << 5 | 2)) {
+                throw new JsonParsingException("CBOR decimal fraction must be an array of exponent and mantissa",
+                        getLocation());
+            }
+            BigInteger exponent = readInteger(readByte());
+            BigInteger mantissa = readInteger(readByte());
+            if (exponent.bitLength() >= 32) {
+                throw new JsonParsingException("CBOR decimal fraction exponent is too large", getLocation());
+            }
+            numberValue = new BigDecimal(mantissa, -exponent.intValue());
+            return Event.VALUE_NUMBER;
+        }
+        return readItem(initialByte); // other tags are ignored
+    }
+
+    private BigInteger readInteger(int initialByte) {
+        int majorType = initialByte >>> 5;
+        if (majorType == MAJOR_UNSIGNED || majorType == MAJOR_NEGATIVE) {
+            return toBigInteger(majorType, readArgument(initialByte & 0x1f));
+        } else if (majorType == MAJOR_TAG) {
+            long tag = readArgument(initialByte & 0x1f);
+            if (tag == TAG_POSITIVE_BIGNUM || tag == TAG_NEGATIVE_BIGNUM) {
+                return readBignum(tag, readByte());
+            }
+        }
+        throw new JsonParsingException("CBOR decimal fraction must have integer exponent and mantissa",
+                getLocation());
+    }
+
+    private static BigInteger toBigInteger(int majorType, long argument) {
+        BigInteger value = argument >= 0 ? BigInteger.valueOf(argument)
+                : new BigInteger(Long.toUnsignedString(argument));
+        return majorType == MAJOR_UNSIGNED ? value : value.not();
+    }
+
+    private BigInteger readBignum(long tag, int initialByte) {
+        if (initialByte >>> 5 != MAJOR_BYTES) {
+            throw new JsonParsingException("CBOR bignum content must be a byte string", getLocation());
+        }
+        BigInteger magnitude = new BigInteger(1, readString(MAJOR_BYTES, initialByte & 0x1f));
+        return tag == TAG_POSITIVE_BIGNUM ? magnitude : magnitude.not();
+    }
+
+    private Event readSimpleValue(int initialByte) {
+        switch (initialByte) {
+            case FALSE:
+                return Event.VALUE_FALSE;
+            case TRUE:
+                return Event.VALUE_TRUE;
+            case NULL:
+            case UNDEFINED:
+                return Event.VALUE_NULL;
+            case FLOAT16:
+                return setDoubleValue(halfToFloat((int) readBigEndian(2)));
+            case FLOAT32:
+                return setDoubleValue(Float.intBitsToFloat((int) readBigEndian(4)));
+            case FLOAT64:
+                return setDoubleValue(Double.longBitsToDouble(readBigEndian(8)));
+            default:
+                throw new JsonParsingException("unsupported CBOR simple value: " + initialByte, getLocation());
+        }
+    }
+
+    private Event setDoubleValue(double value) {
+        if (!Double.isFinite(value)) {
+            throw new JsonParsingException("CBOR content has a number which can't be represented in JSON: "
+                    + value, getLocation());
+        }
+        numberValue = BigDecimal.valueOf(value);
+        return Event.VALUE_NUMBER;
+    }
+
+    private static float halfToFloat(int bits) {
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        float value = exponent == 0 ? mantissa * 0x1p-24f
+                : exponent == 31 ? (mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN)
+                : (1 + mantissa / 1024f) * (float) Math.pow(2, exponent - 15);
+        return (bits & 0x8000) != 0 ? -value : value;
+    }
+
+    private byte[] readString(int majorType, int additionalInfo) {
+        if (additionalInfo != INDEFINITE_LENGTH) {
+            int length = (int) readLength(additionalInfo);
+            byte[] bytes = readBytes(length);
+            if (bytes.length != length) {
+                throw new JsonParsingException("unexpected end of CBOR content", getLocation());
+            }
+            return bytes;
+        }
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        for (int b = readByte(); b != BREAK; b = readByte()) {
+            if (b >>> 5 != majorType || (b & 0x1f) == INDEFINITE_LENGTH) {
+                throw new JsonParsingException("invalid chunk in indefinite length CBOR string", getLocation());
+            }
+            chunks.writeBytes(readString(majorType, b & 0x1f));
+        }
+        return chunks.toByteArray();
+    }
+
+    private long readLength(int additionalInfo) {
+        long length = readArgument(additionalInfo);
+        if (length < 0 || length > Integer.MAX_VALUE - 8) {
+            throw new JsonParsingException("CBOR length is too large: " + Long.toUnsignedString(length),
+                    getLocation());
+        }
+        return length;
+    }
+
+    private long readArgument(int additionalInfo) {
+        if (additionalInfo < 24) {
+            return additionalInfo;
+        }
+        switch (additionalInfo) {
+            case 24:
+                return readBigEndian(1);
+            case 25:
+                return readBigEndian(2);
+            case 26:
+                return readBigEndian(4);
+            case 27:
+                return readBigEndian(8);
+            default:
+                throw new JsonParsingException("invalid CBOR additional information: " + additionalInfo,
+                        getLocation());
+        }
+    }
+
+    private long readBigEndian(int byteCount) {
+        long value = 0;
+        for (int i = 0; i < byteCount; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    private int readByte() {
+        int b = peekByte();
+        if (b == -1) {
+            throw new JsonParsingException("unexpected end of CBOR content", getLocation());
+        }
+        peekedByte = -1;
+        offset++;
+        return b;
+    }
+
+    private int peekByte() {
+        if (peekedByte == -1) {
+            try {
+                peekedByte = in.read();
+            } catch (IOException e) {
+                throw new JsonException("could not read CBOR content", e);
+            }
+        }
+        return peekedByte;
+    }
+
+    private byte[] readBytes(int length) {
+        try {
+            byte[] bytes;
+            if (peekedByte == -1) {
+                bytes = in.readNBytes(length);
+            } else if (length > 0) {
+                bytes = new byte[length];
+                bytes[0] = (byte) peekedByte;
+                peekedByte = -1;
+                int count = 1 + in.readNBytes(bytes, 1, length - 1);
+                bytes = count == length ? bytes : Arrays.copyOf(bytes, count);
+            } else {
+                bytes = new byte[0];
+            }
+            offset += bytes.length;
+            return bytes;
+        } catch (IOException e) {
+            throw new JsonException("could not read CBOR content", e);
+        }
+    }
+
+    @Override
+    public Event currentEvent() {
+        return currentEvent;
+    }
+
+    @Override
+    public String getString() {
+        if (currentEvent == Event.VALUE_NUMBER) {
+            return numberValue.toString();
+        } else if (currentEvent == Event.VALUE_STRING || currentEvent == Event.KEY_NAME) {
+            return stringValue;
+        }
+        throw new IllegalStateException("getString is not supported for " + currentEvent);
+    }
+
+    @Override
+    public boolean isIntegralNumber() {
+        return getNumber().scale() <= 0;
+    }
+
+    @Override
+    public int getInt() {
+        return getNumber().intValue();
+    }
+
+    @Override
+    public long getLong() {
+        return getNumber().longValue();
+    }
+
+    @Override
+    public BigDecimal getBigDecimal() {
+        return getNumber();
+    }
+
+    private BigDecimal getNumber() {
+        if (currentEvent != Event.VALUE_NUMBER) {
+            throw new IllegalStateException("number is not available for " + currentEvent);
+        }
+        return numberValue;
+    }
+
+    @Override
+    public JsonLocation getLocation() {
+        long streamOffset = offset;
+        return new JsonLocation() {
+            @Override
+            public long getLineNumber() {
+                return -1;
+            }
+
+            @Override
+            public long getColumnNumber() {
+                return -1;
+            }
+
+            @Override
+            public long getStreamOffset() {
+                return streamOffset;
+            }
+        };
+    }
+
+    @Override
+    public JsonValue getValue() {
+        if (currentEvent == null) {
+            throw new IllegalStateException("getValue is not supported before the first event");
+        }
+        switch (currentEvent) {
+            case START_OBJECT:
+                return getObject();
+            case START_ARRAY:
+                return getArray();
+            case KEY_NAME:
+            case VALUE_STRING:
+                return Json.createValue(stringValue);
+            case VALUE_NUMBER:
+                return numberValue.scale() <= 0 && numberValue.precision() - numberValue.scale() < 19
+                        ? Json.createValue(numberValue.longValueExact()) : Json.createValue(numberValue);
+            case VALUE_TRUE:
+                return JsonValue.TRUE;
+            case VALUE_FALSE:
+                return JsonValue.FALSE;
+            case VALUE_NULL:
+                return JsonValue.NULL;
+            default:
+                throw new IllegalStateException("getValue is not supported for " + currentEvent);
+        }
+    }
+
+    @Override
+    public JsonObject getObject() {
+        if (currentEvent != Event.START_OBJECT) {
+            throw new IllegalStateException("getObject is not supported for " + currentEvent);
+        }
+        JsonObjectBuilder objectBuilder = Json.createObjectBuilder();
+        while (next() != Event.END_OBJECT) {
+            String key = stringValue;
+            next();
+            objectBuilder.add(key, getValue());
+        }
+        return objectBuilder.build();
+    }
+
+    @Override
+    public JsonArray getArray() {
+        if (currentEvent != Event.START_ARRAY) {
+            throw new IllegalStateException("getArray is not supported for " + currentEvent);
+        }
+        JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+        while (next() != Event.END_ARRAY) {
+            arrayBuilder.add(getValue());
+        }
+        return arrayBuilder.build();
+    }
+
+    @Override
+    public void skipObject() {
+        skipContainer(true);
+    }
+
+    @Override
+    public void skipArray() {
+        skipContainer(false);
+    }
+
+    private void skipContainer(boolean map) {
+        if (depth > 0 && mapFrames[depth - 1] == map) {
+            int targetDepth = depth - 1;
+            while (depth > targetDepth) {
+                next();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        finished = true;
+        try {
+            in.close();
+        } catch (IOException e) {
+            throw new JsonException("could not close CBOR content", e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.pustike.web.Priority;
+
+/**
+ * Adaptive concurrency limit of a route, using additive increase and multiplicative decrease (AIMD). The limit is
+ * increased by one when a request completes in time while at least half of the limit is in use, and multiplied by
+ * the backoff ratio when a request is dropped or the smoothed latency exceeds the tolerated multiple of the minimum
+ * latency. The smoothed latency is an exponentially weighted moving average of the samples, each capped at twice the
+ * tolerated latency, so that occasional slow requests of a long-tailed latency distribution don't shrink the limit,
+ * while a lasting increase does. Latency is not considered until the average has seen enough samples to settle,
+ * as the first requests of a route are often slow. The minimum latency is tracked in windows, so that it follows
+ * lasting changes of the route's baseline latency.
+ * Acquiring and releasing are lock free. Low priority requests can use only half of the limit, so that the rest is
+ * kept for requests of higher priority, and critical requests are admitted even over the limit.
+ */
+final class ConcurrencyLimiter {
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    /** The weight of a new sample in the smoothed latency is 1 / 2^SMOOTHING_SHIFT */
+    private static final int SMOOTHING_SHIFT = 4;
+    /** The number of samples after which the smoothed latency is used to reduce the limit */
+    private static final int WARMUP_SAMPLES = 4 << SMOOTHING_SHIFT;
+    private static final long MIN_LATENCY_WINDOW = TimeUnit.SECONDS.toNanos(30);
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight;
+    /** The minimum latency in the previous window, and the one of the current window */
+    private final AtomicLong minLatency;
+    private final AtomicLong windowMinLatency;
+    private final AtomicLong windowEnd;
+    /** The moving average of recent latencies, or zero before the first sample */
+    private final AtomicLong smoothedLatency;
+    private final AtomicInteger sampleCount;
+    /** When the limit was last reduced, so that it is reduced at most once for the requests in flight then */
+    private volatile long lastDecrease;
+
+    ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = new AtomicInteger(Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit));
+        this.inFlight = new AtomicInteger();
+        this.minLatency = new AtomicLong(Long.MAX_VALUE);
+        this.windowMinLatency = new AtomicLong(Long.MAX_VALUE);
+        long now = System.nanoTime();
+        this.windowEnd = new AtomicLong(now + MIN_LATENCY_WINDOW);
+        this.smoothedLatency = new AtomicLong();
+        this.sampleCount = new AtomicInteger();
+        this.lastDecrease = now;
+    }
+
+    /**
+     * Acquires a permit if the number of requests in flight is below the limit for the priority.
+     * @param priority the priority of the request
+     * @return {@code true} if acquired, {@code false} if the request should be rejected
+     */
+    boolean tryAcquire(Priority.Level priority) {
+        if (priority == Priority.Level.CRITICAL) {
+            inFlight.incrementAndGet();
+            return true;
+        }
+        int current;
+        do {
+            current = inFlight.get();
+            int limit = this.limit.get();
+            if (current >= (priority == Priority.Level.LOW ? (limit + 1) / 2 : limit)) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Releases the permit of a completed request and adjusts the limit by its latency.
+     * @param startTime the {@link System#nanoTime()} when the permit was acquired
+     * @param dropped whether the request timed out or was otherwise dropped for overload
+     */
+    void release(long startTime, boolean dropped) {
+        int inFlight = this.inFlight.getAndDecrement();
+        long now = System.nanoTime();
+        long latency = now - startTime;
+        long minLatency = updateMinLatency(now, latency);
+        long tolerated = (long) Math.min(Long.MAX_VALUE / 2.0, minLatency * LATENCY_TOLERANCE);
+        long sample = Math.min(latency, tolerated * 2);
+        long smoothed = smoothedLatency.updateAndGet(current -> current == 0 ? sample
+                : current + ((sample - current) >> SMOOTHING_SHIFT));
+        boolean warmedUp = sampleCount.get() >= WARMUP_SAMPLES || sampleCount.incrementAndGet() >= WARMUP_SAMPLES;
+        if (dropped || warmedUp && smoothed > tolerated) {
+            if (startTime - lastDecrease > 0) {
+                lastDecrease = now;
+                limit.updateAndGet(current -> Math.max(minLimit, (int) (current * BACKOFF_RATIO)));
+            }
+        } else if (inFlight * 2 >= limit.get()) {
+            limit.updateAndGet(current -> Math.min(maxLimit, current + 1));
+        }
+    }
+
+    private long updateMinLatency(long now, long latency) {
+        windowMinLatency.accumulateAndGet(latency, Math::min);
+        long end = windowEnd.get();
+        if (now - end >= 0 && windowEnd.compareAndSet(end, now + MIN_LATENCY_WINDOW)) {
+            minLatency.set(windowMinLatency.getAndSet(Long.MAX_VALUE));
+        }
+        long previous = minLatency.get();
+        // until the first window ends, and when the current window saw a lower latency, it is used
+        return Math.min(previous, windowMinLatency.get());
+    }
+
+    int getLimit() {
+        return limit.get();
+    }
+}
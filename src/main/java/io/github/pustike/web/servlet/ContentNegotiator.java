@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.github.pustike.web.Produces;
+import io.github.pustike.web.utils.MediaType;
+
+/**
+ * Selects the message body writer for a request, from the writers producible by the route as declared with
+ * {@link Produces}, in the order of preference given by the request's {@code Accept} header. Each producible media
+ * type gets the quality of the most specific media range matching it, so that a range with {@code q=0} excludes it,
+ * and among types of the same quality the one matched by a more specific range is preferred. Remaining ties, like
+ * for requests accepting any type, are resolved by the order of the writers, where the default JSON writer and the
+ * writers registered for its media type come first.
+ */
+final class ContentNegotiator {
+    /** The maximum number of distinct Accept header values whose selection is cached per route */
+    private static final int MAX_CACHED_SELECTIONS = 64;
+    private static final Selection NOT_ACCEPTABLE = new Selection(null);
+    private final List<Producer> producers;
+    private final Map<HandlerMethod, RouteProducers> routeProducersMap;
+
+    ContentNegotiator(List<MessageBodyWriter> bodyWriters, MessageBodyWriter defaultWriter) {
+        this.producers = new ArrayList<>();
+        MediaType defaultType = MediaType.get(defaultWriter.getMediaType());
+        List<Producer> otherProducers = new ArrayList<>();
+        for (MessageBodyWriter bodyWriter : bodyWriters) {
+            MediaType mediaType = MediaType.get(bodyWriter.getMediaType());
+            boolean isDefaultType = mediaType.type().equals(defaultType.type())
+                    && mediaType.subtype().equals(defaultType.subtype());
+            (isDefaultType ? producers : otherProducers).add(new Producer(bodyWriter, mediaType));
+        }
+        producers.addAll(otherProducers);
+        this.routeProducersMap = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Checks that a writer is registered for each media type declared with {@link Produces} by the route.
+     * @throws IllegalStateException if a declared media type can not be produced
+     */
+    void checkProducible(HandlerMethod handlerMethod) {
+        Produces produces = handlerMethod.findAnnotation(Produces.class);
+        if (produces == null) {
+            return;
+        }
+        for (String value : produces.value()) {
+            for (String mediaType : value.split(",")) {
+                MediaType mediaRange = MediaType.parse(mediaType.trim());
+                if (mediaRange == null || producers.stream().noneMatch(p -> mediaRange.includes(p.mediaType()))) {
+                    throw new IllegalStateException("no message body writer is registered for the media type '"
+                            + mediaType.trim() + "' produced by: " + handlerMethod);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether more than one media type can be produced by the given route, so that the response varies by
+     * the {@code Accept} header.
+     */
+    boolean hasAlternatives(HandlerMethod handlerMethod) {
+        return getProducers(handlerMethod).producers().size() > 1;
+    }
+
+    /**
+     * Selects the body writer for the given route and {@code Accept} header value. The selection is cached per
+     * route and header value, as clients send only a few distinct {@code Accept} headers.
+     * @return the body writer or {@code null} if none of the producible media types is acceptable
+     */
+    MessageBodyWriter select(HandlerMethod handlerMethod, String accept) {
+        RouteProducers routeProducers = getProducers(handlerMethod);
+        if (routeProducers.producers().isEmpty()) {
+            return null;
+        }
+        if (accept == null || accept.isBlank()) {
+            return routeProducers.producers().get(0).bodyWriter();
+        }
+        Map<String, Selection> selectionCache = routeProducers.selectionCache();
+        Selection selection = selectionCache.get(accept);
+        if (selection == null) {
+            MessageBodyWriter bodyWriter = select(routeProducers.producers(), accept);
+            selection = bodyWriter != null ? new Selection(bodyWriter) : NOT_ACCEPTABLE;
+            if (selectionCache.size() < MAX_CACHED_SELECTIONS) {
+                selectionCache.put(accept, selection);
+            }
+        }
+        return selection.bodyWriter();
+    }
+
+    private static MessageBodyWriter select(List<Producer> routeProducers, String accept) {
+        List<AcceptRange> acceptRanges = parseAccept(accept);
+        MessageBodyWriter selected = null;
+        double selectedQuality = 0;
+        int selectedSpecificity = -1;
+        for (Producer producer : routeProducers) {
+            AcceptRange matchingRange = null;
+            for (AcceptRange acceptRange : acceptRanges) {
+                if (acceptRange.mediaType().includes(producer.mediaType())
+                        && (matchingRange == null || acceptRange.specificity() > matchingRange.specificity())) {
+                    matchingRange = acceptRange;
+                }
+            }
+            if (matchingRange == null || matchingRange.quality() <= 0) {
+                continue; // not acceptable, or excluded with q=0
+            }
+            double quality = matchingRange.quality();
+            if (quality > selectedQuality
+                    || quality == selectedQuality && matchingRange.specificity() > selectedSpecificity) {
+                selected = producer.bodyWriter();
+                selectedQuality = quality;
+                selectedSpecificity = matchingRange.specificity();
+            }
+        }
+        return selected;
+    }
+
+    private RouteProducers getProducers(HandlerMethod handlerMethod) {
+        return routeProducersMap.computeIfAbsent(handlerMethod,
+                key -> new RouteProducers(findProducers(key), new ConcurrentHashMap<>()));
+    }
+
+    private List<Producer> findProducers(HandlerMethod handlerMethod) {
+        Produces produces = handlerMethod.findAnnotation(Produces.class);
+        if (produces == null) {
+            return producers;
+        }
+        List<Producer> routeProducers = new ArrayList<>();
+        for (Producer producer : producers) {
+            for (String value : produces.value()) {
+                for (String mediaType : value.split(",")) {
+                    MediaType mediaRange = MediaType.parse(mediaType.trim());
+                    if (mediaRange != null && mediaRange.includes(producer.mediaType())
+                            && !routeProducers.contains(producer)) {
+                        routeProducers.add(producer);
+                    }
+                }
+            }
+        }
+        return routeProducers;
+    }
+
+    private static List<AcceptRange> parseAccept(String accept) {
+        List<AcceptRange> acceptRanges = new ArrayList<>();
+        for (String range : accept.split(",")) {
+            int paramIndex = range.indexOf(';');
+            MediaType mediaType = MediaType.parse((paramIndex == -1 ? range : range.substring(0, paramIndex)).trim());
+            double quality = paramIndex == -1 ? 1 : parseQuality(range.substring(paramIndex + 1));
+            if (mediaType != null) { // ranges with q=0 are kept, as they exclude the types they match
+                acceptRanges.add(new AcceptRange(mediaType, quality, specificity(mediaType)));
+            }
+        }
+        return acceptRanges;
+    }
+
+    private static int specificity(MediaType mediaType) {
+        return mediaType.isWildcardType() ? 0 : mediaType.isWildcardSubtype() ? 1 : 2;
+    }
+
+    private static double parseQuality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            parameter = parameter.trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                String value = parameter.substring(2).trim();
+                // an invalid weight, like "NaN", "Infinity" or one above 1, is taken as 0
+                return isQualityValue(value) ? Double.parseDouble(value) : 0;
+            }
+        }
+        return 1;
+    }
+
+    // qvalue = ( "0" [ "." 0*3DIGIT ] ) / ( "1" [ "." 0*3("0") ] ), as in RFC 9110
+    private static boolean isQualityValue(String value) {
+        int length = value.length();
+        if (length == 0 || length > 5 || (value.charAt(0) != '0' && value.charAt(0) != '1')) {
+            return false;
+        }
+        if (length == 1) {
+            return true;
+        }
+        if (value.charAt(1) != '.') {
+            return false;
+        }
+        char maxDigit = value.charAt(0) == '0' ? '9' : '0';
+        for (int i = 2; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > maxDigit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record Producer(MessageBodyWriter bodyWriter, MediaType mediaType) {
+    }
+
+    private record RouteProducers(List<Producer> producers, Map<String, Selection> selectionCache) {
+    }
+
+    private record Selection(MessageBodyWriter bodyWriter) {
+    }
+
+    private record AcceptRange(MediaType mediaType, double quality, int specificity) {
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.ee11.servlet.HttpOutput;
+
+import io.github.pustike.web.Produces;
+import io.github.pustike.web.utils.MediaType;
+
+/**
+ * Sends binary results, of type {@link Path}, {@link FileChannel}, {@link ByteBuffer}, {@code byte[]} or
+ * {@link InputStream}, as the response body without serializing them. The content type is the first concrete media
+ * type of the route's {@link Produces} annotation, or else it is derived from the file name for paths. When running
+ * on Jetty, the content is handed to its output, which streams it using pooled buffers; otherwise files are sent
+ * using {@link FileChannel#transferTo}. Jetty classes are referenced only from {@link JettyOutput}, which is loaded
+ * after checking that Jetty is present, so that this class works in other servlet containers too.
+ */
+final class ContentSender {
+    private static final String OCTET_STREAM = "application/octet-stream";
+    private static final boolean jettyOutputPresent = isClassPresent("org.eclipse.jetty.ee11.servlet.HttpOutput");
+
+    private ContentSender() {
+    }
+
+    /**
+     * Checks whether results of the given type are sent as binary content.
+     * @param type the result type
+     * @return {@code true} if the type is a binary content type
+     */
+    static boolean isContentType(Class<?> type) {
+        return Path.class.isAssignableFrom(type) || FileChannel.class.isAssignableFrom(type)
+                || ByteBuffer.class.isAssignableFrom(type) || type == byte[].class
+                || InputStream.class.isAssignableFrom(type);
+    }
+
+    /**
+     * Sends the binary result as the response body, closing the result if it is a channel or stream.
+     * @param request the request
+     * @param response the response
+     * @param handlerMethod the route handling the request
+     * @param content the binary result
+     * @throws IOException if an I/O error occurs
+     */
+    static void send(HttpServletRequest request, HttpServletResponse response, HandlerMethod handlerMethod,
+            Object content) throws IOException {
+        String contentType = getProducedType(handlerMethod);
+        if (contentType == null && content instanceof Path) {
+            contentType = request.getServletContext().getMimeType(((Path) content).getFileName().toString());
+        }
+        response.setContentType(contentType != null ? contentType : OCTET_STREAM);
+        boolean headRequest = request.getMethod().equals("HEAD");
+        if (content instanceof Path) {
+            try (FileChannel fileChannel = FileChannel.open((Path) content, StandardOpenOption.READ)) {
+                sendFile(response, fileChannel, headRequest);
+            }
+        } else if (content instanceof FileChannel) {
+            try (FileChannel fileChannel = (FileChannel) content) {
+                sendFile(response, fileChannel, headRequest);
+            }
+        } else if (content instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) content).duplicate();
+            response.setContentLength(buffer.remaining());
+            if (!headRequest) {
+                sendBuffer(response.getOutputStream(), buffer);
+            }
+        } else if (content instanceof byte[]) {
+            byte[] bytes = (byte[]) content;
+            response.setContentLength(bytes.length);
+            if (!headRequest) {
+                response.getOutputStream().write(bytes);
+            }
+        } else {
+            try (InputStream inputStream = (InputStream) content) {
+                if (!headRequest) {
+                    OutputStream outputStream = response.getOutputStream();
+                    if (!jettyOutputPresent || !JettyOutput.sendContent(outputStream, inputStream)) {
+                        inputStream.transferTo(outputStream);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void sendFile(HttpServletResponse response, FileChannel fileChannel, boolean headRequest)
+            throws IOException {
+        long position = fileChannel.position();
+        long length = Math.max(0, fileChannel.size() - position);
+        response.setContentLengthLong(length);
+        if (headRequest) {
+            return;
+        }
+        OutputStream outputStream = response.getOutputStream();
+        if (jettyOutputPresent && JettyOutput.sendContent(outputStream, fileChannel)) {
+            return;
+        }
+        WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+        while (position < fileChannel.size()) {
+            position += fileChannel.transferTo(position, fileChannel.size() - position, outputChannel);
+        }
+    }
+
+    private static void sendBuffer(OutputStream outputStream, ByteBuffer buffer) throws IOException {
+        if (jettyOutputPresent && JettyOutput.sendContent(outputStream, buffer)) {
+            return;
+        }
+        if (buffer.hasArray()) {
+            outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+            while (buffer.hasRemaining()) {
+                outputChannel.write(buffer);
+            }
+        }
+    }
+
+    private static String getProducedType(HandlerMethod handlerMethod) {
+        Produces produces = handlerMethod.findAnnotation(Produces.class);
+        if (produces != null) {
+            for (String value : produces.value()) {
+                for (String mediaType : value.split(",")) {
+                    MediaType type = MediaType.parse(mediaType.trim());
+                    if (type != null && !type.isWildcardType() && !type.isWildcardSubtype()) {
+                        return mediaType.trim();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isClassPresent(String className) {
+        try {
+            Class.forName(className, false, ContentSender.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Hands the content to Jetty's servlet output. This is the only class referencing Jetty, and it is loaded only
+     * when {@code HttpOutput} is present.
+     */
+    private static final class JettyOutput {
+        private static boolean sendContent(OutputStream outputStream, InputStream inputStream) throws IOException {
+            if (outputStream instanceof HttpOutput) {
+                ((HttpOutput) outputStream).sendContent(inputStream);
+                return true;
+            }
+            return false;
+        }
+
+        private static boolean sendContent(OutputStream outputStream, FileChannel fileChannel) throws IOException {
+            if (outputStream instanceof HttpOutput) {
+                ((HttpOutput) outputStream).sendContent(fileChannel);
+                return true;
+            }
+            return false;
+        }
+
+        private static boolean sendContent(OutputStream outputStream, ByteBuffer buffer) throws IOException {
+            if (outputStream instanceof HttpOutput) {
+                ((HttpOutput) outputStream).sendContent(buffer);
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.lang.reflect.Proxy;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * A copy of the parts of a request that a resource method can bind, which stays usable after the request is
+ * completed and recycled by the container, like when a cached response is refreshed in the background. It has the
+ * method, the path, the query parameters, the headers and the cookies of the request, but not its body nor its
+ * attributes, and methods not backed by the copy throw an {@link IllegalStateException}.
+ */
+final class DetachedRequest extends HttpServletRequestWrapper {
+    private static final HttpServletRequest UNAVAILABLE = (HttpServletRequest) Proxy.newProxyInstance(
+            DetachedRequest.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                throw new IllegalStateException("not available in a detached request: " + method.getName());
+            });
+    private final String method;
+    private final String requestURI;
+    private final String contextPath;
+    private final String servletPath;
+    private final String pathInfo;
+    private final String queryString;
+    private final Map<String, String[]> parameterMap;
+    private final Map<String, List<String>> headerMap;
+    private final Cookie[] cookies;
+    private final String remoteAddr;
+    private final ServletContext servletContext;
+    private final Map<String, Object> attributeMap;
+
+    private DetachedRequest(HttpServletRequest request) {
+        super(UNAVAILABLE);
+        this.method = request.getMethod();
+        this.requestURI = request.getRequestURI();
+        this.contextPath = request.getContextPath();
+        this.servletPath = request.getServletPath();
+        this.pathInfo = request.getPathInfo();
+        this.queryString = request.getQueryString();
+        Map<String, String[]> parameterMap = new LinkedHashMap<>();
+        request.getParameterMap().forEach((name, values) -> parameterMap.put(name, values.clone()));
+        this.parameterMap = Collections.unmodifiableMap(parameterMap);
+        this.headerMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Enumeration<String> names = request.getHeaderNames(); names.hasMoreElements(); ) {
+            String name = names.nextElement();
+            headerMap.put(name, Collections.list(request.getHeaders(name)));
+        }
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            this.cookies = new Cookie[cookies.length];
+            for (int i = 0; i < cookies.length; i++) {
+                this.cookies[i] = (Cookie) cookies[i].clone();
+            }
+        } else {
+            this.cookies = null;
+        }
+        this.remoteAddr = request.getRemoteAddr();
+        this.servletContext = request.getServletContext();
+        this.attributeMap = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Copies the request, which must be a request without a body.
+     * @param request the request
+     * @return the detached copy of the request
+     */
+    static HttpServletRequest of(HttpServletRequest request) {
+        return new DetachedRequest(request);
+    }
+
+    @Override
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public String getRequestURI() {
+        return requestURI;
+    }
+
+    @Override
+    public String getContextPath() {
+        return contextPath;
+    }
+
+    @Override
+    public String getServletPath() {
+        return servletPath;
+    }
+
+    @Override
+    public String getPathInfo() {
+        return pathInfo;
+    }
+
+    @Override
+    public String getQueryString() {
+        return queryString;
+    }
+
+    @Override
+    public String getParameter(String name) {
+        String[] values = parameterMap.get(name);
+        return values != null && values.length > 0 ? values[0] : null;
+    }
+
+    @Override
+    public String[] getParameterValues(String name) {
+        String[] values = parameterMap.get(name);
+        return values != null ? values.clone() : null;
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(parameterMap.keySet());
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        return parameterMap;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        List<String> values = headerMap.get(name);
+        return values != null && !values.isEmpty() ? values.get(0) : null;
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+        List<String> values = headerMap.get(name);
+        return Collections.enumeration(values != null ? values : List.of());
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+        return Collections.enumeration(new ArrayList<>(headerMap.keySet()));
+    }
+
+    @Override
+    public int getIntHeader(String name) {
+        String value = getHeader(name);
+        return value != null ? Integer.parseInt(value) : -1;
+    }
+
+    @Override
+    public long getDateHeader(String name) {
+        String value = getHeader(name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("invalid date header '" + name + "': " + value, e);
+        }
+    }
+
+    @Override
+    public Cookie[] getCookies() {
+        return cookies != null ? cookies.clone() : null;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributeMap.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (value != null) {
+            attributeMap.put(name, value);
+        } else {
+            attributeMap.remove(name);
+        }
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        attributeMap.remove(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        return Collections.enumeration(new ArrayList<>(attributeMap.keySet()));
+    }
+
+    @Override
+    public String getContentType() {
+        return null;
+    }
+
+    @Override
+    public int getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+        return -1;
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return null;
+    }
+
+    @Override
+    public String getRemoteAddr() {
+        return remoteAddr;
+    }
+
+    @Override
+    public ServletContext getServletContext() {
+        return servletContext;
+    }
+
+    @Override
+    public boolean isAsyncSupported() {
+        return false;
+    }
+
+    @Override
+    public boolean isAsyncStarted() {
+        return false;
+    }
+
+    @Override
+    public DispatcherType getDispatcherType() {
+        return DispatcherType.REQUEST;
+    }
+}
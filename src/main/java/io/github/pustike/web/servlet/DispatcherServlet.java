@@ -15,25 +15,41 @@
  */
 package io.github.pustike.web.servlet;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.lang.System.Logger.Level;
 import java.lang.reflect.InaccessibleObjectException;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.TemporalAccessor;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 import jakarta.inject.Singleton;
-import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonValue;
 import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -43,12 +59,22 @@ import io.github.pustike.inject.Injectors;
 import io.github.pustike.inject.bind.Module;
 import io.github.pustike.json.ObjectMapper;
 import io.github.pustike.json.TypeConverter;
+import io.github.pustike.web.AsyncTimeout;
+import io.github.pustike.web.Cacheable;
+import io.github.pustike.web.Compress;
+import io.github.pustike.web.ConcurrencyLimit;
+import io.github.pustike.web.FieldSelection;
 import io.github.pustike.web.JsonContext;
+import io.github.pustike.web.ParallelSerialization;
 import io.github.pustike.web.Path;
+import io.github.pustike.web.Priority;
+import io.github.pustike.web.RawJson;
 import io.github.pustike.web.scope.RequestScope;
 import io.github.pustike.web.scope.RequestScoped;
 import io.github.pustike.web.utils.AntPathMatcher;
+import io.github.pustike.web.utils.MediaType;
 import io.github.pustike.web.utils.ServletUtils;
+import io.github.pustike.web.utils.XXHash64;
 
 /**
  * The Dispatcher servlet.
@@ -56,6 +82,26 @@ import io.github.pustike.web.utils.ServletUtils;
 public final class DispatcherServlet extends HttpServlet {
     private static final System.Logger logger = System.getLogger(DispatcherServlet.class.getName());
     private static final String INJECTOR_NAME = Injector.class.getSimpleName();
+    /**
+     * The request attribute holding the nanoseconds, as a {@code Long}, that the request waited in the server's
+     * queue before it was dispatched. It is set by the server and used by the queue delay admission control.
+     */
+    public static final String QUEUE_DELAY_ATTRIBUTE = "io.github.pustike.web.queueDelay";
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final int DEFAULT_COMPRESSION_MIN_SIZE = 1024;
+    private static final int DEFAULT_RESPONSE_CACHE_SIZE = 32 * 1024 * 1024;
+    private static final int DEFAULT_CACHE_REFRESH_THREADS = 2;
+    private static final int CACHE_REFRESH_QUEUE_CAPACITY = 1024;
+    private static final int DEFAULT_FUTURE_WAIT_THREADS = 8;
+    private static final int FUTURE_WAIT_QUEUE_CAPACITY = 1024;
+    private static final int SERIALIZATION_QUEUE_CAPACITY = 1024;
+    private static final int DEFAULT_MAX_REQUEST_BODY_SIZE = 10 * 1024 * 1024;
+    private static final int DEFAULT_ERROR_LOG_INTERVAL = 10_000;
+    private static final int DEFAULT_ASYNC_TIMEOUT = 30_000;
+    private static final int DEFAULT_QUEUE_DELAY_INTERVAL = 100;
+    private static final Priority.Level[] PRIORITY_LEVELS = Priority.Level.values();
+    /** The sentinel limiter of routes that are not limited */
+    private static final ConcurrencyLimiter UNLIMITED = new ConcurrencyLimiter(Integer.MAX_VALUE, 1, Integer.MAX_VALUE);
     /** Map to cache the path pattern handler methods */
     private final Map<String, HandlerMethod> patternHandlerMethodMap;
     /** Map to cache the path - pattern */
@@ -72,6 +118,39 @@ public final class DispatcherServlet extends HttpServlet {
     private ObjectMapper objectMapper;
     /** The parameter resolver */
     private ParameterResolver parameterResolver;
+    /** Whether response compression is enabled when not specified by the route */
+    private boolean compressionEnabled;
+    /** The response compressor */
+    private ResponseCompressor responseCompressor;
+    /** The server side response cache */
+    private ResponseCache responseCache;
+    /** The executor refreshing stale cached responses in the background */
+    private BulkheadExecutor cacheRefreshExecutor;
+    /** The executor awaiting plain futures returned by handlers, which can't notify on completion */
+    private BulkheadExecutor futureWaitExecutor;
+    /** The serializer of large results in parallel, on a bounded executor */
+    private ParallelSerializer parallelSerializer;
+    /** The content negotiator selecting the message body writer */
+    private ContentNegotiator contentNegotiator;
+    /** The error handler mapping exceptions to error responses */
+    private ErrorHandler errorHandler;
+    /** The default timeout of asynchronous results, in milliseconds */
+    private long asyncTimeout;
+    /** Whether request bodies are read and responses written without blocking */
+    private boolean nonBlockingIo;
+    /** The maximum size in bytes of request bodies read without blocking */
+    private int maxRequestBodySize;
+    /** The initial concurrency limit of routes without the annotation, zero or less if they are not limited */
+    private int concurrencyLimit;
+    /** The admission control by queue delay, or null if disabled */
+    private QueueDelayAdmission queueDelayAdmission;
+    /** The adaptive concurrency limiters of routes */
+    private final Map<HandlerMethod, ConcurrencyLimiter> concurrencyLimiterMap;
+    /** The bulkhead executors, and those of routes handled on them */
+    private List<BulkheadExecutor> executors;
+    private final Map<HandlerMethod, BulkheadExecutor> routeExecutorMap;
+    /** The serialized bodies of immutable results */
+    private final SerializedBodyMemo serializedBodyMemo;
 
     /**
      * Default Constructor.
@@ -80,6 +159,9 @@ public final class DispatcherServlet extends HttpServlet {
         this.patternHandlerMethodMap = new ConcurrentHashMap<>();
         this.pathPatternUriCache = new ConcurrentHashMap<>();
         this.staticResourceHandler = new StaticResourceHandler();
+        this.serializedBodyMemo = new SerializedBodyMemo();
+        this.concurrencyLimiterMap = new ConcurrentHashMap<>();
+        this.routeExecutorMap = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -87,6 +169,19 @@ public final class DispatcherServlet extends HttpServlet {
         WebModuleConfigurer configurer = getWebModuleConfigurer();
         Path pathAnnotation = configurer.getClass().getDeclaredAnnotation(Path.class);
         this.pathPrefix = pathAnnotation != null ? pathAnnotation.value().trim() : "";
+        String compression = getInitParameter("compression");
+        this.compressionEnabled = compression != null && Boolean.parseBoolean(compression.trim());
+        this.responseCompressor = new ResponseCompressor(getIntInitParameter("compressionMinSize",
+                DEFAULT_COMPRESSION_MIN_SIZE));
+        this.responseCache = new ResponseCache(getIntInitParameter("responseCacheSize", DEFAULT_RESPONSE_CACHE_SIZE));
+        this.cacheRefreshExecutor = BulkheadExecutor.of("cache-refresh", getIntInitParameter("cacheRefreshThreads",
+                DEFAULT_CACHE_REFRESH_THREADS), CACHE_REFRESH_QUEUE_CAPACITY);
+        this.futureWaitExecutor = BulkheadExecutor.of("future-wait", getIntInitParameter("futureWaitThreads",
+                DEFAULT_FUTURE_WAIT_THREADS), FUTURE_WAIT_QUEUE_CAPACITY);
+        int serializationThreads = getIntInitParameter("serializationThreads",
+                Runtime.getRuntime().availableProcessors());
+        this.parallelSerializer = new ParallelSerializer(BulkheadExecutor.of("serialization", serializationThreads,
+                SERIALIZATION_QUEUE_CAPACITY), serializationThreads);
         List<Module> moduleList = new ArrayList<>();
         moduleList.add(createServletModule());
         moduleList.addAll(configurer.getModules());
@@ -94,11 +189,71 @@ public final class DispatcherServlet extends HttpServlet {
         this.injector = parentInjector == null ? Injectors.create(moduleList)
                 : parentInjector.createChildInjector(moduleList);
         getServletContext().setAttribute(INJECTOR_NAME, injector);
+        this.executors = List.copyOf(configurer.getExecutors());
+        registerExecutors(executors);
         //
         this.pathMatcher = new AntPathMatcher();
         this.objectMapper = injector.getInstance(ObjectMapper.class);
         TypeConverter typeConverter = injector.getInstance(TypeConverter.class);
-        this.parameterResolver = new ParameterResolver(typeConverter, pathMatcher, objectMapper);
+        List<MessageBodyReader> bodyReaders = new ArrayList<>(configurer.getMessageBodyReaders());
+        List<MessageBodyWriter> bodyWriters = new ArrayList<>(configurer.getMessageBodyWriters());
+        CborBodyCodec cborBodyCodec = new CborBodyCodec();
+        bodyReaders.add(cborBodyCodec);
+        String rawJsonValidation = getInitParameter("rawJsonValidation");
+        boolean validateRawJson = rawJsonValidation != null && Boolean.parseBoolean(rawJsonValidation.trim());
+        JsonBodyWriter jsonBodyWriter = new JsonBodyWriter(validateRawJson);
+        bodyWriters.add(jsonBodyWriter);
+        bodyWriters.add(cborBodyCodec);
+        this.parameterResolver = new ParameterResolver(typeConverter, pathMatcher, objectMapper, bodyReaders);
+        this.contentNegotiator = new ContentNegotiator(bodyWriters, jsonBodyWriter);
+        for (HandlerMethod handlerMethod : patternHandlerMethodMap.values()) {
+            if (!ContentSender.isContentType(handlerMethod.getResultType())) {
+                contentNegotiator.checkProducible(handlerMethod);
+            }
+        }
+        this.asyncTimeout = getIntInitParameter("asyncTimeout", DEFAULT_ASYNC_TIMEOUT);
+        String nonBlockingIo = getInitParameter("nonBlockingIo");
+        this.nonBlockingIo = nonBlockingIo != null && Boolean.parseBoolean(nonBlockingIo.trim());
+        this.maxRequestBodySize = getIntInitParameter("maxRequestBodySize", DEFAULT_MAX_REQUEST_BODY_SIZE);
+        this.concurrencyLimit = getIntInitParameter("concurrencyLimit", 0);
+        int queueDelayTarget = getIntInitParameter("queueDelayTarget", 0);
+        this.queueDelayAdmission = queueDelayTarget > 0 ? new QueueDelayAdmission(queueDelayTarget,
+                getIntInitParameter("queueDelayInterval", DEFAULT_QUEUE_DELAY_INTERVAL)) : null;
+        this.errorHandler = new ErrorHandler(configurer.getExceptionMappers(),
+                getIntInitParameter("errorLogInterval", DEFAULT_ERROR_LOG_INTERVAL));
+    }
+
+    private void registerExecutors(List<BulkheadExecutor> executors) {
+        Map<String, BulkheadExecutor> executorMap = new HashMap<>();
+        for (BulkheadExecutor executor : executors) {
+            if (executorMap.putIfAbsent(executor.getName(), executor) != null) {
+                throw new IllegalStateException("An executor is already registered with the name: "
+                        + executor.getName());
+            }
+        }
+        for (HandlerMethod handlerMethod : patternHandlerMethodMap.values()) {
+            String executorName = handlerMethod.getExecutorName();
+            if (executorName != null) {
+                BulkheadExecutor executor = executorMap.get(executorName);
+                if (executor == null) {
+                    throw new IllegalStateException("Executor '" + executorName
+                            + "' is not provided by the configurer, for: " + handlerMethod);
+                }
+                routeExecutorMap.put(handlerMethod, executor);
+            }
+        }
+    }
+
+    private int getIntInitParameter(String name, int defaultValue) {
+        String value = getInitParameter(name);
+        if (value != null && !value.isBlank()) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid servlet init parameter '" + name + "':" + value, e);
+            }
+        }
+        return defaultValue;
     }
 
     private WebModuleConfigurer getWebModuleConfigurer() {
@@ -127,6 +282,7 @@ public final class DispatcherServlet extends HttpServlet {
             TypeConverter typeConverter = new TypeConverter();
             binder.bind(TypeConverter.class).toInstance(typeConverter);
             binder.bind(ObjectMapper.class).toInstance(new ObjectMapper(typeConverter));
+            binder.bind(ResponseCache.class).toInstance(responseCache);
 
             Predicate<Class<?>> predicate = targetType -> targetType.getDeclaredAnnotation(Path.class) != null;
             binder.addBindingListener(predicate, (bindingKey, controllerClass) -> registerController(controllerClass));
@@ -199,52 +355,613 @@ public final class DispatcherServlet extends HttpServlet {
             staticResourceHandler.service(request, response);
             return;
         }
-        // TODO read Consumes here and match accordingly
         String pathPattern = pathPatternUriCache.computeIfAbsent(request.getMethod() + '@' + relativePath,
                 s -> findMatchingPathPattern(request.getMethod(), relativePath));
-        if (pathPattern == null) { // No matching controller method found for the request
-            throw new IllegalStateException( "No matching controller method found for the request: " + relativePath);
+        HandlerMethod handlerMethod = pathPattern != null ? patternHandlerMethodMap.get(pathPattern) : null;
+        if (handlerMethod == null) { // No matching controller method found for the request
+            errorHandler.write(response, ErrorHandler.NOT_FOUND);
+            return;
+        }
+        if (!isConsumable(request, handlerMethod)) {
+            errorHandler.write(response, ErrorHandler.UNSUPPORTED_MEDIA_TYPE);
+            return;
+        }
+        Priority.Level priority = getPriority(request, handlerMethod);
+        if (queueDelayAdmission != null && !queueDelayAdmission.admit(request, priority)) {
+            errorHandler.handleOverload(response, handlerMethod.getPathPattern(), "queue delay exceeded");
+            return;
+        }
+        ConcurrencyLimiter limiter = concurrencyLimiterMap.computeIfAbsent(handlerMethod, this::createLimiter);
+        if (limiter == UNLIMITED) {
+            processRequest(request, response, handlerMethod, priority);
+            return;
+        }
+        if (!limiter.tryAcquire(priority)) { // rejected before binding the parameters, so that it costs little
+            errorHandler.handleOverload(response, handlerMethod.getPathPattern(),
+                    "concurrency limit reached: " + limiter.getLimit());
+            return;
+        }
+        long startTime = System.nanoTime();
+        try {
+            processRequest(request, response, handlerMethod, priority);
+        } finally {
+            AsyncCompletion completion = AsyncCompletion.get(request);
+            if (completion != null) { // release when the response is completed
+                completion.whenComplete(() -> limiter.release(startTime, isDropped(response)));
+            } else {
+                limiter.release(startTime, isDropped(response));
+            }
+        }
+    }
+
+    /**
+     * Returns the priority of the route, or the lower priority requested with the priority header.
+     */
+    static Priority.Level getPriority(HttpServletRequest request, HandlerMethod handlerMethod) {
+        Priority.Level priority = handlerMethod.getPriority();
+        String requested = request.getHeader(Priority.HEADER);
+        if (requested != null) {
+            requested = requested.trim();
+            for (Priority.Level level : PRIORITY_LEVELS) {
+                if (level.name().equalsIgnoreCase(requested)) {
+                    return level.compareTo(priority) > 0 ? level : priority;
+                }
+            }
+        }
+        return priority;
+    }
+
+    private ConcurrencyLimiter createLimiter(HandlerMethod handlerMethod) {
+        ConcurrencyLimit limit = handlerMethod.findAnnotation(ConcurrencyLimit.class);
+        if (limit != null) {
+            return limit.value() > 0 ? new ConcurrencyLimiter(limit.value(), limit.min(), limit.max()) : UNLIMITED;
+        }
+        return concurrencyLimit > 0 ? new ConcurrencyLimiter(concurrencyLimit, 1, concurrencyLimit * 10) : UNLIMITED;
+    }
+
+    private static boolean isDropped(HttpServletResponse response) {
+        return response.getStatus() == HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+    }
+
+    private void processRequest(HttpServletRequest request, HttpServletResponse response,
+            HandlerMethod handlerMethod, Priority.Level priority) throws IOException {
+        // binary results are sent as they are, in the media type declared by the route
+        boolean binaryResult = ContentSender.isContentType(handlerMethod.getResultType());
+        MessageBodyWriter bodyWriter = null;
+        if (!binaryResult) {
+            bodyWriter = contentNegotiator.select(handlerMethod, request.getHeader("Accept"));
+            if (bodyWriter == null) {
+                response.setStatus(HttpServletResponse.SC_NOT_ACCEPTABLE);
+                return;
+            }
+            if (contentNegotiator.hasAlternatives(handlerMethod)) {
+                response.addHeader("Vary", "Accept");
+            }
         }
-        HandlerMethod handlerMethod = patternHandlerMethodMap.get(pathPattern);
-        if (handlerMethod == null) {
-            throw new IllegalStateException("failed to match any request handler for URI: " + request.getRequestURI());
+        if (nonBlockingIo && request.isAsyncSupported() && !handlerMethod.isStreamingBody()
+                && hasRequestBody(request)) {
+            // read the body without blocking and process the request when all of it is available
+            String route = handlerMethod.getPathPattern();
+            AsyncCompletion completion = AsyncCompletion.start(request, response);
+            completion.setTimeout(asyncTimeout);
+            AtomicBoolean started = new AtomicBoolean();
+            AtomicBoolean finished = new AtomicBoolean();
+            completion.addAbortHandler(timedOut -> {
+                if (started.compareAndSet(false, true)) { // the body is still being read, so the route won't run
+                    if (timedOut) {
+                        errorHandler.handleTimeout(response, route);
+                    }
+                    return true;
+                }
+                return finished.get(); // else the route writes its own response
+            });
+            final MessageBodyWriter selectedWriter = bodyWriter;
+            BufferedBodyRequest.read(request, maxRequestBodySize, bufferedRequest -> {
+                try {
+                    if (started.compareAndSet(false, true)) {
+                        try {
+                            dispatchRoute(bufferedRequest, response, handlerMethod, selectedWriter, priority);
+                        } finally {
+                            finished.set(true);
+                        }
+                    }
+                } catch (IOException e) {
+                    logger.log(Level.DEBUG, "could not write the response", e);
+                } finally {
+                    completion.release();
+                }
+            }, error -> {
+                try {
+                    if (started.compareAndSet(false, true)) {
+                        errorHandler.handleBodyReadError(response, route, error);
+                    }
+                } catch (IOException e) {
+                    logger.log(Level.DEBUG, "could not write the error response", e);
+                } finally {
+                    completion.release();
+                }
+            });
+            return;
+        }
+        dispatchRoute(request, response, handlerMethod, bodyWriter, priority);
+    }
+
+    /**
+     * Processes the route on its bulkhead executor if it has one, otherwise on this thread. The container thread is
+     * released by starting the async context while the request waits in the executor's queue and is handled. When
+     * the route's timeout passes while the request is still queued, it is removed from the queue and answered with
+     * the timeout error; once the task has started, it writes its own response. When the executor is shut down, the
+     * queued requests are answered with status 503.
+     */
+    private void dispatchRoute(HttpServletRequest request, HttpServletResponse response, HandlerMethod handlerMethod,
+            MessageBodyWriter bodyWriter, Priority.Level priority) throws IOException {
+        BulkheadExecutor executor = routeExecutorMap.get(handlerMethod);
+        if (executor == null || !request.isAsyncSupported()) {
+            processRoute(request, response, handlerMethod, bodyWriter);
+            return;
+        }
+        String route = handlerMethod.getPathPattern();
+        AsyncCompletion completion = AsyncCompletion.start(request, response);
+        completion.setTimeout(getTimeoutMillis(handlerMethod));
+        AtomicBoolean started = new AtomicBoolean();
+        AtomicBoolean finished = new AtomicBoolean();
+        Runnable task = () -> {
+            try {
+                if (started.compareAndSet(false, true)) {
+                    try {
+                        processRoute(request, response, handlerMethod, bodyWriter);
+                    } finally {
+                        finished.set(true);
+                    }
+                }
+            } catch (IOException e) {
+                logger.log(Level.DEBUG, "could not write the response", e);
+            } finally {
+                completion.release();
+            }
+        };
+        completion.addAbortHandler(timedOut -> {
+            if (started.compareAndSet(false, true)) { // still in the queue, so it won't be started anymore
+                executor.remove(task);
+                if (timedOut) {
+                    errorHandler.handleTimeout(response, route);
+                }
+                return true;
+            }
+            return finished.get(); // else the running task writes its own response
+        });
+        boolean queued = executor.execute(priority, task, () -> {
+            try {
+                if (started.compareAndSet(false, true)) {
+                    errorHandler.handleOverload(response, route, "executor is shut down: " + executor);
+                }
+            } catch (IOException e) {
+                logger.log(Level.DEBUG, "could not write the error response", e);
+            } finally {
+                completion.release();
+            }
+        });
+        if (!queued) {
+            errorHandler.handleOverload(response, route, "executor queue is full or shut down: " + executor);
+            completion.release();
         }
+    }
+
+    private void processRoute(HttpServletRequest request, HttpServletResponse response, HandlerMethod handlerMethod,
+            MessageBodyWriter bodyWriter) throws IOException {
+        String pathPattern = handlerMethod.getPathPattern();
+        boolean binaryResult = bodyWriter == null;
         Object controller = injector.getInstance(handlerMethod.getControllerClass());
+        try (Closeable ignored = RequestScope.open(request, response)) {
+            long timeoutMillis = getTimeoutMillis(handlerMethod);
+            if (timeoutMillis > 0) { // the deadline by which tasks forked from the handler are cancelled
+                RequestScope.setDeadline(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            if (isNotModified(request, response, handlerMethod, controller)) {
+                setCacheHeaders(response, handlerMethod);
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            Cacheable cacheable = handlerMethod.getCacheable();
+            String method = request.getMethod();
+            if (cacheable != null && !binaryResult && !handlerMethod.isAsyncResult()
+                    && (method.equals("GET") || method.equals("HEAD"))) {
+                processCacheableRequest(request, response, handlerMethod, bodyWriter, controller, cacheable);
+                return;
+            }
+            Object returnValue = invokeHandler(request, handlerMethod, controller);
+            if (returnValue instanceof CompletionStage || returnValue instanceof Future) {
+                processAsyncResult(request, response, handlerMethod, bodyWriter, returnValue);
+            } else {
+                writeResult(request, response, handlerMethod, bodyWriter, returnValue);
+            }
+        } catch (Exception e) {
+            Throwable error = e instanceof InvocationTargetException && e.getCause() != null ? e.getCause() : e;
+            errorHandler.handle(request, response, pathPattern, error);
+        }
+    }
+
+    private void writeResult(HttpServletRequest request, HttpServletResponse response, HandlerMethod handlerMethod,
+            MessageBodyWriter bodyWriter, Object result) throws IOException {
+        if (result == null) {
+            return;
+        }
+        if (bodyWriter == null) { // a binary result
+            setCacheHeaders(response, handlerMethod);
+            ContentSender.send(request, response, handlerMethod, result);
+        } else {
+            writeBody(request, response, handlerMethod, serialize(request, handlerMethod, bodyWriter, result));
+        }
+    }
+
+    /**
+     * Writes the result of the completion stage or future returned by the handler when it completes. The container
+     * thread is released by starting the async context, and the request scope is opened again on the thread which
+     * writes the result. A plain {@link Future}, which can't notify on completion, is awaited on a bounded executor
+     * sized by the {@code futureWaitThreads} init parameter, never on a container thread; when that executor is
+     * saturated, the request is rejected with status 503. When the servlet doesn't support async processing, the
+     * result is awaited on this thread. Either way, the result is awaited until the request deadline set when the
+     * handler was invoked, so the route's timeout is not restarted.
+     */
+    private void processAsyncResult(HttpServletRequest request, HttpServletResponse response,
+            HandlerMethod handlerMethod, MessageBodyWriter bodyWriter, Object asyncResult) throws Exception {
+        long timeoutMillis = getRemainingTimeoutMillis(handlerMethod);
+        String route = handlerMethod.getPathPattern();
+        if (!request.isAsyncSupported()) {
+            Future<?> future = asyncResult instanceof Future ? (Future<?>) asyncResult
+                    : ((CompletionStage<?>) asyncResult).toCompletableFuture();
+            Object result;
+            try {
+                result = timeoutMillis > 0 ? future.get(timeoutMillis, TimeUnit.MILLISECONDS) : future.get();
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                errorHandler.handleTimeout(response, route);
+                return;
+            } catch (ExecutionException e) {
+                errorHandler.handle(request, response, route, e.getCause());
+                return;
+            }
+            writeResult(request, response, handlerMethod, bodyWriter, result);
+            return;
+        }
+        AsyncCompletion completion = AsyncCompletion.start(request, response);
+        completion.setTimeout(timeoutMillis);
+        CompletableFuture<?> future = toCompletableFuture(asyncResult);
+        AtomicBoolean completed = new AtomicBoolean();
+        completion.addAbortHandler(timedOut -> {
+            if (completed.compareAndSet(false, true)) {
+                cancel(asyncResult, future);
+                if (timedOut) {
+                    errorHandler.handleTimeout(response, route);
+                } // else the client is gone, nothing can be written
+                return true;
+            }
+            return false; // the result is being written
+        });
+        future.whenComplete((result, error) -> {
+            if (!completed.compareAndSet(false, true)) {
+                return; // timed out already
+            }
+            try (Closeable ignored = RequestScope.open(request, response)) {
+                Throwable cause = error != null ? unwrapCompletionError(error) : null;
+                if (cause instanceof RejectedExecutionException) {
+                    errorHandler.handleOverload(response, route, cause.getMessage());
+                } else if (cause != null) {
+                    errorHandler.handle(request, response, route, cause);
+                } else {
+                    writeResult(request, response, handlerMethod, bodyWriter, result);
+                }
+            } catch (Exception e) {
+                try {
+                    errorHandler.handle(request, response, route, e);
+                } catch (IOException ex) {
+                    logger.log(Level.DEBUG, "could not write the error response", ex);
+                }
+            } finally {
+                completion.release();
+            }
+        });
+    }
+
+    private long getTimeoutMillis(HandlerMethod handlerMethod) {
+        AsyncTimeout asyncTimeout = handlerMethod.getAsyncTimeout();
+        return asyncTimeout != null ? asyncTimeout.unit().toMillis(asyncTimeout.value()) : this.asyncTimeout;
+    }
+
+    private long getRemainingTimeoutMillis(HandlerMethod handlerMethod) {
+        if (getTimeoutMillis(handlerMethod) <= 0) {
+            return 0;
+        }
+        // when the deadline has passed already, it times out right away, as zero would be no timeout
+        return Math.max(RequestScope.getRemainingTime(TimeUnit.MILLISECONDS), 1);
+    }
+
+    private CompletableFuture<?> toCompletableFuture(Object asyncResult) {
+        if (asyncResult instanceof CompletionStage) {
+            return ((CompletionStage<?>) asyncResult).toCompletableFuture();
+        }
+        // a plain future can only be awaited, which is done on the bounded wait executor to keep container threads free
+        Future<?> future = (Future<?>) asyncResult;
+        CompletableFuture<Object> completableFuture = new CompletableFuture<>();
+        boolean queued = futureWaitExecutor.execute(Priority.Level.NORMAL, () -> {
+            try {
+                completableFuture.complete(future.get());
+            } catch (ExecutionException e) {
+                completableFuture.completeExceptionally(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                completableFuture.completeExceptionally(e);
+            } catch (RuntimeException e) { // cancelled
+                completableFuture.completeExceptionally(e);
+            }
+        }, () -> completableFuture.completeExceptionally(new RejectedExecutionException(
+                "future wait executor is shut down: " + futureWaitExecutor)));
+        if (!queued) {
+            completableFuture.completeExceptionally(new RejectedExecutionException("future wait queue is full: "
+                    + futureWaitExecutor));
+        }
+        return completableFuture;
+    }
+
+    private static void cancel(Object asyncResult, CompletableFuture<?> future) {
+        future.cancel(true);
+        if (asyncResult instanceof Future) {
+            ((Future<?>) asyncResult).cancel(true);
+        }
+    }
+
+    private static Throwable unwrapCompletionError(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    private Object invokeHandler(HttpServletRequest request, HandlerMethod handlerMethod, Object controller)
+            throws Exception {
         Method controllerMethod = handlerMethod.getMethod();
         if (!controllerMethod.trySetAccessible()) {
             throw new InaccessibleObjectException("couldn't enable access to method: " + controllerMethod);
         }
-        try (Closeable ignored = RequestScope.open(request, response)) {
-            Object[] parameterValues = parameterResolver.resolveParameters(request, handlerMethod);
-            Object returnValue = controllerMethod.invoke(controller, parameterValues);
+        Object[] parameterValues = parameterResolver.resolveParameters(request, handlerMethod);
+        return controllerMethod.invoke(controller, parameterValues);
+    }
+
+    /**
+     * Checks the request preconditions against the route's last modified time and version companion methods,
+     * before the handler is called. The {@code If-None-Match} header takes precedence over {@code If-Modified-Since}.
+     */
+    private boolean isNotModified(HttpServletRequest request, HttpServletResponse response,
+            HandlerMethod handlerMethod, Object controller) throws Exception {
+        HandlerMethod versionMethod = handlerMethod.getVersionMethod();
+        HandlerMethod lastModifiedMethod = handlerMethod.getLastModifiedMethod();
+        String method = request.getMethod();
+        if ((versionMethod == null && lastModifiedMethod == null)
+                || !(method.equals("GET") || method.equals("HEAD"))) {
+            return false;
+        }
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        boolean notModified = false;
+        if (versionMethod != null) {
+            Object version = invokeHandler(request, versionMethod, controller);
+            if (version != null) {
+                String opaqueTag = toOpaqueTag(version);
+                response.setHeader("ETag", "W/\"" + opaqueTag + '"');
+                notModified = ServletUtils.matchesEntityTag(ifNoneMatch, opaqueTag);
+            }
+        }
+        if (lastModifiedMethod != null) {
+            long lastModified = toEpochMillis(invokeHandler(request, lastModifiedMethod, controller));
+            if (lastModified >= 0) {
+                response.setDateHeader("Last-Modified", lastModified);
+                if (ifNoneMatch == null) {
+                    long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+                    // the header is in seconds, not millis
+                    notModified = ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+                }
+            }
+        }
+        return notModified;
+    }
+
+    private static String toOpaqueTag(Object version) {
+        String value = version.toString();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            // allow only entity tag characters, excluding '-' which marks the content-coding suffix
+            if (c < 0x21 || c > 0x7e || c == '"' || c == '-') {
+                return Long.toHexString(XXHash64.hash(value.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        return value;
+    }
+
+    private static long toEpochMillis(Object lastModified) {
+        if (lastModified instanceof Number) {
+            return ((Number) lastModified).longValue();
+        } else if (lastModified instanceof Date) {
+            return ((Date) lastModified).getTime();
+        } else if (lastModified instanceof TemporalAccessor) {
+            return Instant.from((TemporalAccessor) lastModified).toEpochMilli();
+        } else if (lastModified != null) {
+            throw new IllegalStateException("unsupported last modified value: " + lastModified.getClass());
+        }
+        return -1;
+    }
+
+    private void processCacheableRequest(HttpServletRequest request, HttpServletResponse response,
+            HandlerMethod handlerMethod, MessageBodyWriter bodyWriter, Object controller, Cacheable cacheable)
+            throws Exception {
+        String cacheKey = responseCache.createKey(request, handlerMethod, cacheable, bodyWriter.getMediaType());
+        ResponseCache.Entry cacheEntry = responseCache.get(cacheKey);
+        if (cacheEntry == null) {
+            SerializedBody body = responseCache.load(cacheKey, cacheable, () -> {
+                Object returnValue = invokeHandler(request, handlerMethod, controller);
+                return returnValue != null ? serialize(request, handlerMethod, bodyWriter, returnValue) : null;
+            });
+            if (body != null) {
+                writeBody(request, response, handlerMethod, body);
+            }
+            return;
+        }
+        writeBody(request, response, handlerMethod, cacheEntry.getBody());
+        if (cacheEntry.shouldRefresh()) {
+            // the stale entry is refreshed in the background, with a copy of the request as it is recycled
+            HttpServletRequest detachedRequest = DetachedRequest.of(request);
+            boolean queued = cacheRefreshExecutor.execute(Priority.Level.LOW, () -> refreshCacheEntry(detachedRequest,
+                    handlerMethod, bodyWriter, controller, cacheable, cacheKey, cacheEntry), cacheEntry::refreshFailed);
+            if (!queued) {
+                cacheEntry.refreshFailed();
+            }
+        }
+    }
+
+    private void refreshCacheEntry(HttpServletRequest request, HandlerMethod handlerMethod,
+            MessageBodyWriter bodyWriter, Object controller, Cacheable cacheable, String cacheKey,
+            ResponseCache.Entry cacheEntry) {
+        try (Closeable ignored = RequestScope.open(request, null)) {
+            long generation = responseCache.getGeneration();
+            Object returnValue = invokeHandler(request, handlerMethod, controller);
             if (returnValue != null) {
-                handleReturnValue(response, handlerMethod, returnValue);
+                SerializedBody body = serialize(request, handlerMethod, bodyWriter, returnValue);
+                if (!responseCache.put(cacheKey, body, cacheable, generation)) {
+                    cacheEntry.refreshFailed();
+                }
+            } else {
+                cacheEntry.refreshFailed(); // the stale entry is kept, and can be refreshed again
             }
         } catch (Exception e) {
-            Throwable error = e.getCause() != null ? e.getCause() : e;
-            logger.log(Level.WARNING, "error when handling the request", error);
-            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            response.setContentType(ServletUtils.JSON_MEDIA_TYPE.toString());
-            try(PrintWriter writer = response.getWriter()) {
-                Json.createWriter(writer).write(Json.createValue(error.getMessage()));
-            }
-        }
-    }
-
-    private void handleReturnValue(HttpServletResponse response, HandlerMethod handlerMethod, Object returnValue)
-            throws IOException {
-        // if @Produces is present, set content-type from that value
-        Charset charset = ServletUtils.getCharset(ServletUtils.JSON_MEDIA_TYPE);
-        response.setContentType(ServletUtils.JSON_MEDIA_TYPE.toString());
-        response.setCharacterEncoding(charset.toString());
-        try (OutputStreamWriter writer = new OutputStreamWriter(response.getOutputStream(), charset)) {
-            JsonContext jsonContext = handlerMethod.getMethod().getAnnotation(JsonContext.class);
-            String context = jsonContext != null ? jsonContext.value() : null;
-            Json.createWriter(writer).write(objectMapper.toJsonValue(returnValue, context));
+            cacheEntry.refreshFailed();
+            Throwable error = e instanceof InvocationTargetException && e.getCause() != null ? e.getCause() : e;
+            logger.log(Level.WARNING, "error when refreshing the cached response", error);
+        }
+    }
+
+    private SerializedBody serialize(HttpServletRequest request, HandlerMethod handlerMethod,
+            MessageBodyWriter bodyWriter, Object returnValue) {
+        JsonContext jsonContext = handlerMethod.getMethod().getAnnotation(JsonContext.class);
+        String context = jsonContext != null ? jsonContext.value() : null;
+        FieldSelection fieldSelection = handlerMethod.getFieldSelection();
+        FieldProjection projection = fieldSelection != null
+                ? FieldProjection.of(request.getParameter(fieldSelection.value())) : null;
+        // projected bodies are not memoized, as the field selection is controlled by the client
+        if (projection == null && returnValue != null && handlerMethod.isImmutableResult()) {
+            String variant = context + '|' + bodyWriter.getMediaType();
+            SerializedBody serializedBody = serializedBodyMemo.get(returnValue, variant);
+            if (serializedBody == null) {
+                serializedBody = serialize(handlerMethod, bodyWriter, returnValue, context, null);
+                serializedBodyMemo.put(returnValue, variant, serializedBody);
+            }
+            return serializedBody;
+        }
+        return serialize(handlerMethod, bodyWriter, returnValue, context, projection);
+    }
+
+    private SerializedBody serialize(HandlerMethod handlerMethod, MessageBodyWriter bodyWriter, Object returnValue,
+            String context, FieldProjection projection) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(DEFAULT_BUFFER_SIZE);
+        try {
+            ParallelSerialization parallel = handlerMethod.getParallelSerialization();
+            if (parallel != null && bodyWriter instanceof JsonBodyWriter) {
+                List<?> elements = returnValue instanceof Collection ? Arrays.asList(((Collection<?>) returnValue)
+                        .toArray()) : returnValue instanceof Object[] ? Arrays.asList((Object[]) returnValue) : null;
+                if (elements != null && !elements.isEmpty() && elements.size() >= parallel.threshold()) {
+                    byte[] body = serializeInParallel(elements, context, projection, (JsonBodyWriter) bodyWriter,
+                            Math.max(1, parallel.chunkSize()));
+                    return new SerializedBody(body, bodyWriter.getMediaType());
+                }
+            }
+            // a raw JSON value is already serialized and is written as it is
+            JsonValue jsonValue = projection != null ? projection.map(objectMapper, returnValue, context)
+                    : returnValue instanceof RawJson ? (RawJson) returnValue
+                    : objectMapper.toJsonValue(returnValue, context);
+            bodyWriter.writeTo(jsonValue, outputStream);
         } catch (Exception ex) {
-            throw new IllegalArgumentException("Could not write JSON: " + ex.getMessage(), ex);
+            throw new IllegalArgumentException("Could not write " + bodyWriter.getMediaType() + ": "
+                    + ex.getMessage(), ex);
+        }
+        return new SerializedBody(outputStream.toByteArray(), bodyWriter.getMediaType());
+    }
+
+    private byte[] serializeInParallel(List<?> elements, String context, FieldProjection projection,
+            JsonBodyWriter bodyWriter, int chunkSize) throws IOException {
+        return parallelSerializer.serialize(elements, chunkSize, (chunk, outputStream) -> {
+            JsonArray jsonArray = (projection != null ? projection.map(objectMapper, chunk, context)
+                    : objectMapper.toJsonValue(chunk, context)).asJsonArray();
+            bodyWriter.writeElements(jsonArray, outputStream);
+        });
+    }
+
+    private void writeBody(HttpServletRequest request, HttpServletResponse response, HandlerMethod handlerMethod,
+            SerializedBody serializedBody) throws IOException {
+        response.setContentType(serializedBody.getContentType());
+        setCacheHeaders(response, handlerMethod);
+        byte[] body = serializedBody.getBytes();
+        Compress compress = handlerMethod.getCompress();
+        String encoding = null;
+        if (compress != null ? compress.value() : compressionEnabled) {
+            response.addHeader("Vary", "Accept-Encoding");
+            encoding = responseCompressor.negotiate(request.getHeader("Accept-Encoding"), body.length);
+        }
+        String method = request.getMethod();
+        if (handlerMethod.isEntityTagged() && handlerMethod.getVersionMethod() == null
+                && (method.equals("GET") || method.equals("HEAD"))) {
+            String opaqueTag = serializedBody.getOpaqueTag();
+            // a strong entity tag must differ for each content-coding of the representation
+            response.setHeader("ETag", '"' + (encoding == null ? opaqueTag : opaqueTag + '-' + encoding) + '"');
+            if (ServletUtils.matchesEntityTag(request.getHeader("If-None-Match"), opaqueTag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+        if (encoding != null) {
+            body = serializedBody.getCompressed(encoding, responseCompressor);
+            response.setHeader("Content-Encoding", encoding);
+        }
+        response.setContentLength(body.length);
+        ServletOutputStream outputStream = response.getOutputStream();
+        AsyncCompletion completion = nonBlockingIo ? AsyncCompletion.get(request) : null;
+        if (completion != null) { // the request is processed asynchronously, so write without blocking
+            ResponseBodyWriter.write(outputStream, body, completion);
+        } else {
+            outputStream.write(body);
+            outputStream.flush();
+        }
+    }
+
+    /**
+     * Checks the media type of the request body against the types consumed by the route, where a body without a
+     * content type is read as JSON. Requests without a body are accepted.
+     */
+    private static boolean isConsumable(HttpServletRequest request, HandlerMethod handlerMethod) {
+        String contentType = request.getContentType();
+        if (contentType == null) {
+            return !hasRequestBody(request) || handlerMethod.isConsumable(ServletUtils.JSON_MEDIA_TYPE);
+        }
+        return handlerMethod.isConsumable(MediaType.parse(contentType));
+    }
+
+    private static boolean hasRequestBody(HttpServletRequest request) {
+        long contentLength = request.getContentLengthLong();
+        if (contentLength == 0 || (contentLength == -1 && request.getHeader("Transfer-Encoding") == null)) {
+            return false;
+        }
+        // form parameters are parsed by the container from the body
+        String contentType = request.getContentType();
+        return contentType == null || !(contentType.startsWith("application/x-www-form-urlencoded")
+                || contentType.startsWith("multipart/"));
+    }
+
+    private static void setCacheHeaders(HttpServletResponse response, HandlerMethod handlerMethod) {
+        String cacheControlHeader = handlerMethod.getCacheControlHeader();
+        if (cacheControlHeader != null) {
+            response.setHeader("Cache-Control", cacheControlHeader);
+        }
+        String varyHeader = handlerMethod.getVaryHeader();
+        if (varyHeader != null) {
+            response.addHeader("Vary", varyHeader);
         }
-        response.getOutputStream().flush();
     }
 
     private String findMatchingPathPattern(String requestMethod, String requestUri) {
@@ -272,6 +989,11 @@ public final class DispatcherServlet extends HttpServlet {
 
     @Override
     public void destroy() {
+        cacheRefreshExecutor.shutdown();
+        futureWaitExecutor.shutdown();
+        parallelSerializer.shutdown();
+        executors.forEach(BulkheadExecutor::shutdown);
+        routeExecutorMap.clear();
         pathPatternUriCache.clear();
         patternHandlerMethodMap.clear();
         injector.getInstance(TypeConverter.class).invalidate();
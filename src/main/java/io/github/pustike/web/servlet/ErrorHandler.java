@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Maps exceptions to error responses using the registered exception mappers and writes them. The stack trace of
+ * server errors is logged at most once per exception type and route in the log interval, and the number of errors
+ * suppressed in between is included in the next log message.
+ */
+final class ErrorHandler {
+    private static final System.Logger logger = System.getLogger(DispatcherServlet.class.getName());
+    /** The response to requests not matching any route */
+    static final ErrorResponse NOT_FOUND = ErrorResponse.of(HttpServletResponse.SC_NOT_FOUND, "Not Found");
+    /** The response to requests whose asynchronous result is not available in time */
+    static final ErrorResponse TIMED_OUT = ErrorResponse.of(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+            "Request timed out");
+    /** The response to requests rejected as the server or route is overloaded */
+    static final ErrorResponse OVERLOADED = ErrorResponse.of(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+            "Server is overloaded");
+    /** The response to requests whose body could not be read */
+    static final ErrorResponse BODY_NOT_READ = ErrorResponse.of(HttpServletResponse.SC_BAD_REQUEST,
+            "Could not read the request body");
+    /** The response to requests whose body has a media type not consumed by the route */
+    static final ErrorResponse UNSUPPORTED_MEDIA_TYPE = ErrorResponse.of(
+            HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Unsupported Media Type");
+    /** The response to requests whose body is larger than the maximum size, with status 413 Content Too Large */
+    static final ErrorResponse BODY_TOO_LARGE = ErrorResponse.of(413, "Request body is too large");
+    /** The seconds after which a rejected request can be retried */
+    private static final String RETRY_AFTER = "1";
+    private static final ExceptionMapper<?> NO_MAPPER = ExceptionMapper.of(Throwable.class, e -> null);
+    private final List<ExceptionMapper<?>> exceptionMappers;
+    private final Map<Class<?>, ExceptionMapper<?>> exceptionMapperCache;
+    private final Map<LogKey, LogWindow> logWindowMap;
+    private final long logIntervalNanos;
+
+    ErrorHandler(List<ExceptionMapper<?>> exceptionMappers, long logIntervalMillis) {
+        this.exceptionMappers = List.copyOf(exceptionMappers);
+        this.exceptionMapperCache = new ConcurrentHashMap<>();
+        this.logWindowMap = new ConcurrentHashMap<>();
+        this.logIntervalNanos = TimeUnit.MILLISECONDS.toNanos(logIntervalMillis);
+    }
+
+    /**
+     * Maps the error to the error response, logs it and writes the response if it is not yet committed.
+     * @param request the request
+     * @param response the response
+     * @param route the path pattern of the route handling the request
+     * @param error the error thrown
+     * @throws IOException if an I/O error occurs
+     */
+    void handle(HttpServletRequest request, HttpServletResponse response, String route, Throwable error)
+            throws IOException {
+        ErrorResponse errorResponse = null;
+        try {
+            errorResponse = toResponse(error, request);
+        } catch (RuntimeException ex) {
+            error.addSuppressed(ex);
+        }
+        if (errorResponse == null) {
+            errorResponse = error instanceof BodyReadException ? BODY_NOT_READ
+                    : ErrorResponse.of(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, error.getMessage());
+        }
+        if (errorResponse.getStatus() >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR) {
+            logError(route, error);
+        } else if (logger.isLoggable(Level.DEBUG)) {
+            logger.log(Level.DEBUG, "request to {0} failed with status {1}: {2}", route, errorResponse.getStatus(),
+                    error.toString());
+        }
+        if (response.isCommitted()) {
+            return; // the response was already partly written
+        }
+        response.reset();
+        write(response, errorResponse);
+    }
+
+    /**
+     * Writes the timeout error response, if the response is not yet committed.
+     * @param response the response
+     * @param route the path pattern of the route handling the request
+     * @throws IOException if an I/O error occurs
+     */
+    void handleTimeout(HttpServletResponse response, String route) throws IOException {
+        logger.log(Level.DEBUG, "request to {0} timed out", route);
+        if (!response.isCommitted()) {
+            response.reset();
+            write(response, TIMED_OUT);
+        }
+    }
+
+    /**
+     * Writes the error response of a request whose body could not be read, if the response is not yet committed:
+     * status 413 if the body is too large, or else 400.
+     * @param response the response
+     * @param route the path pattern of the route handling the request
+     * @param error the read error
+     * @throws IOException if an I/O error occurs
+     */
+    void handleBodyReadError(HttpServletResponse response, String route, Throwable error) throws IOException {
+        logger.log(Level.DEBUG, "could not read the body of request to {0}: {1}", route, error.toString());
+        if (!response.isCommitted()) {
+            response.reset();
+            write(response, error instanceof BufferedBodyRequest.BodyTooLargeException ? BODY_TOO_LARGE
+                    : BODY_NOT_READ);
+        }
+    }
+
+    /**
+     * Writes the overload error response, with a {@code Retry-After} header.
+     * @param response the response
+     * @param route the path pattern of the route handling the request
+     * @param reason why the request is rejected
+     * @throws IOException if an I/O error occurs
+     */
+    void handleOverload(HttpServletResponse response, String route, String reason) throws IOException {
+        logger.log(Level.DEBUG, "request to {0} rejected: {1}", route, reason);
+        response.setHeader("Retry-After", RETRY_AFTER);
+        write(response, OVERLOADED);
+    }
+
+    /**
+     * Writes the error response.
+     * @param response the response
+     * @param errorResponse the error response
+     * @throws IOException if an I/O error occurs
+     */
+    void write(HttpServletResponse response, ErrorResponse errorResponse) throws IOException {
+        byte[] body = errorResponse.getBodyBytes();
+        response.setStatus(errorResponse.getStatus());
+        response.setContentType(JsonBodyWriter.MEDIA_TYPE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ErrorResponse toResponse(Throwable error, HttpServletRequest request) {
+        ExceptionMapper<Throwable> exceptionMapper = (ExceptionMapper<Throwable>) exceptionMapperCache
+                .computeIfAbsent(error.getClass(), this::findExceptionMapper);
+        return exceptionMapper.toResponse(error, request);
+    }
+
+    private ExceptionMapper<?> findExceptionMapper(Class<?> exceptionType) {
+        for (Class<?> type = exceptionType; type != null; type = type.getSuperclass()) {
+            for (ExceptionMapper<?> exceptionMapper : exceptionMappers) {
+                if (exceptionMapper.getExceptionType() == type) {
+                    return exceptionMapper;
+                }
+            }
+        }
+        return NO_MAPPER;
+    }
+
+    private void logError(String route, Throwable error) {
+        if (!logger.isLoggable(Level.WARNING)) {
+            return;
+        }
+        LogWindow logWindow = logWindowMap.computeIfAbsent(new LogKey(error.getClass(), route),
+                key -> new LogWindow(System.nanoTime()));
+        long now = System.nanoTime();
+        long nextLogTime = logWindow.nextLogTime.get();
+        if (now - nextLogTime >= 0 && logWindow.nextLogTime.compareAndSet(nextLogTime, now + logIntervalNanos)) {
+            long suppressed = logWindow.suppressedCount.sumThenReset();
+            String message = suppressed == 0 ? "error when handling the request: " + route
+                    : "error when handling the request: " + route + " (" + suppressed + " similar errors suppressed)";
+            logger.log(Level.WARNING, message, error);
+        } else {
+            logWindow.suppressedCount.increment();
+        }
+    }
+
+    private record LogKey(Class<?> exceptionType, String route) {
+    }
+
+    private static final class LogWindow {
+        private final AtomicLong nextLogTime;
+        private final LongAdder suppressedCount;
+
+        private LogWindow(long nextLogTime) {
+            this.nextLogTime = new AtomicLong(nextLogTime);
+            this.suppressedCount = new LongAdder();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import jakarta.json.Json;
+import jakarta.json.JsonValue;
+
+/**
+ * The status code and JSON body of an error response. The body is serialized when the response is first written
+ * and then kept, so that a response created once and returned for every occurrence of an error is written without
+ * serializing its body again.
+ */
+public final class ErrorResponse {
+    private final int status;
+    private final JsonValue body;
+    private volatile byte[] bodyBytes;
+
+    private ErrorResponse(int status, JsonValue body) {
+        if (status < 400 || status > 599) {
+            throw new IllegalArgumentException("invalid error status code: " + status);
+        }
+        this.status = status;
+        this.body = body;
+    }
+
+    /**
+     * Creates an error response having the message as a JSON string body.
+     * @param status the status code, from 400 to 599
+     * @param message the error message, written as JSON null if not specified
+     * @return the error response
+     */
+    public static ErrorResponse of(int status, String message) {
+        return new ErrorResponse(status, message != null ? Json.createValue(message) : JsonValue.NULL);
+    }
+
+    /**
+     * Creates an error response having the given JSON body.
+     * @param status the status code, from 400 to 599
+     * @param body the response body
+     * @return the error response
+     */
+    public static ErrorResponse of(int status, JsonValue body) {
+        return new ErrorResponse(status, body != null ? body : JsonValue.NULL);
+    }
+
+    /**
+     * Returns the status code of this error response.
+     * @return the status code
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the JSON body of this error response.
+     * @return the response body
+     */
+    public JsonValue getBody() {
+        return body;
+    }
+
+    byte[] getBodyBytes() {
+        byte[] bytes = bodyBytes;
+        if (bytes == null) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(128);
+            try {
+                new JsonBodyWriter(false).writeTo(body, outputStream);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            bodyBytes = bytes = outputStream.toByteArray();
+        }
+        return bytes;
+    }
+}
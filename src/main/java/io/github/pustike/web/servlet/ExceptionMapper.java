@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.util.Objects;
+import java.util.function.Function;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Maps an exception thrown while handling a request to the error response. The mapper registered for the most
+ * specific superclass of the thrown exception is used, and exceptions not handled by any mapper are answered with
+ * status 500 and the exception message, except a request body which can't be read or bound, answered with status
+ * 400. Error responses with status 500 or above are logged with the stack trace, at most once per exception type
+ * and route in the dispatcher servlet's {@code errorLogInterval} init parameter (in milliseconds, by default 10
+ * seconds), while other responses are logged only at debug level.
+ * @param <E> the exception type
+ * @see WebModuleConfigurer#getExceptionMappers()
+ */
+public interface ExceptionMapper<E extends Throwable> {
+    /**
+     * Returns the type of exceptions mapped by this mapper, including its subclasses.
+     * @return the exception type
+     */
+    Class<E> getExceptionType();
+
+    /**
+     * Maps the exception to the error response. A response which doesn't depend on the exception, like for expected
+     * validation errors, can be created once and returned every time, as it is serialized only once.
+     * @param exception the exception thrown
+     * @param request the request being handled
+     * @return the error response
+     */
+    ErrorResponse toResponse(E exception, HttpServletRequest request);
+
+    /**
+     * Creates an exception mapper for the given type using the mapping function.
+     * @param exceptionType the exception type
+     * @param mappingFunction the function mapping the exception to the error response
+     * @param <E> the exception type
+     * @return the exception mapper
+     */
+    static <E extends Throwable> ExceptionMapper<E> of(Class<E> exceptionType,
+            Function<? super E, ErrorResponse> mappingFunction) {
+        Objects.requireNonNull(exceptionType);
+        Objects.requireNonNull(mappingFunction);
+        return new ExceptionMapper<>() {
+            @Override
+            public Class<E> getExceptionType() {
+                return exceptionType;
+            }
+
+            @Override
+            public ErrorResponse toResponse(E exception, HttpServletRequest request) {
+                return mappingFunction.apply(exception);
+            }
+        };
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonValue;
+
+import io.github.pustike.json.JsonInclude;
+import io.github.pustike.json.ObjectMapper;
+
+/**
+ * A projection of JSON values to the fields selected by a list of field paths, like {@code id,name,address.city}.
+ * Projections are parsed once and cached for each distinct list of field paths.
+ */
+final class FieldProjection {
+    private static final int MAX_CACHE_SIZE = 1024;
+    private static final Map<String, FieldProjection> projectionCache = new ConcurrentHashMap<>();
+    private static final ClassValue<BeanFields> beanFieldsCache = new ClassValue<>() {
+        @Override
+        protected BeanFields computeValue(Class<?> type) {
+            return findBeanFields(type);
+        }
+    };
+    /** The selected fields and their projections, which are {@code null} when the whole field is selected. */
+    private final Map<String, FieldProjection> fieldMap;
+
+    private FieldProjection() {
+        this.fieldMap = new LinkedHashMap<>();
+    }
+
+    /**
+     * Returns the projection for the given field paths.
+     * @param fieldPaths the comma separated field paths
+     * @return the projection or {@code null} if no fields are given
+     */
+    static FieldProjection of(String fieldPaths) {
+        if (fieldPaths == null || fieldPaths.isBlank()) {
+            return null;
+        }
+        FieldProjection projection = projectionCache.get(fieldPaths);
+        if (projection == null) {
+            projection = parse(fieldPaths);
+            if (projectionCache.size() < MAX_CACHE_SIZE) {
+                projectionCache.putIfAbsent(fieldPaths, projection);
+            }
+        }
+        return projection;
+    }
+
+    private static FieldProjection parse(String fieldPaths) {
+        FieldProjection root = new FieldProjection();
+        for (String fieldPath : fieldPaths.split(",")) {
+            FieldProjection projection = root;
+            String[] fieldNames = fieldPath.trim().split("\\.");
+            for (int i = 0; i < fieldNames.length && projection != null; i++) {
+                String fieldName = fieldNames[i].trim();
+                if (fieldName.isEmpty()) {
+                    break;
+                }
+                boolean isLast = i == fieldNames.length - 1;
+                if (isLast) {
+                    projection.fieldMap.put(fieldName, null); // select the whole field
+                } else if (!projection.fieldMap.containsKey(fieldName)) {
+                    projection.fieldMap.put(fieldName, new FieldProjection());
+                }
+                projection = projection.fieldMap.get(fieldName);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Maps the given object to a JSON value having only the selected fields, so that the unselected fields are
+     * never mapped. The fields of application objects are read from their declared fields, and only those included
+     * by the JSON context with {@link JsonInclude} can be selected. Each selected field value is mapped by the object
+     * mapper with the JSON context, and null values are omitted. Collections and arrays are projected element-wise,
+     * while other values, like JSON values, maps and JDK types, are mapped as a whole and then projected.
+     * @param objectMapper the object mapper
+     * @param object the object to map
+     * @param context the JSON context name, which can be {@code null}
+     * @return the projected value
+     */
+    JsonValue map(ObjectMapper objectMapper, Object object, String context) {
+        if (object == null) {
+            return JsonValue.NULL;
+        } else if (object instanceof Collection || object instanceof Object[]) {
+            JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+            Collection<?> elements = object instanceof Collection ? (Collection<?>) object
+                    : Arrays.asList((Object[]) object);
+            for (Object element : elements) {
+                arrayBuilder.add(map(objectMapper, element, context));
+            }
+            return arrayBuilder.build();
+        } else if (object instanceof JsonValue) {
+            return apply((JsonValue) object);
+        }
+        BeanFields beanFields = beanFieldsCache.get(object.getClass());
+        if (beanFields == null) {
+            return apply(objectMapper.toJsonValue(object, context));
+        }
+        Set<String> includedFields = context != null ? beanFields.includeMap().get(context) : null;
+        JsonObjectBuilder objectBuilder = Json.createObjectBuilder();
+        for (Field field : beanFields.fields()) {
+            String fieldName = field.getName();
+            if (!fieldMap.containsKey(fieldName) || includedFields != null && !includedFields.contains(fieldName)) {
+                continue;
+            }
+            Object fieldValue;
+            try {
+                fieldValue = field.get(object);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("could not read the field: " + field, e);
+            }
+            if (fieldValue != null) {
+                FieldProjection projection = fieldMap.get(fieldName);
+                objectBuilder.add(fieldName, projection == null ? objectMapper.toJsonValue(fieldValue, context)
+                        : projection.map(objectMapper, fieldValue, context));
+            }
+        }
+        return objectBuilder.build();
+    }
+
+    /**
+     * Finds the instance fields of an application object type, with those of super classes first.
+     * @return the fields or {@code null} if the type is not an application object with accessible fields
+     */
+    private static BeanFields findBeanFields(Class<?> type) {
+        String packageName = type.getPackageName();
+        if (type.isEnum() || type.isArray() || Map.class.isAssignableFrom(type) || packageName.startsWith("java.")
+                || packageName.startsWith("javax.") || packageName.startsWith("jakarta.")) {
+            return null;
+        }
+        List<Field> fields = new ArrayList<>();
+        Map<String, Set<String>> includeMap = new HashMap<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            List<Field> declaredFields = new ArrayList<>();
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+                    if (!field.trySetAccessible()) {
+                        return null;
+                    }
+                    declaredFields.add(field);
+                }
+            }
+            fields.addAll(0, declaredFields);
+            for (JsonInclude jsonInclude : c.getAnnotationsByType(JsonInclude.class)) {
+                includeMap.putIfAbsent(jsonInclude.type(), Set.of(jsonInclude.fields()));
+            }
+        }
+        return fields.isEmpty() ? null : new BeanFields(List.copyOf(fields), includeMap);
+    }
+
+    /**
+     * Applies this projection to the given value. Objects are reduced to the selected fields in their original
+     * order, arrays are projected element-wise and other values are returned as is.
+     * @param value the value
+     * @return the projected value
+     */
+    JsonValue apply(JsonValue value) {
+        switch (value.getValueType()) {
+            case OBJECT:
+                JsonObject jsonObject = value.asJsonObject();
+                JsonObjectBuilder objectBuilder = Json.createObjectBuilder();
+                for (Map.Entry<String, JsonValue> entry : jsonObject.entrySet()) {
+                    String fieldName = entry.getKey();
+                    if (fieldMap.containsKey(fieldName)) {
+                        FieldProjection projection = fieldMap.get(fieldName);
+                        JsonValue fieldValue = entry.getValue();
+                        objectBuilder.add(fieldName, projection == null ? fieldValue : projection.apply(fieldValue));
+                    }
+                }
+                return objectBuilder.build();
+            case ARRAY:
+                JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+                for (JsonValue element : value.asJsonArray()) {
+                    arrayBuilder.add(apply(element));
+                }
+                return arrayBuilder.build();
+            default:
+                return value;
+        }
+    }
+
+    private record BeanFields(List<Field> fields, Map<String, Set<String>> includeMap) {
+    }
+}
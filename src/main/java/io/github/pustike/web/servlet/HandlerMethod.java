@@ -15,12 +15,42 @@
  */
 package io.github.pustike.web.servlet;
 
+import java.io.InputStream;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import jakarta.json.stream.JsonParser;
 
+import io.github.pustike.web.AsyncTimeout;
+import io.github.pustike.web.CacheControl;
+import io.github.pustike.web.Cacheable;
+import io.github.pustike.web.Compress;
+import io.github.pustike.web.Consumes;
+import io.github.pustike.web.ETag;
+import io.github.pustike.web.Executor;
+import io.github.pustike.web.FieldSelection;
 import io.github.pustike.web.HttpMethod;
+import io.github.pustike.web.ImmutableResult;
+import io.github.pustike.web.LastModified;
+import io.github.pustike.web.ParallelSerialization;
+import io.github.pustike.web.Priority;
+import io.github.pustike.web.RawJson;
+import io.github.pustike.web.VersionProvider;
+import io.github.pustike.web.utils.MediaType;
 
 /**
  * Info about Request Mapping defined at Controller methods.
@@ -29,12 +59,180 @@ class HandlerMethod {
     private final Method method;
     private final Class<?> controllerClass;
     private final String pathPattern;
+    private final HandlerMethod lastModifiedMethod;
+    private final HandlerMethod versionMethod;
+    private final Cacheable cacheable;
+    private final String cacheControlHeader;
+    private final String varyHeader;
+    private final boolean asyncResult;
+    private final Class<?> resultType;
+    private final boolean streamingBody;
+    private final Priority.Level priority;
+    private final Compress compress;
+    private final boolean entityTagged;
+    private final boolean immutableResult;
+    private final FieldSelection fieldSelection;
+    private final ParallelSerialization parallelSerialization;
+    private final AsyncTimeout asyncTimeout;
+    private final String executorName;
+    /** The media types of request bodies accepted by the route, or {@code null} if any type is accepted */
+    private final List<MediaType> consumedTypes;
     private Set<String> httpMethods;
 
     public HandlerMethod(Class<?> controllerClass, Method method, String pathPattern) {
         this.method = method;
         this.controllerClass = controllerClass;
         this.pathPattern = pathPattern;
+        LastModified lastModified = method.getAnnotation(LastModified.class);
+        this.lastModifiedMethod = lastModified != null ? createCompanionMethod(lastModified.value()) : null;
+        VersionProvider versionProvider = method.getAnnotation(VersionProvider.class);
+        this.versionMethod = versionProvider != null ? createCompanionMethod(versionProvider.value()) : null;
+        this.cacheable = method.getAnnotation(Cacheable.class);
+        CacheControl cacheControl = findAnnotation(CacheControl.class);
+        this.cacheControlHeader = cacheControl != null ? createCacheControlHeader(cacheControl, method) : null;
+        this.varyHeader = cacheControl != null && cacheControl.vary().length > 0
+                ? String.join(", ", cacheControl.vary()) : null;
+        Class<?> returnType = method.getReturnType();
+        this.asyncResult = CompletionStage.class.isAssignableFrom(returnType)
+                || Future.class.isAssignableFrom(returnType);
+        this.resultType = asyncResult ? getResultType(method.getGenericReturnType()) : returnType;
+        Type genericResultType = asyncResult && method.getGenericReturnType() instanceof ParameterizedType
+                ? ((ParameterizedType) method.getGenericReturnType()).getActualTypeArguments()[0]
+                : method.getGenericReturnType();
+        if (resultType != RawJson.class) {
+            checkNoRawJson(genericResultType, new HashSet<>());
+        }
+        this.streamingBody = Arrays.stream(method.getParameterTypes()).anyMatch(type -> type == Stream.class
+                || type == Iterator.class || type == JsonParser.class || type == InputStream.class);
+        Priority priority = findAnnotation(Priority.class);
+        this.priority = priority != null ? priority.value() : Priority.Level.NORMAL;
+        this.compress = findAnnotation(Compress.class);
+        this.entityTagged = findAnnotation(ETag.class) != null;
+        this.immutableResult = findAnnotation(ImmutableResult.class) != null;
+        this.fieldSelection = findAnnotation(FieldSelection.class);
+        this.parallelSerialization = findAnnotation(ParallelSerialization.class);
+        this.asyncTimeout = findAnnotation(AsyncTimeout.class);
+        Executor executor = findAnnotation(Executor.class);
+        this.executorName = executor != null ? executor.value() : null;
+        Consumes consumes = findAnnotation(Consumes.class);
+        this.consumedTypes = consumes != null ? parseConsumedTypes(consumes.value()) : null;
+    }
+
+    private List<MediaType> parseConsumedTypes(String[] values) {
+        List<MediaType> mediaTypes = new ArrayList<>();
+        for (String value : values) {
+            for (String mediaType : value.split(",")) {
+                MediaType mediaRange = MediaType.parse(mediaType.trim());
+                if (mediaRange == null) {
+                    throw new IllegalStateException("invalid media type '" + mediaType.trim()
+                            + "' is consumed by: " + method);
+                } else if (mediaRange.isWildcardType()) {
+                    return null;
+                }
+                mediaTypes.add(mediaRange);
+            }
+        }
+        return List.copyOf(mediaTypes);
+    }
+
+    private static Class<?> getResultType(Type asyncType) {
+        if (asyncType instanceof ParameterizedType) {
+            Type resultType = ((ParameterizedType) asyncType).getActualTypeArguments()[0];
+            if (resultType instanceof WildcardType) {
+                resultType = ((WildcardType) resultType).getUpperBounds()[0];
+            }
+            if (resultType instanceof ParameterizedType) {
+                resultType = ((ParameterizedType) resultType).getRawType();
+            }
+            if (resultType instanceof Class) {
+                return (Class<?>) resultType;
+            }
+        }
+        return Object.class;
+    }
+
+    /**
+     * Checks that the result type doesn't reach a {@link RawJson} through the fields, elements or type arguments of
+     * the objects converted by the object mapper, as the mapper doesn't write it verbatim and the response would be
+     * silently wrong.
+     * @throws IllegalStateException if a raw JSON value would be converted by the object mapper
+     */
+    private void checkNoRawJson(Type type, Set<Class<?>> visitedTypes) {
+        if (type instanceof ParameterizedType) {
+            checkNoRawJson(((ParameterizedType) type).getRawType(), visitedTypes);
+            for (Type typeArgument : ((ParameterizedType) type).getActualTypeArguments()) {
+                checkNoRawJson(typeArgument, visitedTypes);
+            }
+        } else if (type instanceof WildcardType) {
+            for (Type upperBound : ((WildcardType) type).getUpperBounds()) {
+                checkNoRawJson(upperBound, visitedTypes);
+            }
+        } else if (type instanceof GenericArrayType) {
+            checkNoRawJson(((GenericArrayType) type).getGenericComponentType(), visitedTypes);
+        } else if (type instanceof Class && visitedTypes.add((Class<?>) type)) {
+            Class<?> typeClass = (Class<?>) type;
+            if (typeClass == RawJson.class) {
+                throw new IllegalStateException("RawJson is not written verbatim by the object mapper, so it can "
+                        + "only be returned as it is or as a member of a JsonObject or JsonArray, in: " + method);
+            }
+            String packageName = typeClass.getPackageName();
+            if (typeClass.isArray()) {
+                checkNoRawJson(typeClass.getComponentType(), visitedTypes);
+            } else if (!typeClass.isPrimitive() && !packageName.startsWith("java.")
+                    && !packageName.startsWith("jakarta.")) {
+                for (Class<?> c = typeClass; c != null && c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                            checkNoRawJson(field.getGenericType(), visitedTypes);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static String createCacheControlHeader(CacheControl cacheControl, Method method) {
+        if (cacheControl.isPublic() && (cacheControl.isPrivate() || cacheControl.noStore())) {
+            throw new IllegalStateException("public cache control can not be private or no-store, for: " + method);
+        }
+        List<String> directives = new ArrayList<>();
+        if (cacheControl.isPublic()) {
+            directives.add("public");
+        }
+        if (cacheControl.isPrivate()) {
+            directives.add("private");
+        }
+        if (cacheControl.noCache()) {
+            directives.add("no-cache");
+        }
+        if (cacheControl.noStore()) {
+            directives.add("no-store");
+        }
+        if (cacheControl.maxAge() >= 0) {
+            directives.add("max-age=" + cacheControl.maxAge());
+        }
+        if (cacheControl.sMaxAge() >= 0) {
+            directives.add("s-maxage=" + cacheControl.sMaxAge());
+        }
+        if (cacheControl.mustRevalidate()) {
+            directives.add("must-revalidate");
+        }
+        if (cacheControl.immutable()) {
+            directives.add("immutable");
+        }
+        return directives.isEmpty() ? null : String.join(", ", directives);
+    }
+
+    private HandlerMethod createCompanionMethod(String methodName) {
+        for (Class<?> c = controllerClass; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Method companionMethod : c.getDeclaredMethods()) {
+                if (companionMethod.getName().equals(methodName) && !companionMethod.isBridge()) {
+                    return new HandlerMethod(controllerClass, companionMethod, pathPattern);
+                }
+            }
+        }
+        throw new IllegalStateException("companion method '" + methodName + "' is not found for: " + this);
     }
 
     public Class<?> getControllerClass() {
@@ -75,6 +273,164 @@ class HandlerMethod {
         return pathPattern;
     }
 
+    /**
+     * Returns the companion method that provides the last modified time of the resource.
+     * @return the last modified companion method, or {@code null} if not declared
+     */
+    public HandlerMethod getLastModifiedMethod() {
+        return lastModifiedMethod;
+    }
+
+    /**
+     * Returns the companion method that provides the version of the resource.
+     * @return the version companion method, or {@code null} if not declared
+     */
+    public HandlerMethod getVersionMethod() {
+        return versionMethod;
+    }
+
+    /**
+     * Returns the server side response cache configuration of this method.
+     * @return the cacheable annotation, or {@code null} if responses are not cached
+     */
+    public Cacheable getCacheable() {
+        return cacheable;
+    }
+
+    /**
+     * Returns the precomputed {@code Cache-Control} header value.
+     * @return the header value, or {@code null} if not specified
+     */
+    public String getCacheControlHeader() {
+        return cacheControlHeader;
+    }
+
+    /**
+     * Returns the precomputed {@code Vary} header value, listing request headers declared with cache control.
+     * @return the header value, or {@code null} if not specified
+     */
+    public String getVaryHeader() {
+        return varyHeader;
+    }
+
+    /**
+     * Checks whether the method returns a {@link CompletionStage} or a {@link Future}, whose result is written when
+     * it completes.
+     * @return {@code true} if the result is asynchronous
+     */
+    public boolean isAsyncResult() {
+        return asyncResult;
+    }
+
+    /**
+     * Returns the type of the result written to the response, which is the type of the value the future completes
+     * with for asynchronous results.
+     * @return the result type
+     */
+    public Class<?> getResultType() {
+        return resultType;
+    }
+
+    /**
+     * Checks whether the method reads the request body as a stream, so that it is not buffered before invoking it.
+     * @return {@code true} if a parameter streams the request body
+     */
+    public boolean isStreamingBody() {
+        return streamingBody;
+    }
+
+    /**
+     * Returns the priority of requests to this method, which requests can lower but not raise.
+     * @return the priority level
+     */
+    public Priority.Level getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the response compression setting of the method or the controller class.
+     * @return the compress annotation, or {@code null} to use the servlet's default
+     */
+    public Compress getCompress() {
+        return compress;
+    }
+
+    /**
+     * Checks whether an entity tag computed from the serialized body is sent, as specified by {@link ETag}.
+     * @return {@code true} if the response is entity tagged
+     */
+    public boolean isEntityTagged() {
+        return entityTagged;
+    }
+
+    /**
+     * Checks whether the serialized bodies of results are memoized, as specified by {@link ImmutableResult}.
+     * @return {@code true} if results are immutable
+     */
+    public boolean isImmutableResult() {
+        return immutableResult;
+    }
+
+    /**
+     * Returns the field selection of the method or the controller class.
+     * @return the field selection annotation, or {@code null} if not specified
+     */
+    public FieldSelection getFieldSelection() {
+        return fieldSelection;
+    }
+
+    /**
+     * Returns the parallel serialization setting of the method or the controller class.
+     * @return the parallel serialization annotation, or {@code null} if not specified
+     */
+    public ParallelSerialization getParallelSerialization() {
+        return parallelSerialization;
+    }
+
+    /**
+     * Returns the timeout of asynchronous results of the method or the controller class.
+     * @return the async timeout annotation, or {@code null} to use the servlet's default
+     */
+    public AsyncTimeout getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
+    /**
+     * Returns the name of the bulkhead executor running this method, as specified by {@link Executor}.
+     * @return the executor name, or {@code null} if it runs on the container thread
+     */
+    public String getExecutorName() {
+        return executorName;
+    }
+
+    /**
+     * Returns the annotation of given type present on the method, or else on the controller class.
+     * @param annotationType the annotation type
+     * @param <A> the type of annotation
+     * @return the annotation if present, else {@code null}
+     */
+    /**
+     * Checks whether the route accepts a request body of the given media type, as declared with {@link Consumes}.
+     * @param contentType the media type of the request body, which is {@code null} if it is not valid
+     * @return {@code true} if the media type is included by a consumed media type, or any type is accepted
+     */
+    public boolean isConsumable(MediaType contentType) {
+        if (consumedTypes == null) {
+            return true;
+        }
+        for (MediaType consumedType : consumedTypes) {
+            if (consumedType.includes(contentType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public <A extends Annotation> A findAnnotation(Class<A> annotationType) {
+        A annotation = method.getAnnotation(annotationType);
+        return annotation != null ? annotation : controllerClass.getAnnotation(annotationType);
+    }
+
     @Override
     public String toString() {
         return "HandlerMethod(path: " + pathPattern + "; method: " + method.toGenericString() + ")";
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+
+import io.github.pustike.web.RawJson;
+
+/**
+ * The default message body writer, writing the value as compact JSON text encoded in UTF-8. A {@link RawJson}
+ * value is written verbatim, and it is validated first only when validation is enabled.
+ */
+final class JsonBodyWriter implements MessageBodyWriter {
+    static final String MEDIA_TYPE = "application/json;charset=UTF-8";
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+    private static final int BUFFER_SIZE = 8192;
+    private final boolean validateRawJson;
+
+    JsonBodyWriter(boolean validateRawJson) {
+        this.validateRawJson = validateRawJson;
+    }
+
+    @Override
+    public String getMediaType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public void writeTo(JsonValue value, OutputStream outputStream) throws IOException {
+        Utf8Output output = new Utf8Output(outputStream);
+        writeValue(value, output);
+        output.flush();
+    }
+
+    /**
+     * Writes the elements of the array separated by commas, but without the enclosing brackets, so that chunks
+     * of a large array can be written independently and joined.
+     */
+    void writeElements(JsonArray jsonArray, OutputStream outputStream) throws IOException {
+        Utf8Output output = new Utf8Output(outputStream);
+        for (int i = 0, size = jsonArray.size(); i < size; i++) {
+            if (i > 0) {
+                output.write(',');
+            }
+            writeValue(jsonArray.get(i), output);
+        }
+        output.flush();
+    }
+
+    private void writeValue(JsonValue value, Utf8Output output) throws IOException {
+        if (value instanceof RawJson) {
+            RawJson rawJson = (RawJson) value;
+            if (validateRawJson) {
+                rawJson.parse();
+            }
+            output.flush();
+            rawJson.writeTo(output.outputStream);
+            return;
+        }
+        switch (value.getValueType()) {
+            case OBJECT:
+                output.write('{');
+                boolean first = true;
+                for (Map.Entry<String, JsonValue> entry : ((JsonObject) value).entrySet()) {
+                    if (!first) {
+                        output.write(',');
+                    }
+                    first = false;
+                    output.writeString(entry.getKey());
+                    output.write(':');
+                    writeValue(entry.getValue(), output);
+                }
+                output.write('}');
+                break;
+            case ARRAY:
+                output.write('[');
+                JsonArray jsonArray = (JsonArray) value;
+                for (int i = 0, size = jsonArray.size(); i < size; i++) {
+                    if (i > 0) {
+                        output.write(',');
+                    }
+                    writeValue(jsonArray.get(i), output);
+                }
+                output.write(']');
+                break;
+            case STRING:
+                output.writeString(((JsonString) value).getString());
+                break;
+            case NUMBER:
+                output.writeAscii(((JsonNumber) value).toString());
+                break;
+            case TRUE:
+                output.writeAscii("true");
+                break;
+            case FALSE:
+                output.writeAscii("false");
+                break;
+            default:
+                output.writeAscii("null");
+        }
+    }
+
+    /**
+     * A buffered output encoding characters in UTF-8 and escaping JSON strings.
+     */
+    private static final class Utf8Output {
+        private final OutputStream outputStream;
+        private final byte[] buffer;
+        private int count;
+
+        private Utf8Output(OutputStream outputStream) {
+            this.outputStream = outputStream;
+            this.buffer = new byte[BUFFER_SIZE];
+        }
+
+        private void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        private void writeAscii(String value) throws IOException {
+            for (int i = 0, length = value.length(); i < length; i++) {
+                write(value.charAt(i));
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            write('"');
+            for (int i = 0, length = value.length(); i < length; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x20 && c < 0x80) {
+                    if (c == '"' || c == '\\') {
+                        write('\\');
+                    }
+                    write(c);
+                } else if (c < 0x20) {
+                    writeEscaped(c);
+                } else if (c < 0x800) {
+                    write(0xc0 | (c >> 6));
+                    write(0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    write(0xf0 | (codePoint >> 18));
+                    write(0x80 | ((codePoint >> 12) & 0x3f));
+                    write(0x80 | ((codePoint >> 6) & 0x3f));
+                    write(0x80 | (codePoint & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    write('?'); // malformed surrogate pair, replaced as done by the UTF-8 encoder
+                } else {
+                    write(0xe0 | (c >> 12));
+                    write(0x80 | ((c >> 6) & 0x3f));
+                    write(0x80 | (c & 0x3f));
+                }
+            }
+            write('"');
+        }
+
+        private void writeEscaped(char c) throws IOException {
+            write('\\');
+            switch (c) {
+                case '\b':
+                    write('b');
+                    break;
+                case '\f':
+                    write('f');
+                    break;
+                case '\n':
+                    write('n');
+                    break;
+                case '\r':
+                    write('r');
+                    break;
+                case '\t':
+                    write('t');
+                    break;
+                default:
+                    write('u');
+                    write('0');
+                    write('0');
+                    write(HEX_DIGITS[c >> 4]);
+                    write(HEX_DIGITS[c & 0xf]);
+            }
+        }
+
+        private void flush() throws IOException {
+            if (count > 0) {
+                outputStream.write(buffer, 0, count);
+                count = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import io.github.pustike.json.ObjectMapper;
+
+/**
+ * Iterator over a streamed JSON request body, which is either newline delimited JSON values or the elements of
+ * a top-level JSON array. Elements are read and bound one at a time, only when the handler pulls them, so that
+ * only the current element is held in memory. Each array element is bound by the object mapper directly from the
+ * body, through a reader which ends at the comma or bracket following the element, so that it is parsed only once.
+ * Content after the end of the array is rejected.
+ */
+final class JsonElementIterator implements Iterator<Object>, Closeable {
+    private static final int BUFFER_SIZE = 8192;
+    private final ObjectMapper objectMapper;
+    private final Type elementType;
+    private final BufferedReader lineReader;
+    private final Reader arrayReader;
+    private char[] buffer;
+    private int position;
+    private int limit;
+    private boolean started;
+    private boolean finished;
+    private boolean hasPending;
+    private Object pending;
+
+    private JsonElementIterator(ObjectMapper objectMapper, Type elementType, BufferedReader lineReader,
+            Reader arrayReader) {
+        this.objectMapper = objectMapper;
+        this.elementType = elementType;
+        this.lineReader = lineReader;
+        this.arrayReader = arrayReader;
+    }
+
+    /**
+     * Creates an iterator reading one JSON value per line.
+     * @param objectMapper the object mapper used to bind each element
+     * @param elementType the type to bind each element to
+     * @param reader the body reader
+     * @return the element iterator
+     */
+    static JsonElementIterator ofLines(ObjectMapper objectMapper, Type elementType, Reader reader) {
+        return new JsonElementIterator(objectMapper, elementType, new BufferedReader(reader), null);
+    }
+
+    /**
+     * Creates an iterator reading the elements of a top-level JSON array.
+     * @param objectMapper the object mapper used to bind each element
+     * @param elementType the type to bind each element to
+     * @param reader the body reader
+     * @return the element iterator
+     */
+    static JsonElementIterator ofArray(ObjectMapper objectMapper, Type elementType, Reader reader) {
+        return new JsonElementIterator(objectMapper, elementType, null, reader);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!hasPending && !finished) {
+            try {
+                hasPending = arrayReader != null ? readArrayElement() : readLine();
+                finished = !hasPending;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException ex) {
+                finished = true;
+                throw new BodyReadException("Could not read JSON: " + ex.getMessage(), ex);
+            }
+        }
+        return hasPending;
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object element = pending;
+        pending = null;
+        hasPending = false;
+        return element;
+    }
+
+    private boolean readLine() throws IOException {
+        String line;
+        while ((line = lineReader.readLine()) != null) {
+            if (!line.isBlank()) {
+                pending = objectMapper.readValue(new StringReader(line), elementType);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean readArrayElement() throws IOException {
+        int c = skipWhitespace();
+        if (!started) {
+            started = true;
+            if (c != '[') {
+                throw new IllegalStateException("request body is not a JSON array");
+            }
+            position++;
+            c = skipWhitespace();
+            if (c == ']') {
+                return endArray();
+            }
+        } else if (c == ']') {
+            return endArray();
+        } else if (c == ',') {
+            position++;
+        } else {
+            throw new IllegalStateException(c == -1 ? "unexpected end of the JSON array"
+                    : "unexpected character '" + (char) c + "' after an array element");
+        }
+        ElementReader elementReader = new ElementReader();
+        pending = objectMapper.readValue(elementReader, elementType);
+        if (elementReader.skipRemaining()) {
+            throw new IllegalStateException("unexpected content in an array element");
+        }
+        return true;
+    }
+
+    private boolean endArray() throws IOException {
+        position++;
+        if (skipWhitespace() != -1) {
+            throw new IllegalStateException("unexpected content after the end of the JSON array");
+        }
+        return false;
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c;
+        while (isWhitespace(c = peek())) {
+            position++;
+        }
+        return c;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            if (buffer == null) {
+                buffer = new char[BUFFER_SIZE];
+            }
+            position = 0;
+            limit = Math.max(arrayReader.read(buffer, 0, buffer.length), 0);
+            if (limit == 0) {
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Reads the characters of the current array element from the buffer, ending before the comma or bracket which
+     * follows it at the top level. Content following a complete value within the element, which the object mapper
+     * might not read, is tracked so that it is rejected after the element is bound.
+     */
+    private final class ElementReader extends Reader {
+        private int depth;
+        private boolean inString;
+        private boolean escaped;
+        private boolean inValue;
+        private boolean separated;
+        private boolean valueEnded;
+        private boolean malformed;
+        private boolean ended;
+
+        @Override
+        public int read(char[] chars, int offset, int length) throws IOException {
+            int count = 0;
+            while (count < length && !ended) {
+                int c = peek();
+                if (c == -1 || !inString && depth == 0 && (c == ',' || c == ']')) {
+                    ended = true;
+                    break;
+                }
+                track((char) c);
+                chars[offset + count++] = (char) c;
+                position++;
+            }
+            return count == 0 && length > 0 ? -1 : count;
+        }
+
+        private void track(char c) {
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                    valueEnded = depth == 0;
+                }
+            } else if (isWhitespace(c)) {
+                separated |= depth == 0 && inValue;
+            } else if (depth == 0 && (valueEnded || separated)) {
+                malformed = true;
+            } else {
+                inValue = true;
+                if (c == '"') {
+                    inString = true;
+                } else if (c == '[' || c == '{') {
+                    depth++;
+                } else if (c == ']' || c == '}') {
+                    valueEnded = --depth == 0;
+                }
+            }
+        }
+
+        /**
+         * Skips the characters of the element not read by the object mapper.
+         * @return {@code true} if the element has content following its value
+         */
+        boolean skipRemaining() throws IOException {
+            char[] chars = new char[64];
+            while (read(chars, 0, chars.length) != -1) {
+                // skipped
+            }
+            return malformed;
+        }
+
+        @Override
+        public void close() {
+            // the body reader is closed by the iterator
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        if (arrayReader != null) {
+            arrayReader.close();
+        } else {
+            lineReader.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonParser;
+
+/**
+ * Decodes a request body of a media type into a JSON value, which is then bound to the resource method parameter.
+ * The reader is selected by the request's {@code Content-Type} header.
+ * @see WebModuleConfigurer#getMessageBodyReaders()
+ */
+public interface MessageBodyReader {
+    /**
+     * Returns the media type read by this reader.
+     * @return the media type, like {@code application/cbor}
+     */
+    String getMediaType();
+
+    /**
+     * Reads a value from the input stream.
+     * @param inputStream the input stream
+     * @return the value read
+     * @throws IOException if an I/O error occurs or the content is malformed
+     */
+    JsonValue readFrom(InputStream inputStream) throws IOException;
+
+    /**
+     * Creates a parser over the content of the input stream, which is used to bind the body to the parameter type
+     * and for {@link JsonParser} parameters. By default, the value is read using {@link #readFrom(InputStream)} and
+     * the parser iterates over it, while a reader can override it to decode the content as it is parsed.
+     * @param inputStream the input stream
+     * @return the parser
+     * @throws jakarta.json.JsonException if an I/O error occurs or the content is malformed
+     */
+    default JsonParser createParser(InputStream inputStream) {
+        JsonValue value;
+        try {
+            value = readFrom(inputStream);
+        } catch (IOException e) {
+            throw new JsonException("could not read " + getMediaType() + " content: " + e.getMessage(), e);
+        }
+        switch (value.getValueType()) {
+            case OBJECT:
+                return Json.createParserFactory(null).createParser(value.asJsonObject());
+            case ARRAY:
+                return Json.createParserFactory(null).createParser(value.asJsonArray());
+            default: // a top-level scalar, whose text is short
+                return Json.createParser(new StringReader(value.toString()));
+        }
+    }
+}
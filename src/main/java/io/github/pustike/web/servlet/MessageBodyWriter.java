@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import jakarta.json.JsonValue;
+
+/**
+ * Encodes the response body in a media type. The value returned by the resource method is first mapped to a JSON
+ * value, selecting its fields using the {@link io.github.pustike.web.JsonContext}, which is then written by the
+ * writer selected by content negotiation over {@link io.github.pustike.web.Produces} and the {@code Accept} header.
+ * @see WebModuleConfigurer#getMessageBodyWriters()
+ */
+public interface MessageBodyWriter {
+    /**
+     * Returns the media type produced by this writer, which is also used as the {@code Content-Type} header value.
+     * @return the media type, like {@code application/cbor}
+     */
+    String getMediaType();
+
+    /**
+     * Writes the given value to the output stream.
+     * @param value the value to write
+     * @param outputStream the output stream
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo(JsonValue value, OutputStream outputStream) throws IOException;
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import io.github.pustike.web.Priority;
+import io.github.pustike.web.scope.RequestScope;
+
+/**
+ * Serializes the elements of a large result as a JSON array in chunks, which are written in parallel and joined in
+ * their order, so that the body is identical to the one written sequentially. The chunks are written by threads of
+ * a bounded executor and by the calling thread, which takes chunks too, so that the result is written even when
+ * the executor is busy or rejects the work. The request scope of the calling thread is opened on the executor's
+ * threads, so that the request scoped instances and the deadline are shared. Each thread writes its chunks one
+ * after the other to a single buffer, from which they are copied once into the body, and the buffers are kept in
+ * a pool bounded by the number of processors.
+ */
+final class ParallelSerializer {
+    private static final int BUFFER_SIZE = 8192;
+    /** The buffers grown beyond this size are not pooled, so that the pool doesn't hold on to a large heap */
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+    private final BulkheadExecutor executor;
+    private final int maxHelpers;
+    private final BlockingQueue<ChunkBuffer> bufferPool;
+
+    /**
+     * Creates a parallel serializer.
+     * @param executor the executor writing the chunks along with the calling thread
+     * @param maxHelpers the maximum number of executor threads helping with a single result
+     */
+    ParallelSerializer(BulkheadExecutor executor, int maxHelpers) {
+        this.executor = executor;
+        this.maxHelpers = maxHelpers;
+        this.bufferPool = new ArrayBlockingQueue<>(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Writes the elements as a JSON array, in chunks of the given size.
+     * @param elements the elements
+     * @param chunkSize the number of elements in a chunk
+     * @param chunkWriter writes the elements of a chunk separated by commas, without the enclosing brackets
+     * @return the JSON array body
+     * @throws IOException if a chunk could not be written, or the thread is interrupted while waiting for chunks
+     */
+    byte[] serialize(List<?> elements, int chunkSize, ChunkWriter chunkWriter) throws IOException {
+        SerializationTask task = new SerializationTask(elements, chunkSize, chunkWriter);
+        int helperCount = Math.min(task.chunkCount - 1, maxHelpers);
+        if (helperCount > 0) {
+            HttpServletRequest request = RequestScope.getRequest();
+            HttpServletResponse response = RequestScope.getResponse();
+            Runnable helper = () -> {
+                if (task.isTaken()) {
+                    return; // all chunks are taken already, maybe the request is completed
+                }
+                try (Closeable ignored = RequestScope.open(request, response)) {
+                    task.run();
+                } catch (IOException e) { // not thrown when closing the scope
+                    throw new UncheckedIOException(e);
+                }
+            };
+            for (int i = 0; i < helperCount; i++) {
+                if (!executor.execute(Priority.Level.NORMAL, helper)) {
+                    break; // the executor is full, the remaining chunks are written by this thread
+                }
+            }
+        }
+        task.run();
+        return task.join();
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Writes the elements of a chunk, separated by commas, without the enclosing brackets.
+     */
+    @FunctionalInterface
+    interface ChunkWriter {
+        void write(List<?> chunk, OutputStream outputStream) throws IOException;
+    }
+
+    private final class SerializationTask {
+        private final List<?> elements;
+        private final int chunkSize;
+        private final int chunkCount;
+        private final ChunkWriter chunkWriter;
+        private final AtomicInteger nextChunk;
+        /** Counts the chunks written, failed or skipped after a failure */
+        private final CountDownLatch doneChunks;
+        private final AtomicReference<Throwable> failure;
+        /** The buffer, offset and length of each written chunk, published by counting down the latch */
+        private final ChunkBuffer[] chunkBuffers;
+        private final int[] chunkOffsets;
+        private final int[] chunkLengths;
+        private final Queue<ChunkBuffer> usedBuffers;
+
+        private SerializationTask(List<?> elements, int chunkSize, ChunkWriter chunkWriter) {
+            this.elements = elements;
+            this.chunkSize = chunkSize;
+            this.chunkCount = (elements.size() + chunkSize - 1) / chunkSize;
+            this.chunkWriter = chunkWriter;
+            this.nextChunk = new AtomicInteger();
+            this.doneChunks = new CountDownLatch(chunkCount);
+            this.failure = new AtomicReference<>();
+            this.chunkBuffers = new ChunkBuffer[chunkCount];
+            this.chunkOffsets = new int[chunkCount];
+            this.chunkLengths = new int[chunkCount];
+            this.usedBuffers = new ConcurrentLinkedQueue<>();
+        }
+
+        private boolean isTaken() {
+            return nextChunk.get() >= chunkCount;
+        }
+
+        /**
+         * Takes and writes chunks until none is left. After a chunk fails, the remaining ones are only counted.
+         */
+        private void run() {
+            ChunkBuffer buffer = null;
+            for (int index; (index = nextChunk.getAndIncrement()) < chunkCount; ) {
+                try {
+                    if (failure.get() == null) {
+                        if (buffer == null) {
+                            buffer = takeBuffer();
+                            usedBuffers.add(buffer);
+                        }
+                        int fromIndex = index * chunkSize;
+                        List<?> chunk = elements.subList(fromIndex, Math.min(elements.size(), fromIndex + chunkSize));
+                        int offset = buffer.size();
+                        chunkWriter.write(chunk, buffer);
+                        chunkBuffers[index] = buffer;
+                        chunkOffsets[index] = offset;
+                        chunkLengths[index] = buffer.size() - offset;
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    doneChunks.countDown();
+                }
+            }
+        }
+
+        /**
+         * Waits for the chunks taken by other threads, and joins all chunks into the body.
+         */
+        private byte[] join() throws IOException {
+            try {
+                doneChunks.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the serialized chunks");
+            }
+            try {
+                Throwable error = failure.get();
+                if (error instanceof IOException) {
+                    throw (IOException) error;
+                } else if (error instanceof RuntimeException) {
+                    throw (RuntimeException) error;
+                } else if (error instanceof Error) {
+                    throw (Error) error;
+                } else if (error != null) {
+                    throw new IllegalStateException(error);
+                }
+                int length = chunkCount + 1; // brackets and the separating commas
+                for (int chunkLength : chunkLengths) {
+                    length += chunkLength;
+                }
+                byte[] body = new byte[length];
+                body[0] = '[';
+                int offset = 1;
+                for (int i = 0; i < chunkCount; i++) {
+                    if (i > 0) {
+                        body[offset++] = ',';
+                    }
+                    chunkBuffers[i].copyTo(chunkOffsets[i], chunkLengths[i], body, offset);
+                    offset += chunkLengths[i];
+                }
+                body[offset] = ']';
+                return body;
+            } finally {
+                // all chunks are done, so the buffers are no longer written
+                usedBuffers.forEach(ParallelSerializer.this::releaseBuffer);
+            }
+        }
+    }
+
+    private ChunkBuffer takeBuffer() {
+        ChunkBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : new ChunkBuffer();
+    }
+
+    private void releaseBuffer(ChunkBuffer buffer) {
+        if (buffer.capacity() <= MAX_POOLED_BUFFER_SIZE) {
+            buffer.reset();
+            bufferPool.offer(buffer);
+        }
+    }
+
+    /**
+     * A growable buffer holding the chunks written by a thread, which are read without copying the whole buffer.
+     */
+    private static final class ChunkBuffer extends ByteArrayOutputStream {
+        private ChunkBuffer() {
+            super(BUFFER_SIZE);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        void copyTo(int offset, int length, byte[] target, int targetOffset) {
+            System.arraycopy(buf, offset, target, targetOffset, length);
+        }
+    }
+}
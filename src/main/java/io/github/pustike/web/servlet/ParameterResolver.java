@@ -15,14 +15,32 @@
  */
 package io.github.pustike.web.servlet;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InaccessibleObjectException;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonParser;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 
@@ -33,9 +51,12 @@ import io.github.pustike.web.CookieParam;
 import io.github.pustike.web.DefaultValue;
 import io.github.pustike.web.FormParam;
 import io.github.pustike.web.HeaderParam;
+import io.github.pustike.web.Patch;
 import io.github.pustike.web.PathParam;
 import io.github.pustike.web.QueryParam;
+import io.github.pustike.web.RawJson;
 import io.github.pustike.web.utils.AntPathMatcher;
+import io.github.pustike.web.utils.JsonParserReader;
 import io.github.pustike.web.utils.MediaType;
 import io.github.pustike.web.utils.ServletUtils;
 
@@ -44,12 +65,19 @@ class ParameterResolver {
     private final AntPathMatcher pathMatcher;
     private final ObjectMapper objectMapper;
     private final MediaType starPlusJsonMediaType;
+    private final MediaType jsonPatchMediaType;
+    private final List<MessageBodyReader> bodyReaders;
+    private final List<MediaType> bodyReaderMediaTypes;
 
-    ParameterResolver(TypeConverter typeConverter, AntPathMatcher pathMatcher, ObjectMapper objectMapper) {
+    ParameterResolver(TypeConverter typeConverter, AntPathMatcher pathMatcher, ObjectMapper objectMapper,
+            List<MessageBodyReader> bodyReaders) {
         this.typeConverter = typeConverter;
         this.pathMatcher = pathMatcher;
         this.objectMapper = objectMapper;
         this.starPlusJsonMediaType = MediaType.get("application/*+json");
+        this.jsonPatchMediaType = MediaType.get("application/json-patch+json");
+        this.bodyReaders = List.copyOf(bodyReaders);
+        this.bodyReaderMediaTypes = bodyReaders.stream().map(reader -> MediaType.get(reader.getMediaType())).toList();
     }
 
     Object[] resolveParameters(HttpServletRequest request, HandlerMethod handlerMethod) throws Exception {
@@ -79,19 +107,26 @@ class ParameterResolver {
                 paramValue = getFormParam(request, parameter.getAnnotation(FormParam.class).value());
             } else if(parameter.isAnnotationPresent(BeanParam.class)) {
                 paramValue = getBeanParam(request, parameterType, pathPattern);
+            } else if (parameterType == InputStream.class) {
+                paramValue = ServletUtils.getBody(request);
+            } else if (parameterType == Stream.class || parameterType == Iterator.class) {
+                paramValue = getStreamingBodyParam(request, parameterType, genericParameterTypes[i]);
+            } else if (parameterType == Patch.class) {
+                paramValue = getPatchParam(request);
+            } else if (parameterType == JsonParser.class || parameterType == RawJson.class
+                    || JsonValue.class.isAssignableFrom(parameterType)) {
+                paramValue = getJsonBodyParam(request, parameterType);
             } else { // if json content-type, then read json parameter
                 MediaType contentType = ServletUtils.getContentType(request);
-                if (contentType == null || ServletUtils.JSON_MEDIA_TYPE.includes(contentType)
-                        || starPlusJsonMediaType.includes(contentType)) {
+                if (isJsonContentType(contentType)) {
                     try (Reader jsonReader = new InputStreamReader(ServletUtils.getBody(request),
                             ServletUtils.getCharset(contentType))) {
                         paramValue = objectMapper.readValue(jsonReader, genericParameterTypes[i]);
                     } catch (Exception ex) {
-                        throw new IllegalArgumentException("Could not read JSON: " + ex.getMessage(), ex);
+                        throw new BodyReadException("Could not read JSON: " + ex.getMessage(), ex);
                     }
                 } else {
-                    throw new IllegalStateException("No supporting parameter Resolver found for URI: " //
-                            + request.getRequestURI());
+                    paramValue = readBody(request, contentType, genericParameterTypes[i]);
                 }
             }
             if (paramValue == null) {
@@ -105,6 +140,137 @@ class ParameterResolver {
         return parameterValues;
     }
 
+    private boolean isJsonContentType(MediaType contentType) {
+        return contentType == null || ServletUtils.JSON_MEDIA_TYPE.includes(contentType)
+                || starPlusJsonMediaType.includes(contentType);
+    }
+
+    /**
+     * Provides the request body without binding it to an object: a {@link JsonParser} streaming over the body, the
+     * unparsed body as {@link RawJson}, which is parsed only if the handler reads it, or the JSON value tree.
+     */
+    private Object getJsonBodyParam(HttpServletRequest request, Class<?> parameterType) throws IOException {
+        MediaType contentType = ServletUtils.getContentType(request);
+        JsonValue jsonValue;
+        if (!isJsonContentType(contentType)) {
+            if (parameterType == JsonParser.class) {
+                return findBodyReader(request, contentType).createParser(ServletUtils.getBody(request));
+            }
+            jsonValue = readBody(request, contentType);
+        } else if (parameterType == JsonParser.class) {
+            return Json.createParser(new InputStreamReader(ServletUtils.getBody(request),
+                    ServletUtils.getCharset(contentType)));
+        } else if (parameterType == RawJson.class) {
+            byte[] body = ServletUtils.getBody(request).readAllBytes();
+            Charset charset = ServletUtils.getCharset(contentType);
+            return RawJson.of(charset.equals(StandardCharsets.UTF_8) ? body
+                    : new String(body, charset).getBytes(StandardCharsets.UTF_8));
+        } else {
+            jsonValue = readJsonBody(request, contentType);
+        }
+        if (parameterType == RawJson.class) {
+            return RawJson.of(jsonValue.toString());
+        } else if (!parameterType.isInstance(jsonValue)) {
+            throw new BodyReadException("Could not read JSON: expected " + parameterType.getSimpleName()
+                    + " but the request body is " + jsonValue.getValueType());
+        }
+        return jsonValue;
+    }
+
+    /**
+     * Reads the JSON Patch or JSON Merge Patch document of the request body, depending on its content type.
+     */
+    private Patch getPatchParam(HttpServletRequest request) throws IOException {
+        MediaType contentType = ServletUtils.getContentType(request);
+        JsonValue jsonValue = isJsonContentType(contentType) ? readJsonBody(request, contentType)
+                : readBody(request, contentType);
+        try {
+            if (contentType != null && jsonPatchMediaType.includes(contentType)) {
+                if (jsonValue.getValueType() != JsonValue.ValueType.ARRAY) {
+                    throw new BodyReadException("JSON Patch document must be an array of operations");
+                }
+                return Patch.of(Json.createPatch(jsonValue.asJsonArray()), objectMapper);
+            }
+            return Patch.of(Json.createMergePatch(jsonValue), objectMapper);
+        } catch (JsonException ex) {
+            throw new BodyReadException("Could not read JSON: " + ex.getMessage(), ex);
+        }
+    }
+
+    private JsonValue readJsonBody(HttpServletRequest request, MediaType contentType) throws IOException {
+        try (JsonReader jsonReader = Json.createReader(new InputStreamReader(ServletUtils.getBody(request),
+                ServletUtils.getCharset(contentType)))) {
+            return jsonReader.readValue();
+        } catch (JsonException ex) {
+            throw new BodyReadException("Could not read JSON: " + ex.getMessage(), ex);
+        }
+    }
+
+    private MessageBodyReader findBodyReader(HttpServletRequest request, MediaType contentType) {
+        for (int i = 0; i < bodyReaders.size(); i++) {
+            if (bodyReaderMediaTypes.get(i).includes(contentType)) {
+                return bodyReaders.get(i);
+            }
+        }
+        throw new IllegalStateException("No supporting parameter Resolver found for URI: " //
+                + request.getRequestURI());
+    }
+
+    private JsonValue readBody(HttpServletRequest request, MediaType contentType) throws IOException {
+        MessageBodyReader bodyReader = findBodyReader(request, contentType);
+        try {
+            return bodyReader.readFrom(ServletUtils.getBody(request));
+        } catch (IOException | JsonException ex) {
+            throw new BodyReadException("Could not read " + bodyReader.getMediaType() + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Binds the body to the given type, by streaming the events of the body reader's parser to the object mapper,
+     * without building the JSON value tree first.
+     */
+    private Object readBody(HttpServletRequest request, MediaType contentType, Type type) {
+        MessageBodyReader bodyReader = findBodyReader(request, contentType);
+        try (Reader reader = new JsonParserReader(bodyReader.createParser(ServletUtils.getBody(request)))) {
+            return objectMapper.readValue(reader, type);
+        } catch (Exception ex) {
+            throw new BodyReadException("Could not read " + bodyReader.getMediaType() + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private Object getStreamingBodyParam(HttpServletRequest request, Class<?> parameterType, Type genericType)
+            throws IOException {
+        Type elementType = Object.class;
+        if (genericType instanceof ParameterizedType) {
+            elementType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+            if (elementType instanceof WildcardType) {
+                elementType = ((WildcardType) elementType).getUpperBounds()[0];
+            }
+        }
+        MediaType contentType = ServletUtils.getContentType(request);
+        Reader bodyReader = new InputStreamReader(ServletUtils.getBody(request), ServletUtils.getCharset(contentType));
+        JsonElementIterator iterator;
+        if (ServletUtils.NDJSON_MEDIA_TYPE.includes(contentType)) {
+            iterator = JsonElementIterator.ofLines(objectMapper, elementType, bodyReader);
+        } else if (isJsonContentType(contentType)) {
+            iterator = JsonElementIterator.ofArray(objectMapper, elementType, bodyReader);
+        } else {
+            throw new IllegalStateException("No supporting parameter Resolver found for URI: " //
+                    + request.getRequestURI());
+        }
+        if (parameterType == Iterator.class) {
+            return iterator;
+        }
+        Spliterator<Object> spliterator = Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED);
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                iterator.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
     private String getQueryParam(HttpServletRequest request, String parameterKey) {
         return parameterKey.isBlank() ? null : request.getParameter(parameterKey);
     }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.servlet.ServletRequest;
+
+import io.github.pustike.web.Priority;
+
+/**
+ * Admission control by the time requests waited in the server's queue before being dispatched, similar to the
+ * CoDel (controlled delay) queue management. The minimum queue delay is tracked in each interval: while it stays
+ * below the target the queue is draining, and only requests that waited longer than the interval are shed. When
+ * even the minimum delay of an interval exceeds the target, the queue is standing and the server is overloaded, so
+ * requests that waited longer than the target are shed until the queue drains again. Requests shed this way are
+ * likely past the client's timeout already, and rejecting them quickly frees the server for the fresher ones.
+ * <p>
+ * The delay tolerated depends on the request's priority: critical requests are never shed, high priority requests
+ * are shed only when waiting longer than the interval, and low priority requests are shed when waiting longer than
+ * the target, and all of them while the queue is standing.
+ * <p>
+ * The queue delay is read from the {@link DispatcherServlet#QUEUE_DELAY_ATTRIBUTE} request attribute, which is set
+ * by the embedded Jetty server; requests without it are always admitted.
+ */
+final class QueueDelayAdmission {
+    private final long target;
+    private final long interval;
+    private final AtomicLong intervalEnd;
+    private final AtomicLong intervalMinDelay;
+    private volatile boolean overloaded;
+
+    QueueDelayAdmission(long targetMillis, long intervalMillis) {
+        this.target = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        this.interval = TimeUnit.MILLISECONDS.toNanos(Math.max(targetMillis, intervalMillis));
+        this.intervalEnd = new AtomicLong(System.nanoTime() + interval);
+        this.intervalMinDelay = new AtomicLong(Long.MAX_VALUE);
+    }
+
+    /**
+     * Checks whether the request should be processed, by the time it waited in the queue.
+     * @param request the request
+     * @param priority the priority of the request
+     * @return {@code true} if the request is admitted, {@code false} if it should be rejected
+     */
+    boolean admit(ServletRequest request, Priority.Level priority) {
+        Object queueDelay = request.getAttribute(DispatcherServlet.QUEUE_DELAY_ATTRIBUTE);
+        return !(queueDelay instanceof Long) || admit((Long) queueDelay, priority);
+    }
+
+    private boolean admit(long queueDelay, Priority.Level priority) {
+        intervalMinDelay.accumulateAndGet(queueDelay, Math::min);
+        long now = System.nanoTime();
+        long end = intervalEnd.get();
+        if (now - end >= 0 && intervalEnd.compareAndSet(end, now + interval)) {
+            overloaded = intervalMinDelay.getAndSet(Long.MAX_VALUE) > target;
+        }
+        boolean overloaded = this.overloaded;
+        return switch (priority) {
+            case CRITICAL -> true;
+            case HIGH -> queueDelay <= interval;
+            case NORMAL -> queueDelay <= (overloaded ? target : interval);
+            case LOW -> !overloaded && queueDelay <= target;
+        };
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+
+/**
+ * Writes a serialized response body without blocking, using a {@link WriteListener}, so that the body is handed
+ * to the container at once and sent as the client's socket becomes writable. The async completion is released
+ * when the body is written or the write fails.
+ */
+final class ResponseBodyWriter implements WriteListener {
+    private static final System.Logger logger = System.getLogger(DispatcherServlet.class.getName());
+    private final ServletOutputStream outputStream;
+    private final byte[] body;
+    private final AsyncCompletion completion;
+    private final AtomicBoolean released;
+    private boolean written;
+
+    private ResponseBodyWriter(ServletOutputStream outputStream, byte[] body, AsyncCompletion completion) {
+        this.outputStream = outputStream;
+        this.body = body;
+        this.completion = completion;
+        this.released = new AtomicBoolean();
+    }
+
+    /**
+     * Writes the body to the output stream, retaining the async completion until it is written.
+     * @param outputStream the response output stream
+     * @param body the response body
+     * @param completion the async completion of the request
+     */
+    static void write(ServletOutputStream outputStream, byte[] body, AsyncCompletion completion) {
+        completion.retain();
+        outputStream.setWriteListener(new ResponseBodyWriter(outputStream, body, completion));
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+        if (!written) {
+            written = true;
+            outputStream.write(body); // the container keeps the remaining bytes and calls back when all are sent
+        }
+        if (outputStream.isReady()) {
+            release();
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        logger.log(System.Logger.Level.DEBUG, "could not write the response", throwable);
+        release();
+    }
+
+    private void release() {
+        if (released.compareAndSet(false, true)) {
+            completion.release();
+        }
+    }
+}
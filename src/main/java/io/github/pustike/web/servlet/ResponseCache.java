@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.servlet.http.HttpServletRequest;
+
+import io.github.pustike.web.Cacheable;
+import io.github.pustike.web.utils.ServletUtils;
+
+/**
+ * The server side cache of serialized responses of resource methods annotated with {@link Cacheable}. The total
+ * size of cached bodies is bounded, and when it is exceeded, the least recently used entries are evicted. On a
+ * cache miss, only one request per key invokes the resource method, while concurrent requests for the same key
+ * wait for its result. A response computed while the cache is invalidated is not stored, as it may have been
+ * created from the data before the change.
+ * <p>
+ * An instance is bound in the application injector, so that it can be injected to invalidate cached responses
+ * when the underlying data is changed.
+ */
+public final class ResponseCache {
+    private static final char SEPARATOR = '\u0000';
+    private final Map<String, Entry> entryMap;
+    private final Map<String, CompletableFuture<SerializedBody>> loadingMap;
+    private final AtomicLong totalSize;
+    private final AtomicLong generation;
+    private final long maxSize;
+
+    ResponseCache(long maxSize) {
+        this.entryMap = new ConcurrentHashMap<>();
+        this.loadingMap = new ConcurrentHashMap<>();
+        this.totalSize = new AtomicLong();
+        this.generation = new AtomicLong();
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Removes all cached responses having the given tag.
+     * @param tag the tag declared in {@link Cacheable#tags()}
+     */
+    public void invalidate(String tag) {
+        generation.incrementAndGet();
+        for (Map.Entry<String, Entry> mapEntry : entryMap.entrySet()) {
+            if (Arrays.asList(mapEntry.getValue().tags).contains(tag)) {
+                remove(mapEntry.getKey(), mapEntry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes all cached responses.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entryMap.forEach(this::remove);
+    }
+
+    /**
+     * Returns the approximate size in bytes of all cached responses.
+     * @return the cache size
+     */
+    public long getSize() {
+        return totalSize.get();
+    }
+
+    /**
+     * Returns the number of cached responses.
+     * @return the number of entries
+     */
+    public int getEntryCount() {
+        return entryMap.size();
+    }
+
+    /**
+     * Creates the cache key from the route, the request path, query parameters sorted by name and the values of
+     * request headers declared in {@link Cacheable#headers()}, for the negotiated media type.
+     */
+    String createKey(HttpServletRequest request, HandlerMethod handlerMethod, Cacheable cacheable,
+            String mediaType) {
+        StringBuilder keyBuilder = new StringBuilder(128);
+        keyBuilder.append(handlerMethod.getPathPattern()).append(SEPARATOR).append(mediaType).append(SEPARATOR)
+                .append(ServletUtils.getRelativePath(request)).append(SEPARATOR);
+        Map<String, String[]> parameterMap = request.getParameterMap();
+        if (!parameterMap.isEmpty()) {
+            String[] parameterNames = parameterMap.keySet().toArray(new String[0]);
+            Arrays.sort(parameterNames);
+            for (String name : parameterNames) {
+                for (String value : parameterMap.get(name)) {
+                    keyBuilder.append(name).append('=').append(value).append(SEPARATOR);
+                }
+            }
+        }
+        for (String header : cacheable.headers()) {
+            String value = request.getHeader(header);
+            keyBuilder.append(SEPARATOR).append(value != null ? value : "");
+        }
+        return keyBuilder.toString();
+    }
+
+    /**
+     * Returns the cached entry that is fresh or can be served stale, or {@code null} if there is none.
+     */
+    Entry get(String key) {
+        Entry entry = entryMap.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (now - entry.staleUntil >= 0) {
+            remove(key, entry);
+            return null;
+        }
+        entry.lastAccessTime = now;
+        return entry;
+    }
+
+    /**
+     * Returns the current generation of the cache, which is changed when entries are invalidated. It is read before
+     * computing a response to be stored with {@link #put(String, SerializedBody, Cacheable, long)}.
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Loads the response body of a cache miss using the loader, which is invoked by only one caller at a time for
+     * the key, and stores it. Other callers for the same key wait for the result; if the loader fails or has no
+     * result, each of them invokes the loader itself, without storing its result.
+     * @return the loaded body, or {@code null} if the loader has no result
+     */
+    SerializedBody load(String key, Cacheable cacheable, Callable<SerializedBody> loader) throws Exception {
+        long loadGeneration = generation.get();
+        CompletableFuture<SerializedBody> loading = new CompletableFuture<>();
+        CompletableFuture<SerializedBody> inFlight = loadingMap.putIfAbsent(key, loading);
+        if (inFlight != null) {
+            SerializedBody body = null;
+            try {
+                body = inFlight.get();
+            } catch (ExecutionException e) {
+                // the load failed, and the error is reported to its caller
+            }
+            return body != null ? body : loader.call();
+        }
+        SerializedBody body = null;
+        try {
+            Entry entry = get(key); // loaded by another caller since the miss
+            body = entry != null ? entry.getBody() : loader.call();
+            if (entry == null && body != null) {
+                put(key, body, cacheable, loadGeneration);
+            }
+            return body;
+        } finally {
+            loadingMap.remove(key, loading);
+            loading.complete(body);
+        }
+    }
+
+    /**
+     * Stores the response body, unless the cache was invalidated after the given generation was read.
+     * @return {@code true} if the body is stored
+     */
+    boolean put(String key, SerializedBody body, Cacheable cacheable, long expectedGeneration) {
+        if (generation.get() != expectedGeneration) {
+            return false;
+        }
+        long now = System.nanoTime();
+        long freshUntil = now + cacheable.unit().toNanos(cacheable.ttl());
+        long staleUntil = freshUntil + cacheable.unit().toNanos(cacheable.staleWhileRevalidate());
+        Entry entry = new Entry(body, freshUntil, staleUntil, cacheable.tags());
+        entry.lastAccessTime = now;
+        if (entry.size > maxSize) {
+            return false;
+        }
+        Entry previous = entryMap.put(key, entry);
+        totalSize.addAndGet(previous == null ? entry.size : entry.size - previous.size);
+        if (generation.get() != expectedGeneration) {
+            remove(key, entry); // invalidated concurrently, which may not have seen this entry
+            return false;
+        }
+        if (totalSize.get() > maxSize) {
+            evict();
+        }
+        return true;
+    }
+
+    private synchronized void evict() {
+        long targetSize = maxSize - maxSize / 10;
+        if (totalSize.get() <= targetSize) {
+            return;
+        }
+        List<Map.Entry<String, Entry>> entries = new ArrayList<>(entryMap.entrySet());
+        entries.sort(Comparator.comparingLong(mapEntry -> mapEntry.getValue().lastAccessTime));
+        for (Map.Entry<String, Entry> mapEntry : entries) {
+            if (totalSize.get() <= targetSize) {
+                break;
+            }
+            remove(mapEntry.getKey(), mapEntry.getValue());
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        if (entryMap.remove(key, entry)) {
+            totalSize.addAndGet(-entry.size);
+        }
+    }
+
+    /**
+     * A cached response body with its freshness information.
+     */
+    static final class Entry {
+        private final SerializedBody body;
+        private final long freshUntil;
+        private final long staleUntil;
+        private final String[] tags;
+        private final long size;
+        private final AtomicBoolean refreshing;
+        private volatile long lastAccessTime;
+
+        private Entry(SerializedBody body, long freshUntil, long staleUntil, String[] tags) {
+            this.body = body;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+            this.tags = tags;
+            // account for a compressed form of the body, which is created when first requested
+            this.size = body.getBytes().length + body.getBytes().length / 4 + 64L;
+            this.refreshing = new AtomicBoolean();
+        }
+
+        SerializedBody getBody() {
+            return body;
+        }
+
+        /**
+         * Checks whether this entry is stale and marks it as being refreshed by the caller. Only one caller is
+         * selected to refresh an entry.
+         * @return {@code true} if the caller should refresh this entry
+         */
+        boolean shouldRefresh() {
+            return System.nanoTime() - freshUntil >= 0 && refreshing.compareAndSet(false, true);
+        }
+
+        /**
+         * Allows another caller to refresh this entry, after a refresh that failed, was not queued or had no result.
+         */
+        void refreshFailed() {
+            refreshing.set(false);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses response bodies using gzip or deflate content coding, as negotiated by the {@code Accept-Encoding}
+ * request header. Deflaters are reset after every use and kept in a pool bounded by the number of processors,
+ * rather than per thread, so that their native memory is not held by each of the many virtual threads.
+ */
+final class ResponseCompressor {
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int CHUNK_SIZE = 8192;
+    private final int minSize;
+    private final BlockingQueue<Deflater> gzipDeflaters;
+    private final BlockingQueue<Deflater> zlibDeflaters;
+
+    ResponseCompressor(int minSize) {
+        this.minSize = minSize;
+        int poolSize = 2 * Runtime.getRuntime().availableProcessors();
+        this.gzipDeflaters = new ArrayBlockingQueue<>(poolSize);
+        this.zlibDeflaters = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    /**
+     * Selects the content coding to use for the given {@code Accept-Encoding} header value, preferring gzip.
+     * @param acceptEncoding the accept encoding header value, can be null
+     * @param length the length of the response body
+     * @return the content coding to use or {@code null} if the body should not be compressed
+     */
+    String negotiate(String acceptEncoding, int length) {
+        if (acceptEncoding == null || length < minSize) {
+            return null;
+        }
+        boolean gzip = false, deflate = false, wildcard = false, gzipRejected = false, deflateRejected = false;
+        for (int start = 0, end; start < acceptEncoding.length(); start = end + 1) {
+            end = acceptEncoding.indexOf(',', start);
+            if (end == -1) {
+                end = acceptEncoding.length();
+            }
+            int paramIndex = acceptEncoding.indexOf(';', start);
+            int codingEnd = paramIndex != -1 && paramIndex < end ? paramIndex : end;
+            String coding = acceptEncoding.substring(start, codingEnd).trim();
+            boolean rejected = codingEnd < end && isZeroQuality(acceptEncoding.substring(codingEnd + 1, end));
+            if (coding.equalsIgnoreCase(GZIP) || coding.equalsIgnoreCase("x-gzip")) {
+                gzip = !rejected;
+                gzipRejected = rejected;
+            } else if (coding.equalsIgnoreCase(DEFLATE)) {
+                deflate = !rejected;
+                deflateRejected = rejected;
+            } else if (coding.equals("*")) {
+                wildcard = !rejected;
+            }
+        }
+        if (gzip || (wildcard && !gzipRejected)) {
+            return GZIP;
+        }
+        return deflate || (wildcard && !deflateRejected) ? DEFLATE : null;
+    }
+
+    private static boolean isZeroQuality(String parameters) {
+        String parameter = parameters.trim();
+        if (parameter.length() < 2 || Character.toLowerCase(parameter.charAt(0)) != 'q' || parameter.charAt(1) != '=') {
+            return false;
+        }
+        try {
+            return Double.parseDouble(parameter.substring(2).trim()) <= 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Compresses the given body with the given content coding.
+     * @param body the response body
+     * @param encoding the content coding, either {@link #GZIP} or {@link #DEFLATE}
+     * @return the compressed body
+     */
+    byte[] compress(byte[] body, String encoding) {
+        boolean gzip = GZIP.equals(encoding);
+        BlockingQueue<Deflater> deflaterPool = gzip ? gzipDeflaters : zlibDeflaters;
+        Deflater deflater = deflaterPool.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, gzip);
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(body.length / 4 + 64);
+        if (gzip) {
+            outputStream.writeBytes(GZIP_HEADER);
+        }
+        byte[] chunk = new byte[Math.min(CHUNK_SIZE, body.length + 64)];
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int count = deflater.deflate(chunk);
+                outputStream.write(chunk, 0, count);
+            }
+        } finally {
+            deflater.reset();
+            if (!deflaterPool.offer(deflater)) {
+                deflater.end();
+            }
+        }
+        if (gzip) {
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            writeIntLE(outputStream, (int) crc.getValue());
+            writeIntLE(outputStream, body.length);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream outputStream, int value) {
+        outputStream.write(value & 0xff);
+        outputStream.write((value >> 8) & 0xff);
+        outputStream.write((value >> 16) & 0xff);
+        outputStream.write((value >> 24) & 0xff);
+    }
+}
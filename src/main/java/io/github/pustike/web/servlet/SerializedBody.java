@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import io.github.pustike.web.utils.XXHash64;
+
+/**
+ * A serialized response body along with its content type. The entity tag and the compressed forms of the body
+ * are computed on first use and kept, so that a body written more than once is hashed and compressed only once.
+ */
+final class SerializedBody {
+    private final byte[] bytes;
+    private final String contentType;
+    private volatile String opaqueTag;
+    private volatile byte[] gzipBytes;
+    private volatile byte[] deflateBytes;
+
+    SerializedBody(byte[] bytes, String contentType) {
+        this.bytes = bytes;
+        this.contentType = contentType;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Returns the opaque part of the strong entity tag, computed from a hash of the body.
+     * @return the opaque tag
+     */
+    String getOpaqueTag() {
+        String tag = opaqueTag;
+        if (tag == null) {
+            opaqueTag = tag = Long.toHexString(XXHash64.hash(bytes));
+        }
+        return tag;
+    }
+
+    /**
+     * Returns the body compressed using the given content coding.
+     * @param encoding the content coding
+     * @param compressor the response compressor
+     * @return the compressed body
+     */
+    byte[] getCompressed(String encoding, ResponseCompressor compressor) {
+        boolean gzip = ResponseCompressor.GZIP.equals(encoding);
+        byte[] compressed = gzip ? gzipBytes : deflateBytes;
+        if (compressed == null) {
+            compressed = compressor.compress(bytes, encoding);
+            if (gzip) {
+                gzipBytes = compressed;
+            } else {
+                deflateBytes = compressed;
+            }
+        }
+        return compressed;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Memo of the serialized bodies of immutable results, keyed by the identity of the result instance. Results are
+ * weakly referenced, so an entry is removed once its result is no longer reachable from the application. Each
+ * result can have one body per variant, which identifies the JSON context and the media type it was written with.
+ */
+final class SerializedBodyMemo {
+    private final Map<IdentityKey, Map<String, SerializedBody>> memoMap;
+    private final ReferenceQueue<Object> referenceQueue;
+
+    SerializedBodyMemo() {
+        this.memoMap = new ConcurrentHashMap<>();
+        this.referenceQueue = new ReferenceQueue<>();
+    }
+
+    SerializedBody get(Object value, String variant) {
+        expungeStaleEntries();
+        Map<String, SerializedBody> variantMap = memoMap.get(new IdentityKey(value, null));
+        return variantMap != null ? variantMap.get(variant) : null;
+    }
+
+    void put(Object value, String variant, SerializedBody serializedBody) {
+        memoMap.computeIfAbsent(new IdentityKey(value, referenceQueue), key -> new ConcurrentHashMap<>(4))
+                .put(variant, serializedBody);
+    }
+
+    /**
+     * Returns the number of results having memoized bodies, after removing those which are no longer reachable.
+     * @return the number of results
+     */
+    int size() {
+        expungeStaleEntries();
+        return memoMap.size();
+    }
+
+    private void expungeStaleEntries() {
+        Reference<?> reference;
+        while ((reference = referenceQueue.poll()) != null) {
+            memoMap.remove(reference);
+        }
+    }
+
+    private static final class IdentityKey extends WeakReference<Object> {
+        private final int hashCode;
+
+        private IdentityKey(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hashCode = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof IdentityKey)) {
+                return false;
+            }
+            Object referent = get();
+            return referent != null && referent == ((IdentityKey) obj).get();
+        }
+    }
+}
@@ -29,4 +29,42 @@ public interface WebModuleConfigurer {
      * @return list of modules
      */
     List<Module> getModules();
+
+    /**
+     * Return a list of additional message body writers, which are preferred over the built-in JSON and CBOR writers
+     * for the same media type. JSON remains the default media type for requests without an {@code Accept} header or
+     * accepting any type, and other writers are selected only when requested or declared with
+     * {@link io.github.pustike.web.Produces}.
+     * @return list of message body writers
+     */
+    default List<MessageBodyWriter> getMessageBodyWriters() {
+        return List.of();
+    }
+
+    /**
+     * Return a list of additional message body readers, which are preferred over the built-in CBOR reader for the
+     * same media type.
+     * @return list of message body readers
+     */
+    default List<MessageBodyReader> getMessageBodyReaders() {
+        return List.of();
+    }
+
+    /**
+     * Return a list of exception mappers, used to map the exceptions thrown when handling requests to the error
+     * responses. When more than one mapper is registered for the same exception type, the first one is used.
+     * @return list of exception mappers
+     */
+    default List<ExceptionMapper<?>> getExceptionMappers() {
+        return List.of();
+    }
+
+    /**
+     * Return a list of bulkhead executors, on which the routes annotated with {@link io.github.pustike.web.Executor}
+     * are handled by the executor's name.
+     * @return list of bulkhead executors
+     */
+    default List<BulkheadExecutor> getExecutors() {
+        return List.of();
+    }
 }
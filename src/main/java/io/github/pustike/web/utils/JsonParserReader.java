@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.utils;
+
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Objects;
+import jakarta.json.stream.JsonParser;
+
+/**
+ * A reader of the JSON text of the events of a {@link JsonParser}, which is produced as it is read. It is used to
+ * bind a value decoded from another media type, or a JSON value tree, with the object mapper, which reads JSON
+ * text, without first writing the complete value to a string. Closing the reader closes the parser.
+ */
+public final class JsonParserReader extends Reader {
+    private static final int CHUNK_SIZE = 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private final JsonParser parser;
+    private final StringBuilder text;
+    private int textPosition;
+    /** Whether a value was written in the container at each depth, which is followed by a comma */
+    private boolean[] hasValue;
+    private int depth;
+    private boolean afterKey;
+
+    /**
+     * Creates a reader of the JSON text of the remaining events of the parser.
+     * @param parser the JSON parser
+     */
+    public JsonParserReader(JsonParser parser) {
+        this.parser = Objects.requireNonNull(parser);
+        this.text = new StringBuilder(CHUNK_SIZE + 64);
+        this.hasValue = new boolean[16];
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, chars.length);
+        if (length == 0) {
+            return 0;
+        }
+        if (textPosition == text.length()) {
+            text.setLength(0);
+            textPosition = 0;
+            while (text.length() < CHUNK_SIZE && parser.hasNext()) {
+                appendEvent(parser.next());
+            }
+            if (text.length() == 0) {
+                return -1;
+            }
+        }
+        int count = Math.min(length, text.length() - textPosition);
+        text.getChars(textPosition, textPosition + count, chars, offset);
+        textPosition += count;
+        return count;
+    }
+
+    private void appendEvent(JsonParser.Event event) {
+        switch (event) {
+            case START_OBJECT:
+                startValue();
+                text.append('{');
+                enterContainer();
+                break;
+            case START_ARRAY:
+                startValue();
+                text.append('[');
+                enterContainer();
+                break;
+            case END_OBJECT:
+                depth--;
+                text.append('}');
+                break;
+            case END_ARRAY:
+                depth--;
+                text.append(']');
+                break;
+            case KEY_NAME:
+                startValue();
+                appendString(parser.getString());
+                text.append(':');
+                afterKey = true;
+                break;
+            case VALUE_STRING:
+                startValue();
+                appendString(parser.getString());
+                break;
+            case VALUE_NUMBER:
+                startValue();
+                text.append(parser.getString());
+                break;
+            case VALUE_TRUE:
+                startValue();
+                text.append("true");
+                break;
+            case VALUE_FALSE:
+                startValue();
+                text.append("false");
+                break;
+            default:
+                startValue();
+                text.append("null");
+        }
+    }
+
+    private void startValue() {
+        if (afterKey) {
+            afterKey = false;
+        } else if (depth > 0) {
+            if (hasValue[depth]) {
+                text.append(',');
+            }
+            hasValue[depth] = true;
+        }
+    }
+
+    private void enterContainer() {
+        if (++depth == hasValue.length) {
+            hasValue = Arrays.copyOf(hasValue, depth * 2);
+        }
+        hasValue[depth] = false;
+    }
+
+    private void appendString(String value) {
+        text.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    text.append("\\\"");
+                    break;
+                case '\\':
+                    text.append("\\\\");
+                    break;
+                case '\n':
+                    text.append("\\n");
+                    break;
+                case '\r':
+                    text.append("\\r");
+                    break;
+                case '\t':
+                    text.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        text.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xf]);
+                    } else {
+                        text.append(c);
+                    }
+            }
+        }
+        text.append('"');
+    }
+
+    @Override
+    public void close() {
+        parser.close();
+    }
+}
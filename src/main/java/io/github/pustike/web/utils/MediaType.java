@@ -17,8 +17,8 @@ package io.github.pustike.web.utils;
 
 import java.nio.charset.Charset;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An <a href="http://tools.ietf.org/html/rfc2045">RFC 2045</a> Media Type, appropriate to describe
@@ -29,11 +29,10 @@ import java.util.regex.Pattern;
  * </p>
  */
 public final class MediaType {
-    private static final String TOKEN = "([a-zA-Z0-9-!#$%&'*+.^_`{|}~]+)";
-    private static final String QUOTED = "\"([^\"]*)\"";
-    private static final Pattern TYPE_SUBTYPE = Pattern.compile(TOKEN + "/" + TOKEN);
-    private static final Pattern PARAMETER = Pattern.compile(
-            ";\\s*(?:" + TOKEN + "=(?:" + TOKEN + "|" + QUOTED + "))?");
+    private static final String TOKEN_CHARS = "-!#$%&'*+.^_`{|}~";
+    /** The maximum number of media types kept by the intern cache */
+    private static final int MAX_INTERNED = 256;
+    private static final Map<String, MediaType> internCache = new ConcurrentHashMap<>();
 
     private final String mediaType;
     private final String type;
@@ -53,58 +52,103 @@ public final class MediaType {
      * @throws IllegalArgumentException if {@code string} is not a well-formed media type.
      */
     public static MediaType get(String string) {
-        Matcher typeSubtype = TYPE_SUBTYPE.matcher(string);
-        if (!typeSubtype.lookingAt()) {
+        int length = string.length();
+        int typeEnd = skipToken(string, 0);
+        int subtypeEnd = typeEnd > 0 && typeEnd < length && string.charAt(typeEnd) == '/'
+                ? skipToken(string, typeEnd + 1) : typeEnd + 1;
+        if (subtypeEnd == typeEnd + 1) {
             throw new IllegalArgumentException("No subtype found for: \"" + string + '"');
         }
-        String type = typeSubtype.group(1).toLowerCase(Locale.US);
-        String subtype = typeSubtype.group(2).toLowerCase(Locale.US);
+        String type = string.substring(0, typeEnd).toLowerCase(Locale.US);
+        String subtype = string.substring(typeEnd + 1, subtypeEnd).toLowerCase(Locale.US);
 
         String charset = null;
-        Matcher parameter = PARAMETER.matcher(string);
-        for (int s = typeSubtype.end(); s < string.length(); s = parameter.end()) {
-            parameter.region(s, string.length());
-            if (!parameter.lookingAt()) {
+        for (int s = subtypeEnd; s < length; ) {
+            if (string.charAt(s) != ';') {
                 throw new IllegalArgumentException("Parameter is not formatted correctly: \""
                         + string.substring(s) + "\" for: \"" + string + '"');
             }
-
-            String name = parameter.group(1);
-            if (name == null || !name.equalsIgnoreCase("charset")) continue;
-            String charsetParameter = getCharsetParameter(parameter);
-            if (charset != null && !charsetParameter.equalsIgnoreCase(charset)) {
+            // a parameter is: ';' whitespace* [name '=' (token | quoted-string)]
+            int nameStart = s + 1;
+            while (nameStart < length && isWhitespace(string.charAt(nameStart))) {
+                nameStart++;
+            }
+            s = nameStart;
+            int nameEnd = skipToken(string, nameStart);
+            if (nameEnd == nameStart || nameEnd == length || string.charAt(nameEnd) != '=') {
+                continue;
+            }
+            int valueStart = nameEnd + 1;
+            int valueEnd;
+            String value;
+            if (valueStart < length && string.charAt(valueStart) == '"') {
+                valueEnd = string.indexOf('"', valueStart + 1);
+                if (valueEnd == -1) {
+                    continue;
+                }
+                // Value is "double-quoted". That's valid and the quotes are stripped.
+                value = string.substring(valueStart + 1, valueEnd++);
+            } else {
+                valueEnd = skipToken(string, valueStart);
+                if (valueEnd == valueStart) {
+                    continue;
+                }
+                value = string.substring(valueStart, valueEnd);
+                // If the token is 'single-quoted' it's invalid! But we're lenient and strip the quotes.
+                if (value.startsWith("'") && value.endsWith("'") && value.length() > 2) {
+                    value = value.substring(1, value.length() - 1);
+                }
+            }
+            s = valueEnd;
+            if (!string.regionMatches(true, nameStart, "charset", 0, nameEnd - nameStart)
+                    || nameEnd - nameStart != 7) {
+                continue;
+            }
+            if (charset != null && !value.equalsIgnoreCase(charset)) {
                 throw new IllegalArgumentException("Multiple charsets defined: \""
-                        + charset + "\" and: \"" + charsetParameter + "\" for: \"" + string + '"');
+                        + charset + "\" and: \"" + value + "\" for: \"" + string + '"');
             }
-            charset = charsetParameter;
+            charset = value;
         }
 
         return new MediaType(string, type, subtype, charset);
     }
 
-    private static String getCharsetParameter(Matcher parameter) {
-        String token = parameter.group(2);
-        if (token != null) {
-            // If the token is 'single-quoted' it's invalid! But we're lenient and strip the quotes.
-            return (token.startsWith("'") && token.endsWith("'") && token.length() > 2)
-                    ? token.substring(1, token.length() - 1)
-                    : token;
-        } else {
-            // Value is "double-quoted". That's valid and our regex group already strips the quotes.
-            return parameter.group(3);
+    private static int skipToken(String string, int index) {
+        int length = string.length();
+        while (index < length && isTokenChar(string.charAt(index))) {
+            index++;
         }
+        return index;
+    }
+
+    private static boolean isTokenChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || TOKEN_CHARS.indexOf(c) != -1;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
     }
 
     /**
      * Returns a media type for {@code string}, or null if {@code string} is not a well-formed media
-     * type.
+     * type. Parsed media types are interned, as requests use only a few distinct content types.
      */
     public static MediaType parse(String string) {
+        MediaType mediaType = internCache.get(string);
+        if (mediaType != null) {
+            return mediaType;
+        }
         try {
-            return get(string);
+            mediaType = get(string);
         } catch (IllegalArgumentException ignored) {
             return null;
         }
+        if (internCache.size() < MAX_INTERNED) {
+            internCache.putIfAbsent(string, mediaType);
+        }
+        return mediaType;
     }
 
     /**
@@ -39,6 +39,7 @@ public abstract class ServletUtils {
     private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
     private static final Charset UTF8_CHARSET = StandardCharsets.UTF_8;
     public static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json"); // ;charset=UTF-8
+    public static final MediaType NDJSON_MEDIA_TYPE = MediaType.get("application/x-ndjson");
 
     public static String getRelativePath(HttpServletRequest servletRequest) {
         String relativePath = servletRequest.getPathInfo();// is null when servlet is mapped to "/" instead "/*"
@@ -55,6 +56,42 @@ public abstract class ServletUtils {
         return charset == null ? UTF8_CHARSET : charset;
     }
 
+    /**
+     * Checks whether any of the entity tags in the given {@code If-None-Match} header value matches the given
+     * opaque tag, using the weak comparison. A content-coding suffix like {@code -gzip}, appended to the tag when
+     * the response is compressed, is ignored for the comparison.
+     * @param ifNoneMatch the If-None-Match header value, can be null
+     * @param opaqueTag the opaque tag of the current representation, without quotes
+     * @return {@code true} if the tag matches
+     */
+    public static boolean matchesEntityTag(String ifNoneMatch, String opaqueTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (int start = 0, end; start < ifNoneMatch.length(); start = end + 1) {
+            end = ifNoneMatch.indexOf(',', start);
+            if (end == -1) {
+                end = ifNoneMatch.length();
+            }
+            String entityTag = ifNoneMatch.substring(start, end).trim();
+            if (entityTag.equals("*")) {
+                return true;
+            }
+            if (entityTag.startsWith("W/")) {
+                entityTag = entityTag.substring(2);
+            }
+            int length = entityTag.length();
+            if (length >= opaqueTag.length() + 2 && entityTag.charAt(0) == '"' && entityTag.charAt(length - 1) == '"'
+                    && entityTag.startsWith(opaqueTag, 1)) {
+                int tagEnd = opaqueTag.length() + 1;
+                if (tagEnd == length - 1 || entityTag.charAt(tagEnd) == '-') {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public static InputStream getBody(HttpServletRequest servletRequest) throws IOException {
         if (isFormPost(servletRequest)) {
             return getBodyFromServletRequestParameters(servletRequest);
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web;
+
+import java.io.StringReader;
+import java.util.List;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonException;
+import jakarta.json.JsonValue;
+import org.junit.jupiter.api.Test;
+
+import io.github.pustike.json.ObjectMapper;
+import io.github.pustike.json.TypeConverter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PatchTest {
+    private final ObjectMapper objectMapper = new ObjectMapper(new TypeConverter());
+
+    @Test
+    void appliesJsonPatchOperations() {
+        Patch patch = jsonPatch("[{\"op\":\"test\",\"path\":\"/name\",\"value\":\"a\"},"
+                + "{\"op\":\"add\",\"path\":\"/tags/-\",\"value\":\"z\"},"
+                + "{\"op\":\"remove\",\"path\":\"/email\"},"
+                + "{\"op\":\"replace\",\"path\":\"/age\",\"value\":31},"
+                + "{\"op\":\"move\",\"from\":\"/nick\",\"path\":\"/alias\"},"
+                + "{\"op\":\"copy\",\"from\":\"/name\",\"path\":\"/login\"}]");
+        JsonValue patched = patch.applyTo(json("{\"name\":\"a\",\"email\":\"a@b.c\",\"age\":30,"
+                + "\"nick\":\"n\",\"tags\":[\"x\"]}"));
+        assertEquals(json("{\"name\":\"a\",\"age\":31,\"tags\":[\"x\",\"z\"],\"alias\":\"n\",\"login\":\"a\"}"),
+                patched);
+    }
+
+    @Test
+    void failsJsonPatchOperations() {
+        JsonValue target = json("{\"name\":\"a\"}");
+        // a failed test operation fails the whole patch
+        assertThrows(JsonException.class, () -> jsonPatch("[{\"op\":\"test\",\"path\":\"/name\",\"value\":\"b\"},"
+                + "{\"op\":\"add\",\"path\":\"/age\",\"value\":1}]").applyTo(target));
+        assertThrows(JsonException.class, () -> jsonPatch("[{\"op\":\"move\",\"from\":\"/nick\",\"path\":\"/a\"}]")
+                .applyTo(target));
+        assertThrows(JsonException.class, () -> jsonPatch("[{\"op\":\"copy\",\"from\":\"/nick\",\"path\":\"/a\"}]")
+                .applyTo(target));
+        assertThrows(JsonException.class, () -> jsonPatch("[{\"op\":\"remove\",\"path\":\"/nick\"}]")
+                .applyTo(target));
+        assertThrows(IllegalArgumentException.class, () -> jsonPatch("[]").applyTo(Json.createValue("a")));
+    }
+
+    @Test
+    void deletesMembersSetToNullByMergePatch() {
+        Patch patch = mergePatch("{\"b\":{\"c\":null,\"e\":4},\"f\":null,\"g\":5}");
+        assertEquals(json("{\"a\":1,\"b\":{\"d\":3,\"e\":4},\"g\":5}"),
+                patch.applyTo(json("{\"a\":1,\"b\":{\"c\":2,\"d\":3},\"f\":6}")));
+        // a patch which is not an object replaces the target
+        assertEquals(json("[1]"), mergePatch("[1]").applyTo(json("{\"a\":1}")));
+    }
+
+    @Test
+    void copiesOnlyChangedMembersOntoEntity() {
+        User user = new User();
+        user.name = "a";
+        user.email = "a@b.c";
+        user.age = 30;
+        user.address = new Address();
+        user.address.city = "x";
+        user.address.zip = "1";
+        user.loadedAt = 42;
+        Address address = user.address;
+        User patched = mergePatch("{\"email\":null,\"age\":31,\"unknown\":1}").applyTo(user);
+        assertSame(user, patched);
+        assertEquals("a", user.name);
+        assertNull(user.email);
+        assertEquals(31, user.age);
+        assertSame(address, user.address);
+        assertEquals(42, user.loadedAt); // not mapped to JSON, but kept on the entity
+
+        jsonPatch("[{\"op\":\"replace\",\"path\":\"/address/city\",\"value\":\"y\"}]").applyTo(user);
+        assertEquals("y", user.address.city);
+        assertEquals("1", user.address.zip);
+        assertEquals(42, user.loadedAt);
+    }
+
+    @Test
+    void rejectsRemovingPrimitiveMember() {
+        User user = new User();
+        user.age = 30;
+        assertThrows(IllegalArgumentException.class, () -> mergePatch("{\"age\":null}").applyTo(user));
+        assertEquals(30, user.age);
+    }
+
+    @Test
+    void bindsPatchedArrayToNewValue() {
+        Object patched = jsonPatch("[{\"op\":\"add\",\"path\":\"/1\",\"value\":\"b\"}]")
+                .applyTo(List.of("a", "c"), List.class);
+        assertEquals(List.of("a", "b", "c"), patched);
+    }
+
+    private Patch jsonPatch(String text) {
+        return Patch.of(Json.createPatch((JsonArray) json(text)), objectMapper);
+    }
+
+    private Patch mergePatch(String text) {
+        return Patch.of(Json.createMergePatch(json(text)), objectMapper);
+    }
+
+    private static JsonValue json(String text) {
+        return Json.createReader(new StringReader(text)).readValue();
+    }
+
+    static class User {
+        String name;
+        String email;
+        int age;
+        Address address;
+        transient long loadedAt;
+    }
+
+    static class Address {
+        String city;
+        String zip;
+    }
+}
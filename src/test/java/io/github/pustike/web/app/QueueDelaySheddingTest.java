@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.app;
+
+import io.github.pustike.inject.bind.Module;
+import io.github.pustike.web.GET;
+import io.github.pustike.web.Path;
+import io.github.pustike.web.server.JettyApplicationServer;
+import io.github.pustike.web.server.JettyContextConfigurer;
+import org.eclipse.jetty.ee11.servlet.ServletContextHandler;
+import org.eclipse.jetty.ee11.servlet.ServletHolder;
+import org.eclipse.jetty.server.Handler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Test of the queue delay admission control, which saturates the server's thread pool and checks that requests
+ * waiting in its queue are shed. It starts a server with a queue delay target of 5 milliseconds, and sends a number
+ * of concurrent requests to a handler blocking for 50 milliseconds, so that with the pool of 200 threads the later
+ * requests wait in the queue for hundreds of milliseconds. The test fails unless some of the requests are handled
+ * and some are rejected with status 503.
+ * <p>
+ * Run it with the number of concurrent requests as an optional argument, by default 2000.
+ */
+@Path("/api")
+public class QueueDelaySheddingTest implements JettyContextConfigurer {
+    private static final int BLOCKING_TIME_MILLIS = 50;
+    private static final int QUEUE_DELAY_TARGET_MILLIS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int port = 8093;
+        startServer(port);
+        HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        URI uri = URI.create("http://localhost:" + port + "/api/load/blocking");
+        List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            responses.add(httpClient.sendAsync(HttpRequest.newBuilder(uri).build(),
+                    HttpResponse.BodyHandlers.discarding()));
+        }
+        int handled = 0, shed = 0;
+        for (CompletableFuture<HttpResponse<Void>> response : responses) {
+            int status = response.join().statusCode();
+            if (status == 200) {
+                handled++;
+            } else if (status == 503) {
+                shed++;
+            } else {
+                throw new AssertionError("unexpected response status: " + status);
+            }
+        }
+        System.out.printf("%d requests: %d handled, %d shed%n", concurrency, handled, shed);
+        if (handled == 0 || shed == 0) {
+            System.err.println("FAILED: expected both handled and shed requests when the thread pool is saturated");
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private static void startServer(int port) throws Exception {
+        Thread serverThread = new Thread(() -> new JettyApplicationServer(new QueueDelaySheddingTest()).start(port));
+        serverThread.setDaemon(true);
+        serverThread.start();
+        HttpClient httpClient = HttpClient.newHttpClient();
+        URI uri = URI.create("http://localhost:" + port + "/api/load/blocking");
+        for (int i = 0; i < 100; i++) {
+            try {
+                httpClient.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding());
+                return;
+            } catch (IOException e) {
+                Thread.sleep(100); // the server is not started yet
+            }
+        }
+        throw new IllegalStateException("server is not started at port: " + port);
+    }
+
+    @Override
+    public Handler configure(ServletContextHandler contextHandler, ServletHolder servletHolder) {
+        servletHolder.setInitParameter("queueDelayTarget", String.valueOf(QUEUE_DELAY_TARGET_MILLIS));
+        return contextHandler;
+    }
+
+    @Override
+    public List<Module> getModules() {
+        return List.of(binder -> binder.bind(BlockingController.class));
+    }
+
+    /**
+     * Resource at api/load/blocking, which blocks like a handler waiting for a database or a downstream service.
+     */
+    @Path("/load")
+    public static class BlockingController {
+        @GET
+        @Path("/blocking")
+        public String block() throws InterruptedException {
+            Thread.sleep(BLOCKING_TIME_MILLIS);
+            return "done";
+        }
+    }
+}
@@ -43,10 +43,8 @@ public class SampleApplication implements JettyContextConfigurer {
         contextHandler.setBaseResource(new URLResourceFactory().newResource(
                 getClass().getResource("/META-INF/resources")));
         // servletHolder.getRegistration().setMultipartConfig(multipartConfig);
-        /*
-        CompressionHandler compressionHandler = new CompressionHandler();
-        compressionHandler.setHandler(contextHandler);
-        */
+        // controller responses are compressed by the dispatcher servlet, configure it using init parameters
+        // servletHolder.setInitParameter("compressionMinSize", "512");
         return contextHandler;
     }
 
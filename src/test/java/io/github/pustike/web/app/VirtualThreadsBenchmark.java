@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.app;
+
+import io.github.pustike.inject.bind.Module;
+import io.github.pustike.web.GET;
+import io.github.pustike.web.Path;
+import io.github.pustike.web.server.JettyApplicationServer;
+import io.github.pustike.web.server.JettyContextConfigurer;
+import org.eclipse.jetty.ee11.servlet.ServletContextHandler;
+import org.eclipse.jetty.ee11.servlet.ServletHolder;
+import org.eclipse.jetty.server.Handler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Benchmark comparing the throughput of handlers blocking for a while, when requests are handled on the platform
+ * thread pool and on virtual threads. Each mode starts a server and sends a number of concurrent requests to a
+ * handler sleeping for 50 milliseconds. The platform thread pool is limited to 200 threads, so its throughput is
+ * bounded by them, while virtual threads handle all the concurrent requests at once.
+ * <p>
+ * Run it with the number of concurrent requests as an optional argument, by default 2000. Virtual threads need
+ * a Java runtime supporting them.
+ */
+@Path("/api")
+public class VirtualThreadsBenchmark implements JettyContextConfigurer {
+    private static final int BLOCKING_TIME_MILLIS = 50;
+    private final boolean virtualThreads;
+
+    private VirtualThreadsBenchmark(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        int port = 8091;
+        for (boolean virtualThreads : new boolean[]{false, true}) {
+            JettyApplicationServer server = new JettyApplicationServer(new VirtualThreadsBenchmark(virtualThreads));
+            Thread serverThread = startServer(server, port);
+            try {
+                URI uri = URI.create("http://localhost:" + port + "/api/load/blocking");
+                run(httpClient, uri, concurrency); // warm up
+                long elapsedMillis = run(httpClient, uri, concurrency);
+                System.out.printf("%-8s threads: %d requests in %d ms, %.0f requests/s%n",
+                        virtualThreads ? "virtual" : "platform", concurrency, elapsedMillis,
+                        concurrency * 1000.0 / elapsedMillis);
+            } finally {
+                // the next mode must not compete with this server's threads
+                server.stop();
+                serverThread.join();
+            }
+            port++;
+        }
+        System.exit(0);
+    }
+
+    private static Thread startServer(JettyApplicationServer server, int port) throws Exception {
+        Thread serverThread = new Thread(() -> server.start(port));
+        serverThread.setDaemon(true);
+        serverThread.start();
+        HttpClient httpClient = HttpClient.newHttpClient();
+        URI uri = URI.create("http://localhost:" + port + "/api/load/blocking");
+        for (int i = 0; i < 100; i++) {
+            try {
+                httpClient.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding());
+                return serverThread;
+            } catch (IOException e) {
+                Thread.sleep(100); // the server is not started yet
+            }
+        }
+        throw new IllegalStateException("server is not started at port: " + port);
+    }
+
+    private static long run(HttpClient httpClient, URI uri, int concurrency) {
+        long startTime = System.nanoTime();
+        List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            responses.add(httpClient.sendAsync(HttpRequest.newBuilder(uri).build(),
+                    HttpResponse.BodyHandlers.discarding()));
+        }
+        CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0])).join();
+        long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+        // a failed or shed request is answered sooner, and would inflate the throughput
+        for (CompletableFuture<HttpResponse<Void>> response : responses) {
+            int status = response.join().statusCode();
+            if (status != 200) {
+                throw new IllegalStateException("request failed with status: " + status);
+            }
+        }
+        return elapsedMillis;
+    }
+
+    @Override
+    public Handler configure(ServletContextHandler contextHandler, ServletHolder servletHolder) {
+        return contextHandler;
+    }
+
+    @Override
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreads;
+    }
+
+    @Override
+    public List<Module> getModules() {
+        return List.of(binder -> binder.bind(BlockingController.class));
+    }
+
+    /**
+     * Resource at api/load/blocking, which blocks like a handler waiting for a database or a downstream service.
+     */
+    @Path("/load")
+    public static class BlockingController {
+        @GET
+        @Path("/blocking")
+        public String block() throws InterruptedException {
+            Thread.sleep(BLOCKING_TIME_MILLIS);
+            return "done";
+        }
+    }
+}
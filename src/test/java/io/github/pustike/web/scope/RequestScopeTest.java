@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.scope;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import jakarta.inject.Provider;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+
+import io.github.pustike.inject.BindingKey;
+import io.github.pustike.web.servlet.TestRequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestScopeTest {
+    @Test
+    void keepsInstancesOfEachScopeInItsOwnSlots() throws Exception {
+        // two injectors, each with its own scope instance, assign the same slot index to their first binding
+        RequestScope scope1 = new RequestScope(), scope2 = new RequestScope();
+        Provider<Object> provider1 = scope1.scope(BindingKey.of(Object.class), Object::new);
+        Provider<Object> provider2 = scope2.scope(BindingKey.of(Object.class), Object::new);
+        HttpServletRequest request = TestRequest.of("GET", "/items").create();
+        Object instance1, instance2;
+        try (Closeable ignored = RequestScope.open(request, null)) {
+            instance1 = provider1.get();
+            instance2 = provider2.get();
+            assertNotSame(instance1, instance2);
+            assertSame(instance1, provider1.get());
+            assertSame(instance2, provider2.get());
+        }
+        // the instances are kept in the request, when the scope is reopened for it in another thread
+        Object[] reopened = new Object[2];
+        Thread thread = new Thread(() -> {
+            try (Closeable ignored = RequestScope.open(request, null)) {
+                reopened[0] = provider1.get();
+                reopened[1] = provider2.get();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertSame(instance1, reopened[0]);
+        assertSame(instance2, reopened[1]);
+        // another request has its own instances
+        try (Closeable ignored = RequestScope.open(TestRequest.of("GET", "/items").create(), null)) {
+            assertNotSame(instance1, provider1.get());
+            assertNotSame(instance2, provider2.get());
+        }
+        assertThrows(IllegalStateException.class, provider1::get);
+    }
+
+    @Test
+    void growsSlotsForBindingsAddedAfterRequestIsOpened() throws Exception {
+        RequestScope scope = new RequestScope();
+        Provider<Object> provider = scope.scope(BindingKey.of(Object.class), Object::new);
+        AtomicInteger nullCount = new AtomicInteger();
+        try (Closeable ignored = RequestScope.open(TestRequest.of("GET", "/items").create(), null)) {
+            Object instance = provider.get();
+            // bound later, like in a child injector, with a slot index beyond the slots of the request
+            Provider<Object> lateProvider = null;
+            for (int i = 0; i < 20; i++) {
+                lateProvider = scope.scope(BindingKey.of(Object.class), () -> {
+                    nullCount.incrementAndGet();
+                    return null;
+                });
+            }
+            assertNull(lateProvider.get());
+            assertNull(lateProvider.get()); // a null instance is created once too
+            assertEquals(1, nullCount.get());
+            assertSame(instance, provider.get());
+        }
+    }
+
+    @Test
+    void keepsDeadlineAcrossReopenedScopes() throws Exception {
+        HttpServletRequest request = TestRequest.of("GET", "/items").create();
+        try (Closeable ignored = RequestScope.open(request, null)) {
+            assertEquals(Long.MAX_VALUE, RequestScope.getRemainingTime(TimeUnit.MILLISECONDS));
+            RequestScope.setDeadline(200, TimeUnit.MILLISECONDS);
+        }
+        Thread.sleep(50);
+        // the scope reopened for the same request, like when its async result completes, has the same deadline
+        try (Closeable ignored = RequestScope.open(request, null)) {
+            long remainingMillis = RequestScope.getRemainingTime(TimeUnit.MILLISECONDS);
+            assertTrue(remainingMillis > 0 && remainingMillis <= 150, String.valueOf(remainingMillis));
+            RequestScope.setDeadline(0, TimeUnit.MILLISECONDS);
+            assertTrue(RequestScope.getRemainingTime(TimeUnit.NANOSECONDS) <= 0);
+        }
+    }
+
+    @Test
+    void propagatesRequestContextToForkedTasks() throws Exception {
+        RequestScope scope = new RequestScope();
+        Provider<Object> provider = scope.scope(BindingKey.of(Object.class), Object::new);
+        HttpServletRequest request = TestRequest.of("GET", "/items").create();
+        try (Closeable ignored = RequestScope.open(request, null)) {
+            Object instance = provider.get();
+            Callable<Object> getRequest = RequestScope::getRequest;
+            Callable<Object> getInstance = provider::get;
+            assertEquals(List.of(request, instance), RequestScope.fork(List.of(getRequest, getInstance)));
+        }
+    }
+
+    @Test
+    void cancelsAndAwaitsSiblingsOfFailedTask() throws Exception {
+        CountDownLatch siblingStarted = new CountDownLatch(1);
+        AtomicBoolean siblingInterrupted = new AtomicBoolean();
+        AtomicBoolean siblingFinished = new AtomicBoolean();
+        Callable<Object> sibling = () -> {
+            siblingStarted.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                siblingInterrupted.set(true);
+                Thread.sleep(100); // still cleaning up, which the fork waits for
+            } finally {
+                siblingFinished.set(true);
+            }
+            return null;
+        };
+        Callable<Object> failing = () -> {
+            siblingStarted.await();
+            throw new IllegalArgumentException("failed");
+        };
+        try (Closeable ignored = RequestScope.open(TestRequest.of("GET", "/items").create(), null)) {
+            long startTime = System.nanoTime();
+            IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                    () -> RequestScope.fork(List.of(sibling, failing)));
+            assertEquals("failed", error.getMessage());
+            assertTrue(siblingInterrupted.get());
+            assertTrue(siblingFinished.get());
+            assertTrue(System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(5));
+        }
+    }
+
+    @Test
+    void cancelsTasksWhenDeadlinePasses() throws Exception {
+        AtomicBoolean finished = new AtomicBoolean();
+        Callable<Object> slow = () -> {
+            try {
+                Thread.sleep(10_000);
+            } finally {
+                finished.set(true);
+            }
+            return null;
+        };
+        Callable<Object> fast = () -> "fast";
+        try (Closeable ignored = RequestScope.open(TestRequest.of("GET", "/items").create(), null)) {
+            RequestScope.setDeadline(100, TimeUnit.MILLISECONDS);
+            assertThrows(TimeoutException.class, () -> RequestScope.fork(List.of(fast, slow)));
+            assertTrue(finished.get());
+            // a shorter timeout than the request deadline applies
+            RequestScope.setDeadline(10, TimeUnit.SECONDS);
+            finished.set(false);
+            assertThrows(TimeoutException.class, () -> RequestScope.fork(50, TimeUnit.MILLISECONDS, List.of(slow)));
+            assertTrue(finished.get());
+            // no task is started once the deadline has passed
+            RequestScope.setDeadline(0, TimeUnit.MILLISECONDS);
+            AtomicBoolean started = new AtomicBoolean();
+            assertThrows(TimeoutException.class, () -> RequestScope.fork(List.of(() -> started.getAndSet(true))));
+            assertFalse(started.get());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class BufferedBodyRequestTest {
+    @Test
+    void readsBodyAndReleasesPooledBufferOnCompletion() throws Exception {
+        HttpServletRequest request = TestRequest.of("POST", "/items").body("application/json", "{\"a\":1}").create();
+        AsyncCompletion completion = AsyncCompletion.start(request, new TestResponse().get());
+        AtomicReference<HttpServletRequest> bufferedRequest = new AtomicReference<>();
+        BufferedBodyRequest.read(request, 1024, bufferedRequest::set, error -> fail(error));
+        assertEquals("{\"a\":1}", new String(bufferedRequest.get().getInputStream().readAllBytes(),
+                StandardCharsets.UTF_8));
+
+        HttpServletRequest unreadRequest = TestRequest.of("POST", "/items").body("application/json", "[]").create();
+        AsyncCompletion unreadCompletion = AsyncCompletion.start(unreadRequest, new TestResponse().get());
+        BufferedBodyRequest.read(unreadRequest, 1024, bufferedRequest::set, error -> fail(error));
+        unreadCompletion.release();
+        // after the completion, the pooled buffer may hold another request's body
+        assertThrows(IllegalStateException.class, () -> bufferedRequest.get().getInputStream());
+        completion.release();
+    }
+
+    @Test
+    void readsLargeBodyWithoutAsyncCompletion() throws Exception {
+        byte[] body = new byte[100_000];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        HttpServletRequest request = TestRequest.of("POST", "/files").body("application/octet-stream", body)
+                .create();
+        AtomicReference<HttpServletRequest> bufferedRequest = new AtomicReference<>();
+        BufferedBodyRequest.read(request, body.length, bufferedRequest::set, error -> fail(error));
+        byte[] read = bufferedRequest.get().getInputStream().readAllBytes();
+        assertEquals(body.length, read.length);
+        for (int i = 0; i < body.length; i++) {
+            assertEquals(body[i], read[i]);
+        }
+    }
+
+    @Test
+    void rejectsTooLargeBody() throws Exception {
+        HttpServletRequest request = TestRequest.of("POST", "/items").body("application/json", "{\"a\":1}").create();
+        AtomicReference<HttpServletRequest> bufferedRequest = new AtomicReference<>();
+        AtomicReference<Throwable> readError = new AtomicReference<>();
+        BufferedBodyRequest.read(request, 4, bufferedRequest::set, readError::set);
+        assertNull(bufferedRequest.get());
+        assertInstanceOf(BufferedBodyRequest.BodyTooLargeException.class, readError.get());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.github.pustike.web.Priority;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkheadExecutorTest {
+    private final BulkheadExecutor executor = BulkheadExecutor.of("test", 1, 3);
+    private final CountDownLatch blockerStarted = new CountDownLatch(1);
+    private final CountDownLatch blockerReleased = new CountDownLatch(1);
+
+    @AfterEach
+    void shutdown() {
+        blockerReleased.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void runsQueuedTasksByPriority() throws InterruptedException {
+        block();
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        assertTrue(executor.execute(Priority.Level.LOW, () -> record(order, "low", done)));
+        assertTrue(executor.execute(Priority.Level.NORMAL, () -> record(order, "normal", done)));
+        assertTrue(executor.execute(Priority.Level.HIGH, () -> record(order, "high", done)));
+        assertEquals(3, executor.getQueueDepth());
+        // the queue is full
+        assertFalse(executor.execute(Priority.Level.CRITICAL, () -> order.add("rejected")));
+        assertEquals(1, executor.getRejectedCount());
+        blockerReleased.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("high", "normal", "low"), order);
+        assertEquals(0, executor.getQueueDepth());
+    }
+
+    @Test
+    void removesQueuedTask() throws InterruptedException {
+        block();
+        AtomicBoolean removedRun = new AtomicBoolean();
+        Runnable removed = () -> removedRun.set(true);
+        CountDownLatch done = new CountDownLatch(1);
+        assertTrue(executor.execute(Priority.Level.NORMAL, removed, null));
+        assertTrue(executor.remove(removed));
+        assertFalse(executor.remove(removed));
+        assertEquals(0, executor.getQueueDepth());
+        // the removed task doesn't hold a place in the queue
+        for (int i = 0; i < 3; i++) {
+            assertTrue(executor.execute(Priority.Level.NORMAL, done::countDown));
+        }
+        blockerReleased.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(removedRun.get());
+    }
+
+    @Test
+    void cancelsQueuedTasksOnShutdown() throws InterruptedException {
+        block();
+        AtomicInteger runCount = new AtomicInteger();
+        AtomicInteger cancelCount = new AtomicInteger();
+        assertTrue(executor.execute(Priority.Level.NORMAL, runCount::incrementAndGet, cancelCount::incrementAndGet));
+        assertTrue(executor.execute(Priority.Level.LOW, runCount::incrementAndGet, cancelCount::incrementAndGet));
+        assertTrue(executor.execute(Priority.Level.HIGH, runCount::incrementAndGet, null));
+        executor.shutdown();
+        assertEquals(2, cancelCount.get());
+        assertEquals(0, runCount.get());
+        assertEquals(0, executor.getQueueDepth());
+    }
+
+    @Test
+    void rejectsTasksAfterShutdown() {
+        executor.shutdown();
+        AtomicBoolean run = new AtomicBoolean();
+        for (int i = 0; i < 10; i++) {
+            assertFalse(executor.execute(Priority.Level.NORMAL, () -> run.set(true)));
+        }
+        assertEquals(10, executor.getRejectedCount());
+        assertEquals(0, executor.getQueueDepth());
+        assertFalse(run.get());
+    }
+
+    private void block() throws InterruptedException {
+        assertTrue(executor.execute(Priority.Level.NORMAL, () -> {
+            blockerStarted.countDown();
+            try {
+                blockerReleased.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(blockerStarted.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void record(List<String> order, String name, CountDownLatch done) {
+        order.add(name);
+        done.countDown();
+    }
+}
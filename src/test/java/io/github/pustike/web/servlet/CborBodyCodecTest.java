@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.HexFormat;
+import java.util.List;
+import jakarta.json.Json;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParser.Event;
+import jakarta.json.stream.JsonParsingException;
+import org.junit.jupiter.api.Test;
+
+import io.github.pustike.web.RawJson;
+import io.github.pustike.web.utils.JsonParserReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CborBodyCodecTest {
+    private final CborBodyCodec codec = new CborBodyCodec();
+
+    @Test
+    void readsIntegers() throws IOException {
+        assertJson("0", "00");
+        assertJson("23", "17");
+        assertJson("24", "1818");
+        assertJson("1000", "1903e8");
+        assertJson("1000000", "1a000f4240");
+        assertJson("1000000000000", "1b000000e8d4a51000");
+        assertJson("18446744073709551615", "1bffffffffffffffff");
+        assertJson("-1", "20");
+        assertJson("-1000", "3903e7");
+        assertJson("-18446744073709551616", "3bffffffffffffffff");
+    }
+
+    @Test
+    void readsFloats() throws IOException {
+        assertNumber(0.0, "f90000");
+        assertNumber(1.0, "f93c00");
+        assertNumber(1.5, "f93e00");
+        assertNumber(65504.0, "f97bff");
+        assertNumber(5.960464477539063e-8, "f90001");
+        assertNumber(0.00006103515625, "f90400");
+        assertNumber(-4.0, "f9c400");
+        assertNumber(100000.0, "fa47c35000");
+        assertNumber(3.4028234663852886e+38, "fa7f7fffff");
+        assertNumber(1.1, "fb3ff199999999999a");
+        assertNumber(1.0e+300, "fb7e37e43c8800759c");
+        assertNumber(-4.1, "fbc010666666666666");
+    }
+
+    @Test
+    void readsSimpleValues() throws IOException {
+        assertJson("false", "f4");
+        assertJson("true", "f5");
+        assertJson("null", "f6");
+        assertJson("null", "f7");
+    }
+
+    @Test
+    void readsStrings() throws IOException {
+        assertJson("\"\"", "60");
+        assertJson("\"IETF\"", "6449455446");
+        assertJson("\"\\\"\\\\\"", "62225c");
+        assertJson("\"\u00fc\"", "62c3bc");
+        assertJson("\"\u6c34\"", "63e6b0b4");
+        assertJson("\"\"", "40");
+        assertJson("\"AQIDBA==\"", "4401020304");
+    }
+
+    @Test
+    void readsArraysAndMaps() throws IOException {
+        assertJson("[]", "80");
+        assertJson("[1,[2,3],[4,5]]", "8301820203820405");
+        assertJson("{}", "a0");
+        assertJson("{\"1\":2,\"3\":4}", "a201020304");
+        assertJson("{\"a\":1,\"b\":[2,3]}", "a26161016162820203");
+        assertJson("[\"a\",{\"b\":\"c\"}]", "826161a161626163");
+    }
+
+    @Test
+    void readsIndefiniteLengths() throws IOException {
+        assertJson("\"AQIDBAU=\"", "5f42010243030405ff");
+        assertJson("\"streaming\"", "7f657374726561646d696e67ff");
+        assertJson("[]", "9fff");
+        assertJson("[1,[2,3],[4,5]]", "9f018202039f0405ffff");
+        assertJson("{\"a\":1,\"b\":[2,3]}", "bf61610161629f0203ffff");
+        assertJson("[\"a\",{\"b\":\"c\"}]", "826161bf61626163ff");
+    }
+
+    @Test
+    void readsTags() throws IOException {
+        assertJson("\"2013-03-21T20:04:00Z\"", "c074323031332d30332d32315432303a30343a30305a");
+        assertJson("1363896240", "c11a514b67b0");
+        assertJson("18446744073709551616", "c249010000000000000000");
+        assertJson("-18446744073709551617", "c349010000000000000000");
+        assertEquals(new BigDecimal("273.15"), ((JsonNumber) read("c48221196ab3")).bigDecimalValue());
+    }
+
+    @Test
+    void rejectsMalformedContent() {
+        assertThrows(IOException.class, () -> read(""));
+        assertThrows(IOException.class, () -> read("1903")); // truncated argument
+        assertThrows(IOException.class, () -> read("64494554")); // truncated text
+        assertThrows(IOException.class, () -> read("830102")); // missing array element
+        assertThrows(IOException.class, () -> read("9f0102")); // missing break
+        assertThrows(IOException.class, () -> read("1c")); // reserved additional information
+        assertThrows(IOException.class, () -> read("ff")); // break outside of an indefinite length item
+        assertThrows(IOException.class, () -> read("f97c00")); // infinity
+        assertThrows(IOException.class, () -> read("f97e00")); // NaN
+        assertThrows(IOException.class, () -> read("bf6161ff")); // key without a value
+        assertThrows(IOException.class, () -> read("a180f6")); // array as a map key
+        assertThrows(IOException.class, () -> read("5f6161ff")); // text chunk in a byte string
+        assertThrows(IOException.class, () -> read("c26161")); // bignum of a text string
+        assertThrows(IOException.class, () -> read("c48301020f")); // decimal fraction of three items
+        assertThrows(IOException.class, () -> read("81".repeat(600) + "00")); // nested too deeply
+    }
+
+    @Test
+    void roundTripsValues() throws IOException {
+        assertRoundTrip("{\"name\":\"caf\u00e9\",\"tags\":[\"a\",\"b\"],\"nested\":{\"empty\":{},\"list\":[]}}");
+        assertRoundTrip("[0,-1,23,24,255,256,65535,65536,4294967295,4294967296,9223372036854775807]");
+        assertRoundTrip("[-9223372036854775808,18446744073709551616,-18446744073709551617]");
+        assertRoundTrip("[1.5,-0.25,1.1,123.456789012345678901234567890]");
+        assertRoundTrip("[true,false,null,\"" + "x".repeat(70000) + "\"]");
+    }
+
+    @Test
+    void writesRawJsonParsed() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        codec.writeTo(RawJson.of("{\"a\":[1,2]}"), outputStream);
+        assertEquals("a16161820102", HexFormat.of().formatHex(outputStream.toByteArray()));
+    }
+
+    @Test
+    void streamsEvents() {
+        JsonParser parser = codec.createParser(new ByteArrayInputStream(bytes("bf61610161629f0203ffff")));
+        List<Event> events = List.of(Event.START_OBJECT, Event.KEY_NAME, Event.VALUE_NUMBER, Event.KEY_NAME,
+                Event.START_ARRAY, Event.VALUE_NUMBER, Event.VALUE_NUMBER, Event.END_ARRAY, Event.END_OBJECT);
+        for (Event event : events) {
+            assertEquals(event, parser.next());
+        }
+        assertFalse(parser.hasNext());
+    }
+
+    @Test
+    void parserRejectsTrailingContent() {
+        JsonParser parser = codec.createParser(new ByteArrayInputStream(bytes("820102f6")));
+        assertEquals(Event.START_ARRAY, parser.next());
+        assertEquals(List.of(1, 2), parser.getArray().getValuesAs(JsonNumber::intValue));
+        assertThrows(JsonParsingException.class, parser::hasNext);
+    }
+
+    @Test
+    void parserSkipsContainers() {
+        JsonParser parser = codec.createParser(new ByteArrayInputStream(bytes("a2616182010261626163")));
+        assertEquals(Event.START_OBJECT, parser.next());
+        assertEquals(Event.KEY_NAME, parser.next());
+        assertEquals(Event.START_ARRAY, parser.next());
+        parser.skipArray();
+        assertEquals(Event.KEY_NAME, parser.next());
+        assertEquals("b", parser.getString());
+        parser.skipObject();
+        assertFalse(parser.hasNext());
+    }
+
+    @Test
+    void parserEventsAreReadAsJsonText() throws IOException {
+        String json = "{\"a\":[1,-2.5,\"x\\\"y\\n\"],\"b\":{\"c\":null,\"d\":true},\"e\":[]}";
+        JsonParser parser = codec.createParser(new ByteArrayInputStream(write(json)));
+        try (JsonParserReader reader = new JsonParserReader(parser)) {
+            StringBuilder text = new StringBuilder();
+            char[] chars = new char[7];
+            for (int count; (count = reader.read(chars, 0, chars.length)) != -1; ) {
+                text.append(chars, 0, count);
+            }
+            assertEquals(parse(json), parse(text.toString()));
+        }
+    }
+
+    private void assertJson(String expectedJson, String hex) throws IOException {
+        assertEquals(parse(expectedJson), read(hex));
+    }
+
+    private void assertNumber(double expected, String hex) throws IOException {
+        assertEquals(expected, ((JsonNumber) read(hex)).doubleValue());
+    }
+
+    private void assertRoundTrip(String json) throws IOException {
+        JsonValue value = parse(json);
+        JsonValue readValue = codec.readFrom(new ByteArrayInputStream(write(json)));
+        assertEquals(value.toString(), readValue.toString());
+    }
+
+    private JsonValue read(String hex) throws IOException {
+        return codec.readFrom(new ByteArrayInputStream(bytes(hex)));
+    }
+
+    private byte[] write(String json) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        codec.writeTo(parse(json), outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static JsonValue parse(String json) {
+        try (JsonReader jsonReader = Json.createReader(new StringReader(json))) {
+            return jsonReader.readValue();
+        }
+    }
+
+    private static byte[] bytes(String hex) {
+        return HexFormat.of().parseHex(hex);
+    }
+}
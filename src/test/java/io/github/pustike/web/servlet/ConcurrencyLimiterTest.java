@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import io.github.pustike.web.Priority;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimiterTest {
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void shedsLowPriorityFirst() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 10);
+        // low priority requests can use only half of the limit
+        assertTrue(limiter.tryAcquire(Priority.Level.LOW));
+        assertTrue(limiter.tryAcquire(Priority.Level.LOW));
+        assertFalse(limiter.tryAcquire(Priority.Level.LOW));
+        assertTrue(limiter.tryAcquire(Priority.Level.NORMAL));
+        assertTrue(limiter.tryAcquire(Priority.Level.HIGH));
+        assertFalse(limiter.tryAcquire(Priority.Level.NORMAL));
+        assertFalse(limiter.tryAcquire(Priority.Level.HIGH));
+        // critical requests are admitted even over the limit
+        assertTrue(limiter.tryAcquire(Priority.Level.CRITICAL));
+        assertTrue(limiter.tryAcquire(Priority.Level.CRITICAL));
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void increasesLimitWhenHalfIsInUse() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 5);
+        long startTime = System.nanoTime();
+        limiter.tryAcquire(Priority.Level.NORMAL);
+        limiter.release(startTime, false);
+        assertEquals(4, limiter.getLimit()); // a single request in flight doesn't need a higher limit
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire(Priority.Level.NORMAL));
+        }
+        assertFalse(limiter.tryAcquire(Priority.Level.NORMAL));
+        limiter.release(startTime, false);
+        assertEquals(5, limiter.getLimit());
+        assertTrue(limiter.tryAcquire(Priority.Level.NORMAL));
+        assertTrue(limiter.tryAcquire(Priority.Level.NORMAL));
+        limiter.release(startTime, false);
+        assertEquals(5, limiter.getLimit()); // capped at the maximum limit
+        // a low priority request can use half of the increased limit
+        for (int i = 0; i < 4; i++) {
+            limiter.release(startTime, false);
+        }
+        assertTrue(limiter.tryAcquire(Priority.Level.LOW));
+        assertTrue(limiter.tryAcquire(Priority.Level.LOW));
+        assertTrue(limiter.tryAcquire(Priority.Level.LOW));
+        assertFalse(limiter.tryAcquire(Priority.Level.LOW));
+    }
+
+    @Test
+    void decreasesLimitOnceForDroppedRequestsInFlight() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 8, 20);
+        Thread.sleep(1);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire(Priority.Level.NORMAL);
+        }
+        limiter.release(startTime, true);
+        assertEquals(9, limiter.getLimit());
+        // requests started before the decrease don't reduce the limit again
+        limiter.release(startTime, true);
+        assertEquals(9, limiter.getLimit());
+        Thread.sleep(1);
+        limiter.tryAcquire(Priority.Level.NORMAL);
+        limiter.release(System.nanoTime(), true);
+        assertEquals(8, limiter.getLimit());
+        Thread.sleep(1);
+        limiter.tryAcquire(Priority.Level.NORMAL);
+        limiter.release(System.nanoTime(), true);
+        assertEquals(8, limiter.getLimit()); // not below the minimum limit
+    }
+
+    @Test
+    void decreasesLimitWhenLatencyRisesAfterWarmup() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 20);
+        Thread.sleep(50); // so that the samples have started after the limiter was created
+        // slow first requests don't reduce the limit before the average has settled
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire(Priority.Level.NORMAL);
+            limiter.release(System.nanoTime() - 20 * MILLIS, false);
+        }
+        assertEquals(10, limiter.getLimit());
+        for (int i = 0; i < 200; i++) {
+            limiter.tryAcquire(Priority.Level.NORMAL);
+            limiter.release(System.nanoTime() - MILLIS, false);
+        }
+        assertEquals(10, limiter.getLimit());
+        // a lasting increase of the latency beyond the tolerated multiple of the minimum reduces it
+        for (int i = 0; i < 200 && limiter.getLimit() == 10; i++) {
+            limiter.tryAcquire(Priority.Level.NORMAL);
+            limiter.release(System.nanoTime() - 20 * MILLIS, false);
+        }
+        assertEquals(9, limiter.getLimit());
+    }
+}
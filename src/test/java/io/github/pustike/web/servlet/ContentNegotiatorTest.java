@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.OutputStream;
+import java.util.List;
+import jakarta.json.JsonValue;
+import org.junit.jupiter.api.Test;
+
+import io.github.pustike.web.Produces;
+
+import static io.github.pustike.web.servlet.HandlerMethodTest.handlerMethod;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentNegotiatorTest {
+    private final MessageBodyWriter jsonWriter = new TestWriter("application/json");
+    private final MessageBodyWriter cborWriter = new TestWriter("application/cbor");
+    private final MessageBodyWriter csvWriter = new TestWriter("text/csv");
+    private final ContentNegotiator negotiator = new ContentNegotiator(List.of(cborWriter, csvWriter, jsonWriter),
+            jsonWriter);
+
+    @Test
+    void selectsDefaultWriterWithoutAcceptHeader() {
+        HandlerMethod handlerMethod = handlerMethod(Resources.class, "any");
+        assertSame(jsonWriter, negotiator.select(handlerMethod, null));
+        assertSame(jsonWriter, negotiator.select(handlerMethod, " "));
+        assertSame(jsonWriter, negotiator.select(handlerMethod, "*/*"));
+        assertTrue(negotiator.hasAlternatives(handlerMethod));
+    }
+
+    @Test
+    void selectsByQuality() {
+        HandlerMethod handlerMethod = handlerMethod(Resources.class, "any");
+        assertSame(cborWriter, negotiator.select(handlerMethod, "application/cbor"));
+        assertSame(cborWriter, negotiator.select(handlerMethod, "application/json;q=0.5, application/cbor"));
+        assertSame(csvWriter, negotiator.select(handlerMethod, "application/*;q=0.8, text/csv;q=0.9"));
+        assertSame(jsonWriter, negotiator.select(handlerMethod, "text/csv;q=0.1, */*;q=0.2"));
+    }
+
+    @Test
+    void excludesTypesWithZeroQuality() {
+        HandlerMethod handlerMethod = handlerMethod(Resources.class, "any");
+        assertSame(cborWriter, negotiator.select(handlerMethod, "application/json;q=0, application/*"));
+        assertSame(csvWriter, negotiator.select(handlerMethod, "application/*;q=0, */*;q=0.1"));
+        assertNull(negotiator.select(handlerMethod, "application/json;q=0"));
+        assertNull(negotiator.select(handlerMethod, "*/*;q=0"));
+        assertNull(negotiator.select(handlerMethod, "image/png"));
+    }
+
+    @Test
+    void takesInvalidQualityAsZero() {
+        HandlerMethod handlerMethod = handlerMethod(Resources.class, "any");
+        for (String quality : List.of("NaN", "Infinity", "-1", "1.5", "2", "0x1p0", "1d", "0.1234", "1.001", "")) {
+            assertSame(cborWriter, negotiator.select(handlerMethod, "application/json;q=" + quality
+                    + ", application/cbor;q=0.001"), quality);
+        }
+        assertSame(jsonWriter, negotiator.select(handlerMethod, "application/json;q=1.000, application/cbor;q=0.999"));
+        assertSame(jsonWriter, negotiator.select(handlerMethod, "application/json;Q=1., application/cbor"));
+    }
+
+    @Test
+    void prefersMoreSpecificRangeOfSameQuality() {
+        HandlerMethod handlerMethod = handlerMethod(Resources.class, "any");
+        assertSame(csvWriter, negotiator.select(handlerMethod, "*/*, text/csv"));
+        assertSame(cborWriter, negotiator.select(handlerMethod, "application/*, application/cbor, */*"));
+        // the most specific matching range gives the quality, even when a wildcard range has a higher one
+        assertSame(cborWriter, negotiator.select(handlerMethod, "application/*;q=0.9, application/json;q=0.1"));
+    }
+
+    @Test
+    void selectsAmongProducedTypes() {
+        HandlerMethod handlerMethod = handlerMethod(Resources.class, "csvOrCbor");
+        assertSame(cborWriter, negotiator.select(handlerMethod, null));
+        assertSame(csvWriter, negotiator.select(handlerMethod, "text/*"));
+        assertNull(negotiator.select(handlerMethod, "application/json"));
+        assertFalse(negotiator.hasAlternatives(handlerMethod(Resources.class, "jsonOnly")));
+    }
+
+    @Test
+    void checksProducibleTypes() {
+        negotiator.checkProducible(handlerMethod(Resources.class, "csvOrCbor"));
+        assertThrows(IllegalStateException.class,
+                () -> negotiator.checkProducible(handlerMethod(Resources.class, "image")));
+    }
+
+    public static class Resources {
+        public void any() {
+        }
+
+        @Produces({"text/csv", "application/cbor"})
+        public void csvOrCbor() {
+        }
+
+        @Produces("application/json")
+        public void jsonOnly() {
+        }
+
+        @Produces("image/png")
+        public void image() {
+        }
+    }
+
+    private record TestWriter(String getMediaType) implements MessageBodyWriter {
+        @Override
+        public void writeTo(JsonValue value, OutputStream outputStream) {
+        }
+    }
+}
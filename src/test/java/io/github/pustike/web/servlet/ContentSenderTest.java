@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.pustike.web.Produces;
+
+import static io.github.pustike.web.servlet.HandlerMethodTest.handlerMethod;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentSenderTest {
+    private static final byte[] CONTENT = "binary content".getBytes(StandardCharsets.UTF_8);
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void detectsContentTypes() {
+        assertTrue(ContentSender.isContentType(Path.class));
+        assertTrue(ContentSender.isContentType(FileChannel.class));
+        assertTrue(ContentSender.isContentType(ByteBuffer.class));
+        assertTrue(ContentSender.isContentType(byte[].class));
+        assertTrue(ContentSender.isContentType(ByteArrayInputStream.class));
+        assertFalse(ContentSender.isContentType(String.class));
+        assertFalse(ContentSender.isContentType(Byte[].class));
+    }
+
+    @Test
+    void sendsBytesInProducedType() throws IOException {
+        TestResponse response = send("GET", "png", CONTENT);
+        assertEquals("image/png", response.getHeader("Content-Type"));
+        assertEquals(String.valueOf(CONTENT.length), response.getHeader("Content-Length"));
+        assertArrayEquals(CONTENT, response.getBodyBytes());
+        // wildcard media types are skipped, and without a concrete type the content is an octet stream
+        assertEquals("text/csv", send("GET", "csv", CONTENT).getHeader("Content-Type"));
+        assertEquals("application/octet-stream", send("GET", "any", CONTENT).getHeader("Content-Type"));
+    }
+
+    @Test
+    void sendsRemainingBytesOfBuffers() throws IOException {
+        for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocate(CONTENT.length + 3),
+                ByteBuffer.allocateDirect(CONTENT.length + 3)}) {
+            buffer.put(new byte[3]).put(CONTENT).flip().position(3);
+            TestResponse response = send("GET", "any", buffer);
+            assertEquals(String.valueOf(CONTENT.length), response.getHeader("Content-Length"));
+            assertArrayEquals(CONTENT, response.getBodyBytes());
+            assertEquals(3, buffer.position()); // the result is not consumed, so it can be sent again
+        }
+    }
+
+    @Test
+    void sendsFilesWithTypeFromFileName() throws IOException {
+        Path file = Files.write(tempDir.resolve("notes.txt"), CONTENT);
+        TestResponse response = send("GET", "any", file);
+        assertEquals("text/plain", response.getHeader("Content-Type"));
+        assertEquals(String.valueOf(CONTENT.length), response.getHeader("Content-Length"));
+        assertArrayEquals(CONTENT, response.getBodyBytes());
+        assertEquals("image/png", send("GET", "png", file).getHeader("Content-Type"));
+    }
+
+    @Test
+    void sendsFileChannelFromItsPositionAndClosesIt() throws IOException {
+        Path file = Files.write(tempDir.resolve("data.bin"), CONTENT);
+        FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+        fileChannel.position(7);
+        TestResponse response = send("GET", "any", fileChannel);
+        assertEquals(String.valueOf(CONTENT.length - 7), response.getHeader("Content-Length"));
+        assertEquals("content", response.getBody());
+        assertFalse(fileChannel.isOpen());
+    }
+
+    @Test
+    void sendsAndClosesInputStream() throws IOException {
+        AtomicBoolean closed = new AtomicBoolean();
+        InputStream inputStream = new ByteArrayInputStream(CONTENT) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+        TestResponse response = send("GET", "any", inputStream);
+        assertArrayEquals(CONTENT, response.getBodyBytes());
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void sendsOnlyHeadersForHeadRequests() throws IOException {
+        Path file = Files.write(tempDir.resolve("data.bin"), CONTENT);
+        FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+        TestResponse response = send("HEAD", "any", fileChannel);
+        assertEquals(String.valueOf(CONTENT.length), response.getHeader("Content-Length"));
+        assertEquals(0, response.getBodyBytes().length);
+        assertFalse(fileChannel.isOpen());
+        response = send("HEAD", "png", CONTENT);
+        assertEquals(String.valueOf(CONTENT.length), response.getHeader("Content-Length"));
+        assertEquals(0, response.getBodyBytes().length);
+    }
+
+    private static TestResponse send(String method, String route, Object content) throws IOException {
+        TestResponse response = new TestResponse();
+        ContentSender.send(TestRequest.of(method, "/" + route).create(), response.get(),
+                handlerMethod(Resources.class, route), content);
+        return response;
+    }
+
+    public static class Resources {
+        public void any() {
+        }
+
+        @Produces("image/png")
+        public void png() {
+        }
+
+        @Produces({"*/*", "text/*, text/csv"})
+        public void csv() {
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.pustike.web.Priority;
+
+import static io.github.pustike.web.servlet.HandlerMethodTest.handlerMethod;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DispatcherServletTest {
+    @Test
+    void usesRoutePriorityWithoutHeader() {
+        assertEquals(Priority.Level.NORMAL, priority("normal", null));
+        assertEquals(Priority.Level.HIGH, priority("high", null));
+        assertEquals(Priority.Level.CRITICAL, priority("critical", null));
+    }
+
+    @Test
+    void lowersPriorityWithHeader() {
+        assertEquals(Priority.Level.LOW, priority("normal", "LOW"));
+        assertEquals(Priority.Level.LOW, priority("high", " low "));
+        assertEquals(Priority.Level.NORMAL, priority("critical", "Normal"));
+        assertEquals(Priority.Level.HIGH, priority("critical", "high"));
+        assertEquals(Priority.Level.HIGH, priority("high", "high"));
+    }
+
+    @Test
+    void neverRaisesPriorityWithHeader() {
+        assertEquals(Priority.Level.NORMAL, priority("normal", "critical"));
+        assertEquals(Priority.Level.NORMAL, priority("normal", "HIGH"));
+        assertEquals(Priority.Level.LOW, priority("low", "critical"));
+        assertEquals(Priority.Level.HIGH, priority("high", "critical"));
+    }
+
+    @Test
+    void ignoresUnknownPriorityHeader() {
+        assertEquals(Priority.Level.HIGH, priority("high", "lowest"));
+        assertEquals(Priority.Level.HIGH, priority("high", ""));
+        assertEquals(Priority.Level.NORMAL, priority("normal", "0"));
+        assertEquals(Priority.Level.NORMAL, priority("normal", "low, critical"));
+    }
+
+    private static Priority.Level priority(String methodName, String header) {
+        TestRequest request = TestRequest.of("GET", "/" + methodName);
+        if (header != null) {
+            request.header(Priority.HEADER, header);
+        }
+        return DispatcherServlet.getPriority(request.create(), handlerMethod(Resources.class, methodName));
+    }
+
+    public static class Resources {
+        public void normal() {
+        }
+
+        @Priority(Priority.Level.HIGH)
+        public void high() {
+        }
+
+        @Priority(Priority.Level.CRITICAL)
+        public void critical() {
+        }
+
+        @Priority(Priority.Level.LOW)
+        public void low() {
+        }
+    }
+}
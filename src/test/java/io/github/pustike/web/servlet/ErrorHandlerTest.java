@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ErrorHandlerTest {
+    private final Logger logger = Logger.getLogger(DispatcherServlet.class.getName());
+    private final List<LogRecord> records = new CopyOnWriteArrayList<>();
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            if (record.getLevel().intValue() >= Level.WARNING.intValue()) {
+                records.add(record);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+    private final HttpServletRequest request = TestRequest.of("GET", "/items").create();
+
+    @BeforeEach
+    void addLogHandler() {
+        logger.addHandler(handler);
+        logger.setUseParentHandlers(false);
+    }
+
+    @AfterEach
+    void removeLogHandler() {
+        logger.removeHandler(handler);
+        logger.setUseParentHandlers(true);
+    }
+
+    @Test
+    void logsOncePerWindowForEachErrorTypeAndRoute() throws IOException {
+        ErrorHandler errorHandler = new ErrorHandler(List.of(), 60_000);
+        for (int i = 0; i < 5; i++) {
+            handle(errorHandler, "/items", new IllegalStateException("failed " + i));
+        }
+        assertEquals(1, records.size());
+        assertEquals("failed 0", records.get(0).getThrown().getMessage());
+        handle(errorHandler, "/orders", new IllegalStateException("other route"));
+        handle(errorHandler, "/items", new UnsupportedOperationException("other type"));
+        assertEquals(3, records.size());
+    }
+
+    @Test
+    void reportsSuppressedCountWhenWindowEnds() throws Exception {
+        ErrorHandler errorHandler = new ErrorHandler(List.of(), 50);
+        for (int i = 0; i < 4; i++) {
+            handle(errorHandler, "/items", new IllegalStateException("failed " + i));
+        }
+        Thread.sleep(60);
+        handle(errorHandler, "/items", new IllegalStateException("after the window"));
+        assertEquals(2, records.size());
+        assertEquals("error when handling the request: /items", records.get(0).getMessage());
+        assertEquals("error when handling the request: /items (3 similar errors suppressed)",
+                records.get(1).getMessage());
+        assertEquals("after the window", records.get(1).getThrown().getMessage());
+    }
+
+    @Test
+    void logsEveryErrorWithoutInterval() throws IOException {
+        ErrorHandler errorHandler = new ErrorHandler(List.of(), 0);
+        for (int i = 0; i < 3; i++) {
+            handle(errorHandler, "/items", new IllegalStateException("failed " + i));
+        }
+        assertEquals(3, records.size());
+    }
+
+    @Test
+    void doesNotLogClientErrors() throws IOException {
+        ErrorHandler errorHandler = new ErrorHandler(List.of(ExceptionMapper.of(IllegalArgumentException.class,
+                e -> ErrorResponse.of(422, e.getMessage()))), 60_000);
+        TestResponse response = handle(errorHandler, "/items", new NumberFormatException("not a number"));
+        assertEquals(422, response.getStatus());
+        assertEquals("\"not a number\"", response.getBody());
+        response = handle(errorHandler, "/items", new BodyReadException("bad body"));
+        assertEquals(422, response.getStatus()); // mapped as an IllegalArgumentException
+        assertTrue(records.isEmpty());
+        response = handle(new ErrorHandler(List.of(), 60_000), "/items", new BodyReadException("bad body"));
+        assertEquals(400, response.getStatus());
+        assertTrue(records.isEmpty());
+    }
+
+    @Test
+    void keepsCommittedResponse() throws IOException {
+        ErrorHandler errorHandler = new ErrorHandler(List.of(), 60_000);
+        TestResponse response = new TestResponse();
+        response.get().getOutputStream().write('[');
+        response.get().flushBuffer();
+        errorHandler.handle(request, response.get(), "/items", new IllegalStateException("failed"));
+        assertEquals(200, response.getStatus());
+        assertEquals("[", response.getBody());
+        assertEquals(1, records.size());
+    }
+
+    private TestResponse handle(ErrorHandler errorHandler, String route, Throwable error) throws IOException {
+        TestResponse response = new TestResponse();
+        errorHandler.handle(request, response.get(), route, error);
+        return response;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import jakarta.json.Json;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+import org.junit.jupiter.api.Test;
+
+import io.github.pustike.json.JsonInclude;
+import io.github.pustike.json.ObjectMapper;
+import io.github.pustike.json.TypeConverter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FieldProjectionTest {
+    private final ObjectMapper objectMapper = new ObjectMapper(new TypeConverter());
+
+    @Test
+    void parsesOnceForEachFieldList() {
+        assertNull(FieldProjection.of(null));
+        assertNull(FieldProjection.of(" "));
+        assertSame(FieldProjection.of("id,name"), FieldProjection.of("id,name"));
+    }
+
+    @Test
+    void selectsTopLevelFields() {
+        // the fields are kept in their declaration order
+        assertEquals("{\"id\":1,\"name\":\"Ann\"}", map("name,id", ann(), null).toString());
+    }
+
+    @Test
+    void selectsNestedFields() {
+        assertEquals(parse("{\"name\":\"Ann\",\"address\":{\"city\":\"Pune\"}}"),
+                map("name,address.city", ann(), null));
+        // selecting the whole field wins over a nested selector of it
+        assertEquals(parse("{\"address\":{\"city\":\"Pune\",\"zip\":\"411001\"}}"),
+                map("address.city,address", ann(), null));
+    }
+
+    @Test
+    void projectsArraysElementWise() {
+        Person bob = new Person(2, "Bob", null);
+        bob.previousAddresses = List.of(new Address("Goa", "403001"), new Address("Agra", "282001"));
+        String expected = "[{\"id\":1},{\"id\":2,\"previousAddresses\":[{\"zip\":\"403001\"},{\"zip\":\"282001\"}]}]";
+        assertEquals(parse(expected), map("id,previousAddresses.zip", List.of(ann(), bob), null));
+        assertEquals(parse(expected), map("id,previousAddresses.zip", new Person[] {ann(), bob}, null));
+    }
+
+    @Test
+    void ignoresUnknownFields() {
+        assertEquals(parse("{\"id\":1,\"name\":\"Ann\",\"address\":{}}"),
+                map("id,unknown,address.unknown.city,name.first", ann(), null));
+        assertEquals(parse("{}"), map("unknown", ann(), null));
+        assertEquals(parse("{\"address\":{}}"), map("address.unknown", ann(), null));
+    }
+
+    @Test
+    void selectsOnlyFieldsIncludedByContext() {
+        Account account = new Account();
+        assertEquals(parse("{\"login\":\"ann\"}"), map("login,secret", account, "public"));
+        assertEquals(parse("{\"login\":\"ann\",\"secret\":\"s3cr3t\"}"), map("login,secret", account, null));
+    }
+
+    @Test
+    void neverMapsUnselectedFields() {
+        Person ann = ann();
+        ann.self = ann; // mapping the cyclic field would not terminate
+        assertEquals(parse("{\"name\":\"Ann\"}"), map("name", ann, null));
+    }
+
+    @Test
+    void projectsMappedValues() {
+        Map<String, Object> map = Map.of("a", 1, "b", Map.of("c", 2, "d", 3));
+        assertEquals(parse("{\"b\":{\"d\":3}}"), map("b.d", map, null));
+        assertEquals(parse("[{\"a\":1}]"), map("a", parse("[{\"a\":1,\"b\":2}]"), null));
+        assertEquals(Json.createValue("text"), map("a", "text", null));
+    }
+
+    private JsonValue map(String fieldPaths, Object object, String context) {
+        return FieldProjection.of(fieldPaths).map(objectMapper, object, context);
+    }
+
+    private static Person ann() {
+        return new Person(1, "Ann", new Address("Pune", "411001"));
+    }
+
+    private static JsonValue parse(String json) {
+        try (JsonReader jsonReader = Json.createReader(new StringReader(json))) {
+            return jsonReader.readValue();
+        }
+    }
+
+    static class Person {
+        private final long id;
+        private final String name;
+        private final Address address;
+        private List<Address> previousAddresses;
+        private Person self;
+
+        Person(long id, String name, Address address) {
+            this.id = id;
+            this.name = name;
+            this.address = address;
+        }
+    }
+
+    static class Address {
+        private final String city;
+        private final String zip;
+
+        Address(String city, String zip) {
+            this.city = city;
+            this.zip = zip;
+        }
+    }
+
+    @JsonInclude(type = "public", fields = {"login"})
+    static class Account {
+        private final String login = "ann";
+        private final String secret = "s3cr3t";
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import jakarta.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import io.github.pustike.web.CacheControl;
+import io.github.pustike.web.Consumes;
+import io.github.pustike.web.RawJson;
+import io.github.pustike.web.utils.MediaType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HandlerMethodTest {
+    @Test
+    void buildsCacheControlHeader() {
+        assertEquals("max-age=60", handlerMethod(Resources.class, "maxAge").getCacheControlHeader());
+        assertEquals("public, max-age=60, s-maxage=600, must-revalidate, immutable",
+                handlerMethod(Resources.class, "shared").getCacheControlHeader());
+        assertEquals("private, no-cache", handlerMethod(Resources.class, "privateNoCache").getCacheControlHeader());
+        assertEquals("no-store", handlerMethod(Resources.class, "noStore").getCacheControlHeader());
+    }
+
+    @Test
+    void sendsNoCacheControlWithoutDirectives() {
+        HandlerMethod handlerMethod = handlerMethod(Resources.class, "varyOnly");
+        assertNull(handlerMethod.getCacheControlHeader());
+        assertEquals("Accept-Language, Authorization", handlerMethod.getVaryHeader());
+        assertNull(handlerMethod(Resources.class, "maxAge").getVaryHeader());
+    }
+
+    @Test
+    void methodAnnotationOverridesClassAnnotation() {
+        assertEquals("max-age=10", handlerMethod(ClassResources.class, "inherited").getCacheControlHeader());
+        assertEquals("no-store", handlerMethod(ClassResources.class, "overridden").getCacheControlHeader());
+    }
+
+    @Test
+    void rejectsContradictoryDirectives() {
+        assertThrows(IllegalStateException.class, () -> handlerMethod(Resources.class, "publicPrivate"));
+        assertThrows(IllegalStateException.class, () -> handlerMethod(Resources.class, "publicNoStore"));
+    }
+
+    @Test
+    void acceptsRawJsonWrittenVerbatim() {
+        handlerMethod(RawJsonResources.class, "raw");
+        handlerMethod(RawJsonResources.class, "asyncRaw");
+        handlerMethod(RawJsonResources.class, "jsonObject");
+        handlerMethod(RawJsonResources.class, "transientField");
+        handlerMethod(RawJsonResources.class, "recursive");
+    }
+
+    @Test
+    void rejectsRawJsonConvertedByObjectMapper() {
+        for (String name : List.of("field", "nestedField", "list", "map", "array", "asyncList")) {
+            assertThrows(IllegalStateException.class, () -> handlerMethod(RawJsonResources.class, name), name);
+        }
+    }
+
+    @Test
+    void matchesConsumedMediaTypes() {
+        HandlerMethod jsonOrCbor = handlerMethod(ConsumingResources.class, "jsonOrCbor");
+        assertTrue(jsonOrCbor.isConsumable(MediaType.parse("application/json")));
+        assertTrue(jsonOrCbor.isConsumable(MediaType.parse("application/json; charset=UTF-8")));
+        assertTrue(jsonOrCbor.isConsumable(MediaType.parse("application/cbor")));
+        assertFalse(jsonOrCbor.isConsumable(MediaType.parse("application/xml")));
+        assertFalse(jsonOrCbor.isConsumable(MediaType.parse("text/plain")));
+        assertFalse(jsonOrCbor.isConsumable(null));
+        HandlerMethod text = handlerMethod(ConsumingResources.class, "anyText");
+        assertTrue(text.isConsumable(MediaType.parse("text/csv")));
+        assertFalse(text.isConsumable(MediaType.parse("application/json")));
+    }
+
+    @Test
+    void consumesAnyTypeByDefault() {
+        assertTrue(handlerMethod(ConsumingResources.class, "any").isConsumable(null));
+        assertTrue(handlerMethod(ConsumingResources.class, "wildcard").isConsumable(MediaType.parse("image/png")));
+        assertTrue(handlerMethod(ClassResources.class, "inherited").isConsumable(MediaType.parse("image/png")));
+        assertFalse(handlerMethod(ConsumingClassResources.class, "inherited")
+                .isConsumable(MediaType.parse("application/json")));
+        assertTrue(handlerMethod(ConsumingClassResources.class, "overridden")
+                .isConsumable(MediaType.parse("application/json")));
+    }
+
+    @Test
+    void rejectsInvalidConsumedMediaType() {
+        assertThrows(IllegalStateException.class, () -> handlerMethod(ConsumingResources.class, "invalid"));
+    }
+
+    static HandlerMethod handlerMethod(Class<?> controllerClass, String name) {
+        try {
+            return new HandlerMethod(controllerClass, controllerClass.getMethod(name), "/" + name);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class Resources {
+        @CacheControl(maxAge = 60)
+        public void maxAge() {
+        }
+
+        @CacheControl(isPublic = true, maxAge = 60, sMaxAge = 600, mustRevalidate = true, immutable = true)
+        public void shared() {
+        }
+
+        @CacheControl(isPrivate = true, noCache = true)
+        public void privateNoCache() {
+        }
+
+        @CacheControl(noStore = true)
+        public void noStore() {
+        }
+
+        @CacheControl(vary = {"Accept-Language", "Authorization"})
+        public void varyOnly() {
+        }
+
+        @CacheControl(isPublic = true, isPrivate = true)
+        public void publicPrivate() {
+        }
+
+        @CacheControl(isPublic = true, noStore = true)
+        public void publicNoStore() {
+        }
+    }
+
+    @CacheControl(maxAge = 10)
+    public static class ClassResources {
+        public void inherited() {
+        }
+
+        @CacheControl(noStore = true)
+        public void overridden() {
+        }
+    }
+
+    public static class RawJsonResources {
+        public RawJson raw() {
+            return null;
+        }
+
+        public CompletionStage<RawJson> asyncRaw() {
+            return null;
+        }
+
+        public JsonObject jsonObject() {
+            return null;
+        }
+
+        public TransientRaw transientField() {
+            return null;
+        }
+
+        public Node recursive() {
+            return null;
+        }
+
+        public WithRaw field() {
+            return null;
+        }
+
+        public Outer nestedField() {
+            return null;
+        }
+
+        public List<RawJson> list() {
+            return null;
+        }
+
+        public Map<String, WithRaw> map() {
+            return null;
+        }
+
+        public WithRaw[] array() {
+            return null;
+        }
+
+        public CompletionStage<List<? extends WithRaw>> asyncList() {
+            return null;
+        }
+    }
+
+    public static class WithRaw {
+        public RawJson document;
+    }
+
+    public static class Outer {
+        public List<WithRaw> items;
+    }
+
+    public static class TransientRaw {
+        public transient RawJson document;
+    }
+
+    public static class Node {
+        public String name;
+        public List<Node> children;
+    }
+
+    public static class ConsumingResources {
+        public void any() {
+        }
+
+        @Consumes({"application/json, application/cbor"})
+        public void jsonOrCbor() {
+        }
+
+        @Consumes("text/*")
+        public void anyText() {
+        }
+
+        @Consumes({"application/json", "*/*"})
+        public void wildcard() {
+        }
+
+        @Consumes("json")
+        public void invalid() {
+        }
+    }
+
+    @Consumes("text/csv")
+    public static class ConsumingClassResources {
+        public void inherited() {
+        }
+
+        @Consumes("application/json")
+        public void overridden() {
+        }
+    }
+}
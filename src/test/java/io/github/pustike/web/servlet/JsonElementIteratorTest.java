@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import io.github.pustike.json.ObjectMapper;
+import io.github.pustike.json.TypeConverter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonElementIteratorTest {
+    private final ObjectMapper objectMapper = new ObjectMapper(new TypeConverter());
+
+    @Test
+    void readsArrayElements() {
+        List<Item> items = readArray(" [ {\"name\": \"a, [b]\", \"count\": 1},\n"
+                + "{\"name\": \"c\\\"]\", \"count\": 2} ] ");
+        assertEquals(2, items.size());
+        assertEquals("a, [b]", items.get(0).getName());
+        assertEquals(1, items.get(0).getCount());
+        assertEquals("c\"]", items.get(1).getName());
+        assertEquals(2, items.get(1).getCount());
+    }
+
+    @Test
+    void readsEmptyArray() {
+        assertEquals(List.of(), readArray(" [ ] "));
+    }
+
+    @Test
+    void readsNestedElements() {
+        List<Item> items = readArray("[{\"name\":\"a\",\"tags\":[\"x\",\"y\"]},{\"name\":\"b\",\"tags\":[]}]");
+        assertEquals(List.of("x", "y"), items.get(0).getTags());
+        assertEquals(List.of(), items.get(1).getTags());
+    }
+
+    @Test
+    void readsElementsLargerThanTheBuffer() {
+        String name = "n".repeat(20_000);
+        List<Item> items = readArray("[{\"name\":\"" + name + "\"},{\"name\":\"" + name + "\"}]");
+        assertEquals(2, items.size());
+        assertEquals(name, items.get(1).getName());
+    }
+
+    @Test
+    void rejectsContentAfterTheArray() {
+        JsonElementIterator iterator = JsonElementIterator.ofArray(objectMapper, Item.class,
+                new StringReader("[{\"count\":1},{\"count\":2}] garbage"));
+        iterator.next();
+        iterator.next();
+        assertThrows(BodyReadException.class, iterator::hasNext);
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    void rejectsContentAfterAnElement() {
+        assertThrows(BodyReadException.class, () -> readArray("[{\"count\":1} {\"count\":2}]"));
+    }
+
+    @Test
+    void rejectsMalformedArrays() {
+        assertThrows(BodyReadException.class, () -> readArray("{\"count\":1}"));
+        assertThrows(BodyReadException.class, () -> readArray("[{\"count\":1}"));
+        assertThrows(BodyReadException.class, () -> readArray("[{\"count\":1},]"));
+        assertThrows(BodyReadException.class, () -> readArray("[{\"count\":1};{\"count\":2}]"));
+    }
+
+    @Test
+    void readsLines() {
+        JsonElementIterator iterator = JsonElementIterator.ofLines(objectMapper, Item.class,
+                new StringReader("{\"name\":\"a\"}\n\n{\"name\":\"b\"}\n"));
+        List<Item> items = new ArrayList<>();
+        iterator.forEachRemaining(item -> items.add((Item) item));
+        assertEquals(2, items.size());
+        assertEquals("b", items.get(1).getName());
+    }
+
+    private List<Item> readArray(String json) {
+        JsonElementIterator iterator = JsonElementIterator.ofArray(objectMapper, Item.class, new StringReader(json));
+        List<Item> items = new ArrayList<>();
+        iterator.forEachRemaining(item -> items.add((Item) item));
+        return items;
+    }
+
+    public static class Item {
+        private String name;
+        private int count;
+        private List<String> tags;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(List<String> tags) {
+            this.tags = tags;
+        }
+    }
+}
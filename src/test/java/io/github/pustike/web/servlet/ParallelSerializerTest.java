@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import jakarta.json.JsonValue;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.github.pustike.json.ObjectMapper;
+import io.github.pustike.json.TypeConverter;
+import io.github.pustike.web.Priority;
+import io.github.pustike.web.scope.RequestScope;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelSerializerTest {
+    private final ObjectMapper objectMapper = new ObjectMapper(new TypeConverter());
+    private final JsonBodyWriter bodyWriter = new JsonBodyWriter(false);
+    private final List<ParallelSerializer> serializers = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        serializers.forEach(ParallelSerializer::shutdown);
+    }
+
+    @Test
+    void writesSameBytesAsSequentialSerialization() throws IOException {
+        ParallelSerializer serializer = createSerializer(4, 16);
+        HttpServletRequest request = TestRequest.of("GET", "/items").create();
+        try (Closeable ignored = RequestScope.open(request, null)) {
+            for (int size : new int[] {1, 2, 7, 100, 1001}) {
+                List<Item> items = createItems(size);
+                byte[] expected = writeSequentially(items);
+                for (int chunkSize : new int[] {1, 3, 64, 5000}) {
+                    assertArrayEquals(expected, serializer.serialize(items, chunkSize, this::writeChunk),
+                            "size: " + size + ", chunk size: " + chunkSize);
+                }
+            }
+        }
+    }
+
+    @Test
+    void opensRequestScopeOnExecutorThreads() throws IOException {
+        ParallelSerializer serializer = createSerializer(4, 16);
+        HttpServletRequest request = TestRequest.of("GET", "/items").create();
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        try (Closeable ignored = RequestScope.open(request, null)) {
+            serializer.serialize(createItems(64), 1, (chunk, outputStream) -> {
+                assertSame(request, RequestScope.getRequest());
+                threads.add(Thread.currentThread());
+                writeChunk(chunk, outputStream);
+            });
+        }
+        assertTrue(threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    void writesOnCallingThreadWhenExecutorIsFull() throws Exception {
+        BulkheadExecutor executor = BulkheadExecutor.of("test", 1, 0);
+        ParallelSerializer serializer = new ParallelSerializer(executor, 1);
+        serializers.add(serializer);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        assertTrue(executor.execute(Priority.Level.NORMAL, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        started.await();
+        List<Item> items = createItems(10);
+        try (Closeable ignored = RequestScope.open(TestRequest.of("GET", "/items").create(), null)) {
+            assertArrayEquals(writeSequentially(items), serializer.serialize(items, 2, this::writeChunk));
+        } finally {
+            release.countDown();
+        }
+        assertEquals(1, executor.getRejectedCount()); // the one helper for the 5 chunks
+    }
+
+    @Test
+    void throwsFirstFailureAndStaysUsable() throws IOException {
+        ParallelSerializer serializer = createSerializer(2, 2);
+        List<Item> items = createItems(40);
+        try (Closeable ignored = RequestScope.open(TestRequest.of("GET", "/items").create(), null)) {
+            IOException error = assertThrows(IOException.class, () -> serializer.serialize(items, 4,
+                    (chunk, outputStream) -> {
+                        if (chunk.contains(items.get(21))) {
+                            throw new IOException("chunk failed");
+                        }
+                        writeChunk(chunk, outputStream);
+                    }));
+            assertEquals("chunk failed", error.getMessage());
+            assertArrayEquals(writeSequentially(items), serializer.serialize(items, 4, this::writeChunk));
+        }
+    }
+
+    private ParallelSerializer createSerializer(int threads, int queueCapacity) {
+        ParallelSerializer serializer = new ParallelSerializer(BulkheadExecutor.of("test", threads, queueCapacity),
+                threads);
+        serializers.add(serializer);
+        return serializer;
+    }
+
+    private void writeChunk(List<?> chunk, OutputStream outputStream) throws IOException {
+        bodyWriter.writeElements(objectMapper.toJsonValue(chunk, null).asJsonArray(), outputStream);
+    }
+
+    private byte[] writeSequentially(List<Item> items) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        JsonValue jsonValue = objectMapper.toJsonValue(items, null);
+        bodyWriter.writeTo(jsonValue, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static List<Item> createItems(int size) {
+        List<Item> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(new Item(i, "item \u00e9 " + i, i % 3 == 0 ? List.of("a", "b\"c") : List.of()));
+        }
+        return items;
+    }
+
+    static class Item {
+        private final int id;
+        private final String name;
+        private final List<String> tags;
+
+        Item(int id, String name, List<String> tags) {
+            this.id = id;
+            this.name = name;
+            this.tags = tags;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+
+import io.github.pustike.web.Cacheable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCacheTest {
+    private final ResponseCache responseCache = new ResponseCache(1 << 20);
+    private final HandlerMethod shortLived = handlerMethod("shortLived");
+    private final HandlerMethod staleServed = handlerMethod("staleServed");
+
+    @Test
+    void keySortsParametersAndIncludesDeclaredHeaders() {
+        String key = createKey(staleServed, TestRequest.of("GET", "/users").parameter("b", "2")
+                .parameter("a", "1", "3").header("Accept-Language", "en").header("X-Other", "x"));
+        String sameKey = createKey(staleServed, TestRequest.of("GET", "/users").parameter("a", "1", "3")
+                .parameter("b", "2").header("Accept-Language", "en"));
+        assertEquals(key, sameKey);
+        assertNotEquals(key, createKey(staleServed, TestRequest.of("GET", "/users").parameter("a", "1", "3")
+                .parameter("b", "2").header("Accept-Language", "de")));
+        assertNotEquals(key, createKey(staleServed, TestRequest.of("GET", "/users").parameter("a", "3", "1")
+                .parameter("b", "2").header("Accept-Language", "en")));
+        assertNotEquals(key, createKey(staleServed, TestRequest.of("GET", "/users/1").parameter("a", "1", "3")
+                .parameter("b", "2").header("Accept-Language", "en")));
+    }
+
+    @Test
+    void keyIncludesMediaTypeAndRoute() {
+        HttpServletRequest request = TestRequest.of("GET", "/users").create();
+        String key = responseCache.createKey(request, staleServed, staleServed.getCacheable(), "application/json");
+        assertNotEquals(key, responseCache.createKey(request, staleServed, staleServed.getCacheable(),
+                "application/cbor"));
+        assertNotEquals(key, responseCache.createKey(request, shortLived, staleServed.getCacheable(),
+                "application/json"));
+    }
+
+    @Test
+    void entryExpiresAfterTtl() throws InterruptedException {
+        put("key", shortLived);
+        ResponseCache.Entry entry = responseCache.get("key");
+        assertNotNull(entry);
+        assertFalse(entry.shouldRefresh());
+        Thread.sleep(60);
+        assertNull(responseCache.get("key"));
+        assertEquals(0, responseCache.getEntryCount());
+        assertEquals(0, responseCache.getSize());
+    }
+
+    @Test
+    void staleEntryIsServedAndRefreshedOnce() throws InterruptedException {
+        put("key", staleServed);
+        Thread.sleep(60);
+        ResponseCache.Entry entry = responseCache.get("key");
+        assertNotNull(entry);
+        assertTrue(entry.shouldRefresh());
+        assertFalse(entry.shouldRefresh());
+        entry.refreshFailed();
+        assertTrue(entry.shouldRefresh());
+        put("key", staleServed);
+        assertFalse(responseCache.get("key").shouldRefresh());
+    }
+
+    @Test
+    void invalidatesByTag() {
+        put("tagged", staleServed);
+        put("untagged", shortLived);
+        responseCache.invalidate("other");
+        assertEquals(2, responseCache.getEntryCount());
+        responseCache.invalidate("users");
+        assertNull(responseCache.get("tagged"));
+        assertNotNull(responseCache.get("untagged"));
+        responseCache.invalidateAll();
+        assertEquals(0, responseCache.getEntryCount());
+        assertEquals(0, responseCache.getSize());
+    }
+
+    @Test
+    void dropsResponseComputedBeforeInvalidation() {
+        long generation = responseCache.getGeneration();
+        responseCache.invalidate("users");
+        assertFalse(responseCache.put("key", body("{}"), staleServed.getCacheable(), generation));
+        assertNull(responseCache.get("key"));
+    }
+
+    @Test
+    void dropsLoadInvalidatedWhileRunning() throws Exception {
+        SerializedBody body = responseCache.load("key", staleServed.getCacheable(), () -> {
+            responseCache.invalidate("users");
+            return body("{}");
+        });
+        assertNotNull(body);
+        assertNull(responseCache.get("key"));
+    }
+
+    @Test
+    void concurrentMissesInvokeLoaderOnce() throws Exception {
+        AtomicInteger loadCount = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<SerializedBody> first = executor.submit(() -> responseCache.load("key",
+                    staleServed.getCacheable(), () -> {
+                        loadCount.incrementAndGet();
+                        loading.countDown();
+                        release.await();
+                        return body("{\"id\":1}");
+                    }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<SerializedBody> second = executor.submit(() -> responseCache.load("key",
+                    staleServed.getCacheable(), () -> body("{\"id\":" + loadCount.incrementAndGet() + "}")));
+            Future<SerializedBody> third = executor.submit(() -> responseCache.load("key",
+                    staleServed.getCacheable(), () -> body("{\"id\":" + loadCount.incrementAndGet() + "}")));
+            Thread.sleep(50);
+            release.countDown();
+            SerializedBody body = first.get(5, TimeUnit.SECONDS);
+            assertSame(body, second.get(5, TimeUnit.SECONDS));
+            assertSame(body, third.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loadCount.get());
+            assertSame(body, responseCache.get("key").getBody());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedLoadIsNotCached() {
+        assertThrows(IllegalStateException.class, () -> responseCache.load("key", staleServed.getCacheable(),
+                () -> {
+                    throw new IllegalStateException("failed");
+                }));
+        assertNull(responseCache.get("key"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntries() {
+        ResponseCache smallCache = new ResponseCache(1000);
+        for (int i = 0; i < 10; i++) {
+            smallCache.put("key" + i, body("x".repeat(100)), staleServed.getCacheable(),
+                    smallCache.getGeneration());
+        }
+        assertTrue(smallCache.getSize() <= 1000);
+        assertNotNull(smallCache.get("key9"));
+        assertNull(smallCache.get("key0"));
+    }
+
+    private String createKey(HandlerMethod handlerMethod, TestRequest request) {
+        return responseCache.createKey(request.create(), handlerMethod, handlerMethod.getCacheable(),
+                "application/json");
+    }
+
+    private void put(String key, HandlerMethod handlerMethod) {
+        responseCache.put(key, body("{}"), handlerMethod.getCacheable(), responseCache.getGeneration());
+    }
+
+    private static SerializedBody body(String json) {
+        return new SerializedBody(json.getBytes(StandardCharsets.UTF_8), JsonBodyWriter.MEDIA_TYPE);
+    }
+
+    private static HandlerMethod handlerMethod(String name) {
+        try {
+            return new HandlerMethod(Resources.class, Resources.class.getMethod(name), "/" + name);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class Resources {
+        @Cacheable(ttl = 50, unit = TimeUnit.MILLISECONDS)
+        public String shortLived() {
+            return "";
+        }
+
+        @Cacheable(ttl = 50, staleWhileRevalidate = 60_000, unit = TimeUnit.MILLISECONDS,
+                headers = "Accept-Language", tags = "users")
+        public String staleServed() {
+            return "";
+        }
+    }
+}
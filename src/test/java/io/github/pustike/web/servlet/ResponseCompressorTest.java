@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCompressorTest {
+    private final ResponseCompressor compressor = new ResponseCompressor(16);
+
+    @Test
+    void gzipOutputIsReadBack() throws IOException {
+        byte[] body = "{\"name\":\"value\"},".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compressor.compress(body, ResponseCompressor.GZIP);
+        assertTrue(compressed.length < body.length);
+        assertArrayEquals(body, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    void deflateOutputIsReadBack() throws IOException {
+        byte[] body = "{\"name\":\"value\"},".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compressor.compress(body, ResponseCompressor.DEFLATE);
+        assertArrayEquals(body, readAll(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    void pooledDeflatersAreReset() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < 20; i++) {
+            byte[] body = new byte[random.nextInt(100_000)];
+            random.nextBytes(body);
+            byte[] compressed = compressor.compress(body, ResponseCompressor.GZIP);
+            assertArrayEquals(body, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+        }
+    }
+
+    @Test
+    void emptyBodyIsReadBack() throws IOException {
+        byte[] compressed = compressor.compress(new byte[0], ResponseCompressor.GZIP);
+        assertArrayEquals(new byte[0], readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    void negotiatesContentCoding() {
+        assertEquals("gzip", compressor.negotiate("gzip, deflate, br", 100));
+        assertEquals("gzip", compressor.negotiate("x-gzip", 100));
+        assertEquals("deflate", compressor.negotiate("deflate", 100));
+        assertEquals("deflate", compressor.negotiate("gzip;q=0, deflate", 100));
+        assertEquals("deflate", compressor.negotiate("gzip; q=0.0, *", 100));
+        assertEquals("gzip", compressor.negotiate("*", 100));
+        assertNull(compressor.negotiate("gzip;q=0, deflate;q=0, *", 100));
+        assertNull(compressor.negotiate("br, identity", 100));
+        assertNull(compressor.negotiate("gzip", 15));
+        assertNull(compressor.negotiate(null, 100));
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        try (inputStream) {
+            return inputStream.readAllBytes();
+        }
+    }
+}
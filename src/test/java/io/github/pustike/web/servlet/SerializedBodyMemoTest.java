@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SerializedBodyMemoTest {
+    private final SerializedBodyMemo memo = new SerializedBodyMemo();
+
+    @Test
+    void memoizesByIdentity() {
+        List<String> result = new ArrayList<>(List.of("a", "b"));
+        SerializedBody body = body("[\"a\",\"b\"]");
+        memo.put(result, "null|application/json", body);
+        assertSame(body, memo.get(result, "null|application/json"));
+        // an equal but distinct result may be a different version of the data, so it is not served the body
+        assertNull(memo.get(new ArrayList<>(result), "null|application/json"));
+        result.add("c"); // the identity, not the hash code of the contents, is the key
+        assertSame(body, memo.get(result, "null|application/json"));
+    }
+
+    @Test
+    void keepsOneBodyPerVariant() {
+        Object result = new Object();
+        SerializedBody json = body("{}");
+        SerializedBody summary = body("{\"id\":1}");
+        memo.put(result, "null|application/json", json);
+        memo.put(result, "summary|application/json", summary);
+        assertSame(json, memo.get(result, "null|application/json"));
+        assertSame(summary, memo.get(result, "summary|application/json"));
+        assertNull(memo.get(result, "null|application/cbor"));
+        assertEquals(1, memo.size());
+    }
+
+    @Test
+    void removesUnreachableResults() throws InterruptedException {
+        Object retained = new Object();
+        memo.put(retained, "v", body("1"));
+        for (int i = 0; i < 100; i++) {
+            memo.put(new Object(), "v", body("2"));
+        }
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (memo.size() > 1 && System.nanoTime() - deadline < 0) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, memo.size());
+        assertEquals("1", new String(memo.get(retained, "v").getBytes(), StandardCharsets.UTF_8));
+    }
+
+    private static SerializedBody body(String json) {
+        return new SerializedBody(json.getBytes(StandardCharsets.UTF_8), "application/json");
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SerializedBodyTest {
+    @Test
+    void opaqueTagIsTheHashOfTheBody() {
+        SerializedBody body = new SerializedBody("abc".getBytes(StandardCharsets.UTF_8), JsonBodyWriter.MEDIA_TYPE);
+        assertEquals("44bc2cf5ad770999", body.getOpaqueTag());
+        assertSame(body.getOpaqueTag(), body.getOpaqueTag());
+    }
+
+    @Test
+    void opaqueTagDependsOnTheContentOnly() {
+        byte[] bytes = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+        SerializedBody body = new SerializedBody(bytes, JsonBodyWriter.MEDIA_TYPE);
+        SerializedBody sameBody = new SerializedBody(bytes.clone(), JsonBodyWriter.MEDIA_TYPE);
+        SerializedBody otherBody = new SerializedBody("{\"id\":2}".getBytes(StandardCharsets.UTF_8),
+                JsonBodyWriter.MEDIA_TYPE);
+        assertEquals(body.getOpaqueTag(), sameBody.getOpaqueTag());
+        assertNotEquals(body.getOpaqueTag(), otherBody.getOpaqueTag());
+    }
+
+    @Test
+    void compressedBodyIsComputedOnce() {
+        ResponseCompressor compressor = new ResponseCompressor(0);
+        SerializedBody body = new SerializedBody("{\"id\":1}".repeat(100).getBytes(StandardCharsets.UTF_8),
+                JsonBodyWriter.MEDIA_TYPE);
+        byte[] gzipBytes = body.getCompressed(ResponseCompressor.GZIP, compressor);
+        assertSame(gzipBytes, body.getCompressed(ResponseCompressor.GZIP, compressor));
+        assertFalse(Arrays.equals(gzipBytes, body.getCompressed(ResponseCompressor.DEFLATE, compressor)));
+    }
+}
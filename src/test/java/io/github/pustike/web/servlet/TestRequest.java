@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Builds a request for tests, backed by maps of headers, parameters and attributes.
+ */
+public final class TestRequest {
+    private final String method;
+    private final String path;
+    private final Map<String, String> headers;
+    private final Map<String, String[]> parameters;
+    private byte[] body;
+
+    private TestRequest(String method, String path) {
+        this.method = method;
+        this.path = path;
+        this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        this.parameters = new LinkedHashMap<>();
+        this.body = new byte[0];
+    }
+
+    public static TestRequest of(String method, String path) {
+        return new TestRequest(method, path);
+    }
+
+    public TestRequest header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    public TestRequest parameter(String name, String... values) {
+        parameters.put(name, values);
+        return this;
+    }
+
+    public TestRequest body(String contentType, byte[] content) {
+        headers.put("Content-Type", contentType);
+        body = content;
+        return this;
+    }
+
+    public TestRequest body(String contentType, String content) {
+        return body(contentType, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public HttpServletRequest create() {
+        Map<String, Object> attributes = new HashMap<>();
+        ServletInputStream inputStream = new TestInputStream(new ByteArrayInputStream(body));
+        ServletContext servletContext = (ServletContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ServletContext.class}, (proxy, m, args) -> switch (m.getName()) {
+                    case "getMimeType" -> URLConnection.getFileNameMap().getContentTypeFor((String) args[0]);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, m, args) -> switch (m.getName()) {
+                    case "getMethod" -> method;
+                    case "getPathInfo", "getRequestURI" -> path;
+                    case "getServletPath", "getContextPath" -> "";
+                    case "getHeader" -> headers.get((String) args[0]);
+                    case "getHeaders" -> headers.containsKey((String) args[0])
+                            ? Collections.enumeration(List.of(headers.get((String) args[0])))
+                            : Collections.emptyEnumeration();
+                    case "getHeaderNames" -> Collections.enumeration(headers.keySet());
+                    case "getContentType" -> headers.get("Content-Type");
+                    case "getContentLength" -> body.length;
+                    case "getContentLengthLong" -> (long) body.length;
+                    case "getParameterMap" -> parameters;
+                    case "getParameter" -> parameters.containsKey((String) args[0])
+                            ? parameters.get((String) args[0])[0] : null;
+                    case "getAttribute" -> attributes.get((String) args[0]);
+                    case "setAttribute" -> {
+                        attributes.put((String) args[0], args[1]);
+                        yield null;
+                    }
+                    case "removeAttribute" -> {
+                        attributes.remove((String) args[0]);
+                        yield null;
+                    }
+                    case "getInputStream" -> inputStream;
+                    case "getServletContext" -> servletContext;
+                    case "isAsyncSupported" -> false;
+                    case "startAsync" -> startAsync(proxy);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> method + " " + path;
+                    default -> null;
+                });
+    }
+
+    private AsyncContext startAsync(Object request) {
+        List<AsyncListener> listeners = new ArrayList<>();
+        return (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{AsyncContext.class}, (proxy, m, args) -> switch (m.getName()) {
+                    case "getRequest" -> request;
+                    case "addListener" -> {
+                        listeners.add((AsyncListener) args[0]);
+                        yield null;
+                    }
+                    case "complete" -> {
+                        for (AsyncListener listener : listeners) {
+                            listener.onComplete(null);
+                        }
+                        yield null;
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+    }
+
+    private static final class TestInputStream extends ServletInputStream {
+        private final ByteArrayInputStream inputStream;
+
+        private TestInputStream(ByteArrayInputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public int read() {
+            return inputStream.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return inputStream.read(b, off, len);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return inputStream.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            try { // all data is available at once
+                readListener.onDataAvailable();
+                readListener.onAllDataRead();
+            } catch (IOException e) {
+                readListener.onError(e);
+            }
+        }
+    }
+}
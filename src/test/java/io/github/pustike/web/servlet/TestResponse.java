@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Records the status, headers and body written to a response, for tests.
+ */
+final class TestResponse {
+    private final Map<String, String> headers;
+    private final ByteArrayOutputStream body;
+    private final HttpServletResponse response;
+    private int status;
+    private boolean committed;
+
+    TestResponse() {
+        this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        this.body = new ByteArrayOutputStream();
+        this.status = HttpServletResponse.SC_OK;
+        ServletOutputStream outputStream = new TestOutputStream();
+        this.response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class}, (proxy, m, args) -> switch (m.getName()) {
+                    case "setStatus" -> {
+                        status = (Integer) args[0];
+                        yield null;
+                    }
+                    case "getStatus" -> status;
+                    case "setHeader" -> {
+                        headers.put((String) args[0], (String) args[1]);
+                        yield null;
+                    }
+                    case "addHeader" -> {
+                        headers.merge((String) args[0], (String) args[1], (v1, v2) -> v1 + ", " + v2);
+                        yield null;
+                    }
+                    case "getHeader" -> headers.get((String) args[0]);
+                    case "containsHeader" -> headers.containsKey((String) args[0]);
+                    case "setContentType" -> {
+                        headers.put("Content-Type", (String) args[0]);
+                        yield null;
+                    }
+                    case "getContentType" -> headers.get("Content-Type");
+                    case "setContentLength", "setContentLengthLong" -> {
+                        headers.put("Content-Length", String.valueOf(args[0]));
+                        yield null;
+                    }
+                    case "getOutputStream" -> outputStream;
+                    case "isCommitted" -> committed;
+                    case "flushBuffer" -> {
+                        committed = true;
+                        yield null;
+                    }
+                    case "reset" -> {
+                        if (committed) {
+                            throw new IllegalStateException("response is committed");
+                        }
+                        headers.clear();
+                        body.reset();
+                        status = HttpServletResponse.SC_OK;
+                        yield null;
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "TestResponse(" + status + ")";
+                    default -> null;
+                });
+    }
+
+    HttpServletResponse get() {
+        return response;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    String getBody() {
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    byte[] getBodyBytes() {
+        return body.toByteArray();
+    }
+
+    private final class TestOutputStream extends ServletOutputStream {
+        @Override
+        public void write(int b) {
+            body.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            body.write(b, off, len);
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
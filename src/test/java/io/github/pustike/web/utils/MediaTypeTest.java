@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.utils;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MediaTypeTest {
+    @Test
+    void acceptsWellFormedTypes() {
+        String[][] table = {
+                // media type, type, subtype, charset
+                {"text/plain", "text", "plain", null},
+                {"Application/JSON", "application", "json", null},
+                {"application/vnd.api+json", "application", "vnd.api+json", null},
+                {"*/*", "*", "*", null},
+                {"text/*", "text", "*", null},
+                {"text/plain;charset=utf-8", "text", "plain", "utf-8"},
+                {"text/plain; charset=\"utf-8\"", "text", "plain", "utf-8"},
+                {"text/plain; charset='utf-8'", "text", "plain", "utf-8"},
+                {"text/plain; CHARSET=utf-8; charset=UTF-8", "text", "plain", "utf-8"},
+                {"text/plain; format=flowed; charset=us-ascii", "text", "plain", "us-ascii"},
+                {"text/plain;", "text", "plain", null},
+                {"text/plain; ;charset=utf-8", "text", "plain", "utf-8"},
+                {"text/plain; charsets=utf-16", "text", "plain", null},
+        };
+        for (String[] row : table) {
+            MediaType mediaType = MediaType.get(row[0]);
+            assertEquals(row[1], mediaType.type(), row[0]);
+            assertEquals(row[2], mediaType.subtype(), row[0]);
+            assertEquals(row[3], mediaType.charset() == null ? null : mediaType.charset().name().toLowerCase(),
+                    row[0]);
+            assertEquals(row[0], mediaType.toString());
+        }
+    }
+
+    @Test
+    void rejectsMalformedTypes() {
+        String[] table = {
+                "", "text", "text/", "/plain", " text/plain", "text /plain", "text/ plain", "text/plain ",
+                "text/plain charset=utf-8", "text/plain,text/html", "te(xt/plain", "text/pl\u00e4in",
+                "text/plain; charset", "text/plain; charset=", "text/plain; charset=\"utf-8",
+                "text/plain; charset=utf-8; charset=utf-16",
+        };
+        for (String string : table) {
+            assertThrows(IllegalArgumentException.class, () -> MediaType.get(string), string);
+            assertNull(MediaType.parse(string), string);
+        }
+    }
+
+    @Test
+    void internsParsedTypes() {
+        MediaType mediaType = MediaType.parse("application/x-intern-test");
+        assertSame(mediaType, MediaType.parse("application/x-intern-test"));
+        assertEquals(mediaType, MediaType.get("application/x-intern-test"));
+    }
+
+    @Test
+    void fallsBackToDefaultCharset() {
+        assertEquals(StandardCharsets.UTF_8, MediaType.get("text/plain").charset(StandardCharsets.UTF_8));
+        assertEquals(StandardCharsets.UTF_8,
+                MediaType.get("text/plain; charset=x-unknown").charset(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void includesMatchingTypes() {
+        assertTrue(MediaType.get("*/*").includes(MediaType.get("application/json")));
+        assertTrue(MediaType.get("application/*").includes(MediaType.get("application/json")));
+        assertTrue(MediaType.get("application/json").includes(MediaType.get("application/json; charset=utf-8")));
+        assertFalse(MediaType.get("text/*").includes(MediaType.get("application/json")));
+        assertFalse(MediaType.get("application/json").includes(MediaType.get("application/*")));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServletUtilsTest {
+    @Test
+    void matchesStrongEntityTag() {
+        assertTrue(ServletUtils.matchesEntityTag("\"1a2b\"", "1a2b"));
+        assertFalse(ServletUtils.matchesEntityTag("\"1a2c\"", "1a2b"));
+    }
+
+    @Test
+    void matchesWeakEntityTag() {
+        assertTrue(ServletUtils.matchesEntityTag("W/\"1a2b\"", "1a2b"));
+        assertFalse(ServletUtils.matchesEntityTag("W/\"1a2c\"", "1a2b"));
+    }
+
+    @Test
+    void matchesAnyEntityTag() {
+        assertTrue(ServletUtils.matchesEntityTag("*", "1a2b"));
+        assertTrue(ServletUtils.matchesEntityTag("\"ffff\", *", "1a2b"));
+    }
+
+    @Test
+    void matchesEntityTagInList() {
+        assertTrue(ServletUtils.matchesEntityTag("\"ffff\", W/\"1a2b\"", "1a2b"));
+        assertTrue(ServletUtils.matchesEntityTag("\"ffff\",\"1a2b\" ,\"eeee\"", "1a2b"));
+        assertFalse(ServletUtils.matchesEntityTag("\"ffff\", W/\"eeee\"", "1a2b"));
+    }
+
+    @Test
+    void ignoresContentCodingSuffix() {
+        assertTrue(ServletUtils.matchesEntityTag("\"1a2b-gzip\"", "1a2b"));
+        assertTrue(ServletUtils.matchesEntityTag("W/\"1a2b-deflate\"", "1a2b"));
+    }
+
+    @Test
+    void rejectsPartialAndMalformedTags() {
+        assertFalse(ServletUtils.matchesEntityTag("\"1a2bc\"", "1a2b"));
+        assertFalse(ServletUtils.matchesEntityTag("\"1a2\"", "1a2b"));
+        assertFalse(ServletUtils.matchesEntityTag("1a2b", "1a2b"));
+        assertFalse(ServletUtils.matchesEntityTag("\"1a2b", "1a2b"));
+        assertFalse(ServletUtils.matchesEntityTag("", "1a2b"));
+        assertFalse(ServletUtils.matchesEntityTag(null, "1a2b"));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.pustike.web.utils;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class XXHash64Test {
+    private static final String LONG_INPUT = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef!!!";
+
+    @Test
+    void matchesReferenceVectors() {
+        assertEquals(0xef46db3751d8e999L, hash("", 0));
+        assertEquals(0xd24ec4f1a98c6e5bL, hash("a", 0));
+        assertEquals(0x44bc2cf5ad770999L, hash("abc", 0));
+        assertEquals(0xfbcea83c8a378bf1L, hash("Nobody inspects the spammish repetition", 0));
+        assertEquals(0x8785964bf142c23eL, hash(LONG_INPUT, 0));
+    }
+
+    @Test
+    void matchesReferenceVectorsWithSeed() {
+        assertEquals(0x493d554c526625baL, hash("", 20141025));
+        assertEquals(0x9fe3ce221f1dd34aL, hash("a", 20141025));
+        assertEquals(0x15bf5082de140c67L, hash("abc", 20141025));
+        assertEquals(0xce06936136852706L, hash("Nobody inspects the spammish repetition", 20141025));
+        assertEquals(0x6d8fc6b419b3d222L, hash(LONG_INPUT, 20141025));
+    }
+
+    @Test
+    void hashesRangeOfArray() {
+        byte[] data = ("--" + LONG_INPUT + "--").getBytes(StandardCharsets.UTF_8);
+        assertEquals(0x8785964bf142c23eL, XXHash64.hash(data, 2, LONG_INPUT.length(), 0));
+        assertEquals(XXHash64.hash(LONG_INPUT.getBytes(StandardCharsets.UTF_8)), hash(LONG_INPUT, 0));
+    }
+
+    private static long hash(String input, long seed) {
+        byte[] data = input.getBytes(StandardCharsets.UTF_8);
+        return XXHash64.hash(data, 0, data.length, seed);
+    }
+}